@@ -0,0 +1,25 @@
+#!/usr/bin/env bash
+# クイズアプリの JMH ベンチマークを 1/4/16 スレッドで実行し、結果を JSON で保存する。
+#
+# 使い方: ./run-benchmarks.sh [ラベル] [JMH の追加オプション...]
+#   ラベルを省略すると現在のコミットの短縮ハッシュを使う。
+#   結果は results/<ラベル>/threads-<スレッド数>.json に書き出されるので、
+#   ビルド間で同じファイル同士を比較できる。
+#   例: ./run-benchmarks.sh before -f 1 -wi 2 -i 3 'QuizHotPathBenchmark.recordAnswer'
+set -euo pipefail
+
+cd "$(dirname "$0")"
+
+LABEL="${1:-$(git rev-parse --short HEAD 2>/dev/null || date +%Y%m%d%H%M%S)}"
+shift || true
+
+# アプリ本体をローカルリポジトリにインストールしてからベンチマーク jar を作る
+mvn -B -q -f ../pom.xml install
+mvn -B -q package
+
+OUT="results/${LABEL}"
+mkdir -p "${OUT}"
+for threads in 1 4 16; do
+    java -jar target/benchmarks.jar -t "${threads}" -rf json -rff "${OUT}/threads-${threads}.json" "$@"
+done
+echo "結果: ${OUT}"
@@ -0,0 +1,104 @@
+package com.PrefectualCapitalQuiz.bench;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * ベンチマーク用の一時 SQLite データベース。
+ *
+ * - 一時ディレクトリに空のデータベースを作り、`datebase_setup.sql` を適用する。
+ * - ベンチマーク用のユーザー `bench00`〜`bench15` と、間違えた問題の解答履歴を登録する。
+ * - アプリ本体が参照するシステムプロパティ `quiz.db.url` をこのファイルに向ける。
+ */
+final class BenchmarkDatabase implements AutoCloseable {
+    static final int USER_COUNT = 16;
+    static final int QUESTION_COUNT = 47;
+
+    private final Path directory;
+
+    private BenchmarkDatabase(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * 一時データベースを作成する。
+     *
+     * - セットアップ用 SQL の場所はシステムプロパティ `quiz.bench.setupSql` で指定できる
+     *   （既定はベンチマークモジュールから見た `../datebase_setup.sql`）。
+     */
+    static BenchmarkDatabase create() {
+        try {
+            Path directory = Files.createTempDirectory("quiz-bench");
+            System.setProperty("quiz.db.url", "jdbc:sqlite:" + directory.resolve("quiz.db"));
+            System.setProperty("quiz.db.poolSize", System.getProperty("quiz.db.poolSize", "32"));
+
+            Path setupSql = Path.of(System.getProperty("quiz.bench.setupSql", "../datebase_setup.sql"));
+            try (Connection conn = QuizApi.getConnection()) {
+                QuizApi.runScript(conn, setupSql);
+                seed(conn);
+            }
+            return new BenchmarkDatabase(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (SQLException e) {
+            throw new IllegalStateException("ベンチマーク用データベースの作成に失敗しました", e);
+        }
+    }
+
+    static String userId(int index) {
+        return String.format("bench%02d", index);
+    }
+
+    private static void seed(Connection conn) throws SQLException {
+        conn.setAutoCommit(false);
+        try (PreparedStatement users = conn.prepareStatement("INSERT INTO users(user_id, password) VALUES (?, ?)");
+                PreparedStatement answers = conn.prepareStatement(
+                        "INSERT INTO user_answers(user_id, question_id, selected_answer, is_correct) VALUES (?, ?, ?, ?)")) {
+            for (int u = 0; u < USER_COUNT; u++) {
+                users.setString(1, userId(u));
+                users.setString(2, QuizApi.hashPassword("pass" + u));
+                users.addBatch();
+                // 奇数の問題は不正解、偶数の問題は正解として履歴を作る
+                for (int q = 1; q <= QUESTION_COUNT; q++) {
+                    answers.setString(1, userId(u));
+                    answers.setInt(2, q);
+                    answers.setString(3, "dummy");
+                    answers.setBoolean(4, q % 2 == 0);
+                    answers.addBatch();
+                }
+            }
+            users.executeBatch();
+            answers.executeBatch();
+            // 解答を直接入れたため、集計テーブルも同じ内容から作る
+            try (Statement stmt = conn.createStatement()) {
+                stmt.executeUpdate("INSERT INTO user_stats(user_id, answered, correct) "
+                        + "SELECT user_id, COUNT(*), SUM(is_correct) FROM user_answers GROUP BY user_id");
+                stmt.executeUpdate("INSERT INTO user_question_stats(user_id, question_id, answered, correct) "
+                        + "SELECT user_id, question_id, 1, is_correct FROM user_answers");
+                stmt.executeUpdate("INSERT INTO user_wrong_set(user_id, question_id) "
+                        + "SELECT user_id, question_id FROM user_answers WHERE is_correct = 0");
+            }
+            conn.commit();
+        } finally {
+            conn.setAutoCommit(true);
+        }
+    }
+
+    @Override
+    public void close() {
+        QuizApi.closeConnection();
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
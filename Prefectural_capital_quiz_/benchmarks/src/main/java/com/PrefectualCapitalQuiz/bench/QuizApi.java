@@ -0,0 +1,123 @@
+package com.PrefectualCapitalQuiz.bench;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * アプリ本体のクラスを呼び出すための橋渡しクラス。
+ *
+ * - アプリ本体は無名パッケージにあり、パッケージ付きのクラスからは import できないため、
+ *   `MethodHandle` 経由で呼び出す。
+ * - ハンドルは `static final` に保持しているため、JIT によって直接呼び出しと同等に最適化される。
+ */
+final class QuizApi {
+    private static final MethodHandle GET_QUESTION_DATA;
+    private static final MethodHandle GET_QUESTIONS_TO_ASK;
+    private static final MethodHandle RECORD_ANSWER;
+    private static final MethodHandle HASH_PASSWORD;
+    private static final MethodHandle GET_CONNECTION;
+    private static final MethodHandle CLOSE_CONNECTION;
+    private static final MethodHandle RUN_SCRIPT;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            Class<?> questionManager = Class.forName("QuestionManager");
+            Class<?> answerManager = Class.forName("AnswerManager");
+            Class<?> credentialService = Class.forName("CredentialService");
+            Class<?> databaseManager = Class.forName("DatabaseManager");
+            Class<?> schemaMigrator = Class.forName("SchemaMigrator");
+
+            GET_QUESTION_DATA = lookup.findStatic(questionManager, "getQuestionData",
+                    MethodType.methodType(Map.class, int.class));
+            GET_QUESTIONS_TO_ASK = lookup.findStatic(questionManager, "getQuestionsToAsk",
+                    MethodType.methodType(List.class, String.class, boolean.class));
+            RECORD_ANSWER = lookup.findStatic(answerManager, "recordAnswer",
+                    MethodType.methodType(void.class, String.class, int.class, String.class, boolean.class));
+            HASH_PASSWORD = lookup.findStatic(credentialService, "hash",
+                    MethodType.methodType(String.class, String.class));
+            GET_CONNECTION = lookup.findStatic(databaseManager, "getConnection",
+                    MethodType.methodType(Connection.class));
+            CLOSE_CONNECTION = lookup.findStatic(databaseManager, "closeConnection",
+                    MethodType.methodType(void.class));
+            RUN_SCRIPT = lookup.findStatic(schemaMigrator, "runScript",
+                    MethodType.methodType(void.class, Connection.class, Path.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private QuizApi() {
+    }
+
+    static Map<?, ?> getQuestionData(int questionId) {
+        try {
+            return (Map<?, ?>) GET_QUESTION_DATA.invokeExact(questionId);
+        } catch (Throwable e) {
+            throw propagate(e);
+        }
+    }
+
+    static List<?> getQuestionsToAsk(String userId, boolean allQuestions) {
+        try {
+            return (List<?>) GET_QUESTIONS_TO_ASK.invokeExact(userId, allQuestions);
+        } catch (Throwable e) {
+            throw propagate(e);
+        }
+    }
+
+    static void recordAnswer(String userId, int questionId, String selectedAnswer, boolean isCorrect) {
+        try {
+            RECORD_ANSWER.invokeExact(userId, questionId, selectedAnswer, isCorrect);
+        } catch (Throwable e) {
+            throw propagate(e);
+        }
+    }
+
+    static String hashPassword(String password) {
+        try {
+            return (String) HASH_PASSWORD.invokeExact(password);
+        } catch (Throwable e) {
+            throw propagate(e);
+        }
+    }
+
+    static Connection getConnection() {
+        try {
+            return (Connection) GET_CONNECTION.invokeExact();
+        } catch (Throwable e) {
+            throw propagate(e);
+        }
+    }
+
+    static void closeConnection() {
+        try {
+            CLOSE_CONNECTION.invokeExact();
+        } catch (Throwable e) {
+            throw propagate(e);
+        }
+    }
+
+    static void runScript(Connection conn, Path script) {
+        try {
+            RUN_SCRIPT.invokeExact(conn, script);
+        } catch (Throwable e) {
+            throw propagate(e);
+        }
+    }
+
+    private static RuntimeException propagate(Throwable e) {
+        if (e instanceof RuntimeException runtime) {
+            return runtime;
+        }
+        if (e instanceof Error error) {
+            throw error;
+        }
+        return new RuntimeException(e);
+    }
+}
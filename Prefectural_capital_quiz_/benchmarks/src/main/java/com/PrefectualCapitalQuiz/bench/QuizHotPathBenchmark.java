@@ -0,0 +1,106 @@
+package com.PrefectualCapitalQuiz.bench;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * クイズアプリのホットパスを計測するベンチマーク。
+ *
+ * - 問題データの取得、出題する問題IDの取得（全問/間違えた問題のみ）、解答の記録、
+ *   パスワードのハッシュ化、接続プールからの接続取得を計測する。
+ * - スレッド数は `-t` オプションで指定する（`run-benchmarks.sh` は 1/4/16 で実行する）。
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class QuizHotPathBenchmark {
+
+    /**
+     * ベンチマーク全体で共有する一時データベース。
+     */
+    @State(Scope.Benchmark)
+    public static class Database {
+        BenchmarkDatabase database;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            database = BenchmarkDatabase.create();
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            database.close();
+        }
+    }
+
+    /**
+     * スレッドごとの乱数と担当ユーザー。
+     */
+    @State(Scope.Thread)
+    public static class Learner {
+        SplittableRandom random;
+        String userId;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            random = new SplittableRandom();
+            userId = BenchmarkDatabase.userId(random.nextInt(BenchmarkDatabase.USER_COUNT));
+        }
+
+        int nextQuestionId() {
+            return 1 + random.nextInt(BenchmarkDatabase.QUESTION_COUNT);
+        }
+    }
+
+    @Benchmark
+    public Map<?, ?> getQuestionData(Database db, Learner learner) {
+        return QuizApi.getQuestionData(learner.nextQuestionId());
+    }
+
+    @Benchmark
+    public List<?> getQuestionsToAskAll(Database db, Learner learner) {
+        return QuizApi.getQuestionsToAsk(learner.userId, true);
+    }
+
+    @Benchmark
+    public List<?> getQuestionsToAskWrongOnly(Database db, Learner learner) {
+        return QuizApi.getQuestionsToAsk(learner.userId, false);
+    }
+
+    @Benchmark
+    public void recordAnswer(Database db, Learner learner) {
+        int questionId = learner.nextQuestionId();
+        QuizApi.recordAnswer(learner.userId, questionId, "bench", learner.random.nextBoolean());
+    }
+
+    @Benchmark
+    public String hashPassword(Learner learner) {
+        return QuizApi.hashPassword("pw" + learner.random.nextInt(1_000));
+    }
+
+    @Benchmark
+    public boolean acquireConnection(Database db) throws SQLException {
+        try (Connection conn = QuizApi.getConnection()) {
+            return conn.getAutoCommit();
+        }
+    }
+}
@@ -0,0 +1,26 @@
+#!/usr/bin/env bash
+# 実行可能 jar (target/quiz.jar) を作り、起動時に読み込むクラスを AppCDS のアーカイブ (target/quiz.jsa) に書き出す。
+#
+# 使い方: ./build-cds-archive.sh [練習用のデータベース]
+#   練習用のデータベースを省略すると data/quiz.db の複製を使う（移行で書き換わるため元のファイルは使わない）。
+#   StartupPipeline で起動の準備と HTTP サーバーの起動・停止を1回行い、その間に読み込んだクラスを書き出す。
+#   アーカイブは作ったときと同じ JDK と jar でだけ使える（jar を作り直したらアーカイブも作り直す）。
+#   例: java -XX:SharedArchiveFile=target/quiz.jsa -cp target/quiz.jar QuizHttpServer
+#       java -XX:SharedArchiveFile=target/quiz.jsa -jar target/quiz.jar
+set -euo pipefail
+
+cd "$(dirname "$0")"
+
+mvn -B -q package
+
+WORK="$(mktemp -d)"
+trap 'rm -rf "${WORK}"' EXIT
+cp "${1:-data/quiz.db}" "${WORK}/quiz.db"
+
+# 練習用の起動ではメンテナンスとメトリクスの出力を止め、解答ログなどの横のファイルも一時ディレクトリに置く
+java -XX:ArchiveClassesAtExit=target/quiz.jsa \
+    -Dquiz.maintenance.intervalMinutes=0 -Dquiz.metrics.dumpSeconds=0 \
+    -cp target/quiz.jar StartupPipeline --db "${WORK}/quiz.db" --server
+
+echo "アーカイブ: target/quiz.jsa"
+echo "起動: java -XX:SharedArchiveFile=target/quiz.jsa -cp target/quiz.jar QuizHttpServer"
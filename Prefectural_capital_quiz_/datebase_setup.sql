@@ -1,5 +1,6 @@
 --データベースを作成（もし存在しない場合）
 PRAGMA foreign_keys = ON;
+PRAGMA auto_vacuum = INCREMENTAL; --空き領域を DatabaseMaintenance が少しずつ返す(テーブルを作る前に設定する)
 
 --1. ユーザーテーブル
 CREATE TABLE IF NOT EXISTS users(
@@ -24,7 +25,49 @@ CREATE TABLE IF NOT EXISTS user_answers(
     FOREIGN KEY (question_id) REFERENCES questions(question_id)
 );
 
---4. 初期データ: 問題テーブルのデータ(例)
+--(user_id, question_id) ごとに最新の解答を1行だけ保持する（UPSERT で更新）
+--解答した時刻の answered_at 列(エポックミリ秒)はスキーマ移行 6 で追加する(SchemaMigrator)
+CREATE UNIQUE INDEX IF NOT EXISTS idx_user_answers_user_question ON user_answers(user_id, question_id);
+
+--4. 集計テーブル(解答のたびに AnswerManager が差分更新する)
+CREATE TABLE IF NOT EXISTS user_stats(
+    user_id TEXT PRIMARY KEY,                      --ユーザーID
+    answered INTEGER NOT NULL DEFAULT 0,           --通算の解答数
+    correct INTEGER NOT NULL DEFAULT 0             --通算の正解数
+);
+
+CREATE TABLE IF NOT EXISTS user_streaks(
+    user_id TEXT PRIMARY KEY,                      --ユーザーID
+    current_streak INTEGER NOT NULL DEFAULT 0,     --現在の連続正解数
+    best_streak INTEGER NOT NULL DEFAULT 0         --最長の連続正解数
+);
+
+CREATE TABLE IF NOT EXISTS user_question_stats(
+    user_id TEXT NOT NULL,                         --ユーザーID
+    question_id INTEGER NOT NULL,                  --問題ID
+    answered INTEGER NOT NULL DEFAULT 0,           --この問題の解答数
+    correct INTEGER NOT NULL DEFAULT 0,            --この問題の正解数
+    PRIMARY KEY (user_id, question_id)
+) WITHOUT ROWID;
+
+CREATE TABLE IF NOT EXISTS user_wrong_set(
+    user_id TEXT NOT NULL,                         --ユーザーID
+    question_id INTEGER NOT NULL,                  --最後の解答が不正解だった問題ID
+    PRIMARY KEY (user_id, question_id)
+) WITHOUT ROWID;
+
+CREATE TABLE IF NOT EXISTS user_review_schedule(
+    user_id TEXT PRIMARY KEY,                      --ユーザーID
+    schedule BLOB NOT NULL,                        --問題ごとの次回出題時刻と易しさ(SpacedRepetitionScheduler の形式)
+    updated_at INTEGER NOT NULL                    --保存した時刻(エポックミリ秒)
+);
+
+CREATE TABLE IF NOT EXISTS answer_log_checkpoint(
+    id INTEGER PRIMARY KEY CHECK (id = 0),         --1行だけ
+    seq INTEGER NOT NULL                           --反映済みの解答ログの通し番号(AnswerEventLog)
+);
+
+--5. 初期データ: 問題テーブルのデータ(例)
 INSERT INTO questions (prefecture, correct_answer) VALUES
 ('北海道', '札幌'),
 ('青森県', '青森'),
@@ -74,7 +117,7 @@ INSERT INTO questions (prefecture, correct_answer) VALUES
 ('鹿児島県', '鹿児島'),
 ('沖縄県', '那覇');
 
---5. 正常にデータが入っているか確認
+--6. 正常にデータが入っているか確認
 SELECT * FROM users;
 SELECT * FROM questions;
 SELECT * FROM user_answers;
\ No newline at end of file
@@ -0,0 +1,617 @@
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * 解答を追記専用のバイナリのログに書き、まとめて SQLite に反映する保存方式（`quiz.answers.storage=eventlog`）。
+ *
+ * - 解答ごとに SQLite の B-tree のページを書き換える代わりに、ログのファイルの末尾へ順に書く。
+ *   1件は「長さ（4バイト）、CRC-32C（4バイト）、本体」で、本体は通し番号・時刻・問題ID・正誤・ユーザーID・選んだ解答。
+ * - ログは通し番号で始まる名前のセグメント（`answers-<最初の通し番号>.log`、既定 64MB）に分け、`FileChannel` で書く。
+ * - fsync は `quiz.answers.durability` に従ってまとめる。
+ *   - `SYNC` / `GROUP_COMMIT`: 書いた解答が fsync されるまで待つ。同時に待っている解答は1回の fsync でまとめて書き出す。
+ *   - `ASYNC`: 待たずに戻り、`quiz.eventlog.fsyncMillis`（既定 100ms）ごとに書き出す。
+ * - `quiz.eventlog.compactMillis`（既定 1000ms）ごとに、前回以降の解答を `AnswerManager` でまとめて `user_answers` と
+ *   集計テーブルに反映する（スナップショット）。反映済みの通し番号は解答と同じトランザクションで
+ *   `answer_log_checkpoint` に記録するため、途中で止まっても二重に反映しない。
+ *   集計・ランキング・進捗への反映はこのときに行われるため、最大でこの間隔だけ遅れる（`AnswerRecorder.flush()` で即座に反映できる）。
+ * - 起動時（`open()`）に、反映済みの通し番号より後の解答をログから読み直して反映する。
+ *   最後のセグメントの末尾にある壊れた（書きかけの）解答は切り捨てる。
+ * - 全体を反映し終えたセグメントは削除する。`quiz.eventlog.retainSegments` に N を指定すると、直近の N 個を残し、
+ *   `readHistory()` で過去のある時点までの解答を順に読める。
+ * - ログの置き場所は `quiz.eventlog.dir`（既定はデータベースファイルの横の `<名前>.answer-log`）。
+ */
+public final class AnswerEventLog {
+    private static final Logger LOGGER = Logger.getLogger(AnswerEventLog.class.getName());
+
+    private static final int SEGMENT_MAGIC = 0x515A454C; // "QZEL"
+    private static final int FORMAT_VERSION = 1;
+    private static final int SEGMENT_HEADER_BYTES = 8;
+    private static final int RECORD_HEADER_BYTES = 8;
+    private static final int FIXED_PAYLOAD_BYTES = 8 + 8 + 4 + 1 + 2 + 2;
+    private static final int MAX_PAYLOAD_BYTES = 4096;
+    private static final String SEGMENT_PREFIX = "answers-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String CHECKPOINT_FILE = "checkpoint";
+
+    private static final long SEGMENT_BYTES = Long.getLong("quiz.eventlog.segmentBytes", 64L << 20);
+    private static final long FSYNC_MILLIS = Long.getLong("quiz.eventlog.fsyncMillis", 100);
+    private static final long COMPACT_MILLIS = Long.getLong("quiz.eventlog.compactMillis", 1000);
+    private static final int RETAIN_SEGMENTS = Integer.getInteger("quiz.eventlog.retainSegments", 0);
+
+    /** ロックの順序は compactLock → appendLock → syncLock */
+    private static final ReentrantLock compactLock = new ReentrantLock();
+    private static final ReentrantLock appendLock = new ReentrantLock();
+    private static final ReentrantLock syncLock = new ReentrantLock();
+
+    // appendLock で保護する
+    private static Path directory;
+    private static Path segment;
+    private static long segmentBytes;
+    private static long nextSeq;
+    private static List<List<LoggedAnswer>> pending; // 解答用データベースごとの未反映の解答（通し番号順）
+    private static ScheduledExecutorService background;
+
+    // compactLock で保護する
+    private static boolean[] uncertain; // コミットしたか分からないまま反映し直す解答が残っている解答用データベース
+
+    private static volatile boolean open;
+    private static volatile FileChannel channel;
+    private static volatile long writtenSeq;
+    private static volatile long durableSeq;
+    private static volatile long compactedSeq;
+
+    private static final LongAdder appended = new LongAdder();
+    private static final LongAdder fsyncs = new LongAdder();
+    private static final LongAdder compacted = new LongAdder();
+
+    private AnswerEventLog() {
+    }
+
+    /**
+     * ログに書いた解答。
+     *
+     * @param seq             通し番号（1始まり）
+     * @param timestampMillis 書いた時刻（エポックミリ秒）
+     * @param answer          解答
+     */
+    public record LoggedAnswer(long seq, long timestampMillis, AnswerRecord answer) {
+    }
+
+    /**
+     * ログを開き、前回までに反映されていない解答を読み直して反映する。開いている場合は何もしない。
+     *
+     * @throws RuntimeException ログを読めなかった、または反映に失敗した場合
+     */
+    public static void open() {
+        if (open) {
+            return;
+        }
+        compactLock.lock();
+        try {
+            appendLock.lock();
+            try {
+                if (open) {
+                    return;
+                }
+                recover();
+            } finally {
+                appendLock.unlock();
+            }
+            compactLocked(); // 読み直した解答を反映する
+        } catch (IOException | SQLException e) {
+            LOGGER.log(Level.SEVERE, "解答ログの読み込みに失敗", e);
+            throw new RuntimeException("解答ログの読み込み中にエラーが発生しました", e);
+        } finally {
+            compactLock.unlock();
+        }
+    }
+
+    /**
+     * 解答をログの末尾に書く。
+     *
+     * @param answer       解答
+     * @param waitDurable  fsync されるまで待つ場合は `true`
+     * @return 通し番号
+     */
+    public static long append(AnswerRecord answer, boolean waitDurable) {
+        byte[] userId = answer.userId().getBytes(StandardCharsets.UTF_8);
+        byte[] selected = answer.selectedAnswer().getBytes(StandardCharsets.UTF_8);
+        int payload = FIXED_PAYLOAD_BYTES + userId.length + selected.length;
+        if (payload > MAX_PAYLOAD_BYTES) {
+            throw new IllegalArgumentException("解答が長すぎます");
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_HEADER_BYTES + payload);
+        open();
+
+        long seq;
+        appendLock.lock();
+        try {
+            if (!open) {
+                throw new IllegalStateException("解答ログは閉じています。");
+            }
+            seq = nextSeq;
+            long now = System.currentTimeMillis();
+            buffer.putInt(payload).putInt(0) // CRC は本体を書いた後に埋める
+                    .putLong(seq).putLong(now).putInt(answer.questionId()).put((byte) (answer.isCorrect() ? 1 : 0))
+                    .putShort((short) userId.length).put(userId)
+                    .putShort((short) selected.length).put(selected);
+            CRC32C crc = new CRC32C();
+            crc.update(buffer.array(), RECORD_HEADER_BYTES, payload);
+            buffer.putInt(4, (int) crc.getValue());
+            buffer.flip();
+
+            if (segmentBytes + buffer.remaining() > SEGMENT_BYTES && segmentBytes > SEGMENT_HEADER_BYTES) {
+                rollOver(seq);
+            }
+            write(buffer);
+            nextSeq++;
+            writtenSeq = seq;
+            pending.get(DatabaseManager.answerShardOf(answer.userId())).add(new LoggedAnswer(seq, now, answer));
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "データベースエラー: 解答ログへの書き込みに失敗", e);
+            throw new RuntimeException("解答の記録中にエラーが発生しました", e);
+        } finally {
+            appendLock.unlock();
+        }
+        appended.increment();
+        if (waitDurable) {
+            sync(seq);
+        }
+        return seq;
+    }
+
+    /**
+     * 未反映の解答をすべて `user_answers` と集計テーブルに反映する（スナップショット）。
+     *
+     * - 反映に失敗した解答はログに残したまま、次の機会に反映し直す。
+     */
+    public static void compact() {
+        if (!open) {
+            return;
+        }
+        compactLock.lock();
+        try {
+            compactLocked();
+        } finally {
+            compactLock.unlock();
+        }
+    }
+
+    /**
+     * 未反映の解答を反映し、ログを閉じる。アプリ終了時に呼ぶ。
+     */
+    public static void close() {
+        ScheduledExecutorService stopping;
+        appendLock.lock();
+        try {
+            stopping = background;
+            background = null;
+        } finally {
+            appendLock.unlock();
+        }
+        if (stopping != null) {
+            stopping.shutdown();
+            try {
+                stopping.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        compactLock.lock();
+        try {
+            if (!open) {
+                return;
+            }
+            compactLocked();
+            appendLock.lock();
+            try {
+                sync(writtenSeq);
+                channel.close();
+                open = false;
+            } finally {
+                appendLock.unlock();
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "解答ログのクローズに失敗しました", e);
+        } finally {
+            compactLock.unlock();
+        }
+    }
+
+    /**
+     * 残しているセグメントから、過去の解答を通し番号順に読む。
+     *
+     * @param fromSeq     この通し番号以降を読む
+     * @param untilMillis この時刻（エポックミリ秒）までに書かれた解答を読む
+     * @param consumer    解答を受け取る処理
+     * @throws IOException ログを読めなかった場合
+     */
+    public static void readHistory(long fromSeq, long untilMillis, Consumer<LoggedAnswer> consumer) throws IOException {
+        Path dir = logDirectory();
+        if (!Files.isDirectory(dir)) {
+            return;
+        }
+        for (Path file : listSegments(dir)) {
+            scan(file, answer -> {
+                if (answer.seq() >= fromSeq && answer.timestampMillis() <= untilMillis) {
+                    consumer.accept(answer);
+                }
+            });
+        }
+    }
+
+    /**
+     * @return 書いた件数・fsync の回数・反映した件数などの統計
+     */
+    public static String stats() {
+        return "appended=" + appended.sum() + " fsyncs=" + fsyncs.sum() + " compacted=" + compacted.sum()
+                + " written=" + writtenSeq + " durable=" + durableSeq + " checkpoint=" + compactedSeq;
+    }
+
+    /**
+     * 反映済みの通し番号を調べ、それより後の解答をセグメントから読み直して `pending` に積む（appendLock を持って呼ぶこと）。
+     * 新しい解答は新しいセグメントに書く。
+     */
+    private static void recover() throws IOException, SQLException {
+        long start = System.nanoTime();
+        if (background != null) { // 書き込みに失敗して開き直す場合
+            background.shutdownNow();
+            background = null;
+        }
+        if (channel != null && channel.isOpen()) {
+            channel.close();
+        }
+        directory = logDirectory();
+        Files.createDirectories(directory);
+        long global = readCheckpoint(directory);
+        int shardCount = DatabaseManager.answerShardCount();
+        long[] applied = new long[shardCount];
+        long[] maxSeq = { global };
+        for (int shard = 0; shard < shardCount; shard++) {
+            applied[shard] = Math.max(global, AnswerManager.loggedCheckpoint(shard));
+            maxSeq[0] = Math.max(maxSeq[0], applied[shard]);
+        }
+
+        pending = newPending(shardCount);
+        uncertain = new boolean[shardCount];
+        int[] replayed = { 0 };
+        List<Path> segments = listSegments(directory);
+        for (int i = 0; i < segments.size(); i++) {
+            Path file = segments.get(i);
+            long validBytes = scan(file, answer -> {
+                maxSeq[0] = Math.max(maxSeq[0], answer.seq());
+                int shard = DatabaseManager.answerShardOf(answer.answer().userId());
+                if (answer.seq() > applied[shard]) {
+                    pending.get(shard).add(answer);
+                    replayed[0]++;
+                }
+            });
+            if (validBytes < Files.size(file)) {
+                if (i < segments.size() - 1) {
+                    throw new IOException("解答ログが途中で壊れています: " + file);
+                }
+                LOGGER.warning("解答ログの末尾の書きかけの解答を切り捨てます: " + file + " (" + validBytes + " バイトまで有効)");
+                try (FileChannel truncating = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                    truncating.truncate(validBytes);
+                    truncating.force(true);
+                }
+            }
+        }
+
+        nextSeq = maxSeq[0] + 1;
+        writtenSeq = maxSeq[0];
+        durableSeq = maxSeq[0];
+        compactedSeq = global;
+        openSegment(nextSeq);
+        open = true;
+
+        background = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "answer-log");
+            thread.setDaemon(true);
+            return thread;
+        });
+        background.scheduleWithFixedDelay(AnswerEventLog::compactQuietly, COMPACT_MILLIS, COMPACT_MILLIS, TimeUnit.MILLISECONDS);
+        if (AnswerRecorder.mode() == AnswerRecorder.DurabilityMode.ASYNC) {
+            background.scheduleWithFixedDelay(() -> sync(writtenSeq), FSYNC_MILLIS, FSYNC_MILLIS, TimeUnit.MILLISECONDS);
+        }
+        LOGGER.info(String.format("解答ログを開きました: %s 次の通し番号=%d 再反映=%d 件 (%.1f ms)",
+                directory, nextSeq, replayed[0], (System.nanoTime() - start) / 1e6));
+    }
+
+    /**
+     * 未反映の解答を解答用データベースごとに1トランザクションで反映する（compactLock を持って呼ぶこと）。
+     *
+     * - `SQLException` はコミット前の失敗のため、同じ解答を次の機会に反映し直す。
+     * - それ以外の例外ではコミットしたか分からないため、反映し直す前にデータベースの反映済みの通し番号を読み、
+     *   それまでの解答を捨てる（二重に反映しないため）。
+     */
+    private static void compactLocked() {
+        List<List<LoggedAnswer>> batches;
+        long snapshotSeq;
+        appendLock.lock();
+        try {
+            if (!open) {
+                return;
+            }
+            batches = pending;
+            pending = newPending(batches.size());
+            snapshotSeq = nextSeq - 1;
+        } finally {
+            appendLock.unlock();
+        }
+
+        boolean complete = true;
+        for (int shard = 0; shard < batches.size(); shard++) {
+            List<LoggedAnswer> batch = batches.get(shard);
+            if (batch.isEmpty()) {
+                continue;
+            }
+            try {
+                List<AnswerRecord> answers = new ArrayList<>(batch.size());
+                long checkpoint = uncertain[shard] ? AnswerManager.loggedCheckpoint(shard) : 0;
+                for (LoggedAnswer logged : batch) {
+                    if (logged.seq() > checkpoint) {
+                        answers.add(logged.answer());
+                    }
+                }
+                uncertain[shard] = false;
+                if (!answers.isEmpty()) {
+                    try {
+                        AnswerManager.recordLoggedAnswers(shard, answers, batch.get(batch.size() - 1).seq());
+                    } catch (RuntimeException e) {
+                        uncertain[shard] = true;
+                        throw e;
+                    }
+                    compacted.add(answers.size());
+                }
+            } catch (SQLException | RuntimeException e) {
+                LOGGER.log(Level.WARNING, "解答ログの反映に失敗しました。次の機会に反映し直します。", e);
+                complete = false;
+                appendLock.lock();
+                try {
+                    pending.get(shard).addAll(0, batch);
+                } finally {
+                    appendLock.unlock();
+                }
+            }
+        }
+        if (complete && snapshotSeq > compactedSeq) {
+            try {
+                writeCheckpoint(directory, snapshotSeq);
+                compactedSeq = snapshotSeq;
+                deleteCompactedSegments();
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "解答ログの反映済みの位置を記録できませんでした", e);
+            }
+        }
+    }
+
+    private static void compactQuietly() {
+        try {
+            compact();
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "解答ログの反映に失敗しました", e);
+        }
+    }
+
+    /**
+     * 指定した通し番号までを fsync する。先に fsync した別のスレッドが書き出していれば何もしない。
+     */
+    private static void sync(long seq) {
+        if (durableSeq >= seq) {
+            return;
+        }
+        syncLock.lock();
+        try {
+            if (durableSeq >= seq) {
+                return;
+            }
+            long target = writtenSeq; // 先に読む（これより後にセグメントが切り替わっていれば、古い方は書き出し済み）
+            FileChannel current = channel;
+            current.force(false);
+            durableSeq = Math.max(durableSeq, target);
+            fsyncs.increment();
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "データベースエラー: 解答ログの書き出しに失敗", e);
+            throw new RuntimeException("解答の記録中にエラーが発生しました", e);
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    /**
+     * セグメントの末尾に書く。途中で失敗した場合は書く前の長さに戻し、壊れた解答を残さない（appendLock を持って呼ぶこと）。
+     */
+    private static void write(ByteBuffer buffer) throws IOException {
+        int length = buffer.remaining();
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } catch (IOException e) {
+            try {
+                channel.truncate(segmentBytes);
+                channel.position(segmentBytes);
+            } catch (IOException truncateError) {
+                e.addSuppressed(truncateError);
+                open = false; // 次に使うときに開き直して末尾を検査する
+            }
+            throw e;
+        }
+        segmentBytes += length;
+    }
+
+    /**
+     * 今のセグメントを書き出して閉じ、新しいセグメントに切り替える（appendLock を持って呼ぶこと）。
+     */
+    private static void rollOver(long firstSeq) throws IOException {
+        syncLock.lock();
+        try {
+            channel.force(false);
+            durableSeq = writtenSeq;
+            channel.close();
+            openSegment(firstSeq);
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    /**
+     * 新しいセグメントを作る。同じ名前のファイルがあっても、その通し番号以降の解答は含まれていない（ヘッダーだけ）ため作り直す。
+     */
+    private static void openSegment(long firstSeq) throws IOException {
+        segment = directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, firstSeq, SEGMENT_SUFFIX));
+        FileChannel created = FileChannel.open(segment, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        ByteBuffer header = ByteBuffer.allocate(SEGMENT_HEADER_BYTES).putInt(SEGMENT_MAGIC).putInt(FORMAT_VERSION).flip();
+        while (header.hasRemaining()) {
+            created.write(header);
+        }
+        channel = created;
+        segmentBytes = SEGMENT_HEADER_BYTES;
+    }
+
+    /**
+     * 全体を反映し終えたセグメント（次のセグメントの最初の通し番号 - 1 が反映済み）を、直近の `RETAIN_SEGMENTS` 個を残して削除する。
+     */
+    private static void deleteCompactedSegments() throws IOException {
+        Path current;
+        appendLock.lock();
+        try {
+            current = segment;
+        } finally {
+            appendLock.unlock();
+        }
+        List<Path> segments = listSegments(directory);
+        List<Path> done = new ArrayList<>();
+        for (int i = 0; i + 1 < segments.size() && !segments.get(i).equals(current); i++) {
+            if (firstSeqOf(segments.get(i + 1)) - 1 <= compactedSeq) {
+                done.add(segments.get(i));
+            }
+        }
+        for (int i = 0; i < done.size() - RETAIN_SEGMENTS; i++) {
+            Files.deleteIfExists(done.get(i));
+        }
+    }
+
+    /**
+     * セグメントを先頭から読み、CRC が合う解答を順に渡す。
+     *
+     * @return 正しく読めた末尾の位置（バイト）。ファイルの長さより小さい場合、そこから先は壊れている
+     */
+    private static long scan(Path file, Consumer<LoggedAnswer> consumer) throws IOException {
+        try (InputStream raw = Files.newInputStream(file);
+                DataInputStream in = new DataInputStream(new BufferedInputStream(raw, 1 << 16))) {
+            if (in.readInt() != SEGMENT_MAGIC || in.readInt() != FORMAT_VERSION) {
+                throw new IOException("解答ログの形式が違います: " + file);
+            }
+            long valid = SEGMENT_HEADER_BYTES;
+            byte[] payload = new byte[MAX_PAYLOAD_BYTES];
+            CRC32C crc = new CRC32C();
+            while (true) {
+                int length;
+                int checksum;
+                try {
+                    length = in.readInt();
+                    checksum = in.readInt();
+                    if (length < FIXED_PAYLOAD_BYTES || length > MAX_PAYLOAD_BYTES) {
+                        return valid;
+                    }
+                    in.readFully(payload, 0, length);
+                } catch (EOFException e) {
+                    return valid;
+                }
+                crc.reset();
+                crc.update(payload, 0, length);
+                if ((int) crc.getValue() != checksum) {
+                    return valid;
+                }
+                consumer.accept(decode(ByteBuffer.wrap(payload, 0, length)));
+                valid += RECORD_HEADER_BYTES + length;
+            }
+        } catch (EOFException e) {
+            return 0; // ヘッダーも書き終えていない
+        }
+    }
+
+    private static LoggedAnswer decode(ByteBuffer payload) {
+        long seq = payload.getLong();
+        long timestamp = payload.getLong();
+        int questionId = payload.getInt();
+        boolean correct = payload.get() != 0;
+        String userId = readString(payload);
+        String selected = readString(payload);
+        return new LoggedAnswer(seq, timestamp, new AnswerRecord(userId, questionId, selected, correct));
+    }
+
+    private static String readString(ByteBuffer payload) {
+        int length = payload.getShort() & 0xFFFF;
+        String value = new String(payload.array(), payload.arrayOffset() + payload.position(), length, StandardCharsets.UTF_8);
+        payload.position(payload.position() + length);
+        return value;
+    }
+
+    private static List<Path> listSegments(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(file -> {
+                String name = file.getFileName().toString();
+                return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+            }).sorted().toList(); // 通し番号を0埋めしているため、名前順が通し番号順
+        }
+    }
+
+    private static long firstSeqOf(Path file) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    /**
+     * すべての解答用データベースに反映済みの通し番号（ファイルがない場合は 0）。
+     */
+    private static long readCheckpoint(Path dir) throws IOException {
+        Path file = dir.resolve(CHECKPOINT_FILE);
+        return Files.exists(file) ? Long.parseLong(Files.readString(file).trim()) : 0;
+    }
+
+    private static void writeCheckpoint(Path dir, long seq) throws IOException {
+        Path tmp = dir.resolve(CHECKPOINT_FILE + ".tmp");
+        Files.writeString(tmp, Long.toString(seq));
+        Files.move(tmp, dir.resolve(CHECKPOINT_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static Path logDirectory() {
+        String dir = System.getProperty("quiz.eventlog.dir");
+        return dir != null ? Path.of(dir) : DatabaseManager.sidecarPath(".answer-log");
+    }
+
+    private static List<List<LoggedAnswer>> newPending(int shardCount) {
+        List<List<LoggedAnswer>> lists = new ArrayList<>(shardCount);
+        for (int i = 0; i < shardCount; i++) {
+            lists.add(new ArrayList<>());
+        }
+        return lists;
+    }
+}
@@ -0,0 +1,553 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * 解答履歴（`user_answers` に問題文と正解を結合したもの）を分析用にファイルへ書き出すツール。
+ *
+ * - 前方向のみのカーソルで1行ずつ読み、読んだそばから書き出す。履歴の件数によらずメモリ使用量は一定。
+ *   行はユーザーID・問題ID順（一意インデックスの順）に出るため、並べ替えは発生しない。
+ * - 問題文と正解は問題カタログ（メモリ上）から補う。解答用データベースを分けている場合も同じ方法で結合でき、
+ *   ファイルを順に読む（この場合、ユーザーID順になるのはファイルの中だけ）。カタログにない問題への解答は書き出さない。
+ * - 出力は固定サイズの直接バッファに文字列を UTF-8 で直接書き込み、満杯になるたびに `FileChannel` へ書く。
+ *   1行ごとの文字列の連結やバイト配列の確保はしない。
+ * - 形式は CSV と、列ごとにまとめたバイナリ形式（下記）を選べる。`--user` で1ユーザー分だけを書き出せる。
+ * - 書き出し中は読み取りのスナップショットを保持するため、解答の記録は妨げないが WAL のチェックポイントは遅れる。
+ * - 保存期間を過ぎて `DatabaseMaintenance` が集約した解答は `user_answers` に残らないため、書き出されない。
+ *
+ * バイナリ形式（数値はビッグエンディアン、varint は 7 ビットずつの可変長）:
+ * <pre>
+ * ヘッダー   : "QZAH" | version(1 バイト) | 列数(1 バイト) | 列名(varint 長さ + UTF-8) × 列数
+ * 行グループ : 行数(int, 最大 4096) | 列ブロック × 列数
+ *              列ブロック = バイト数(int) | 内容
+ *              - user_id / prefecture / correct_answer / selected_answer:
+ *                辞書の件数(varint) | 辞書の文字列(varint 長さ + UTF-8) | 行ごとの辞書番号(varint)
+ *              - question_id: 前の行との差(zigzag varint)
+ *              - is_correct: 1行1ビット（下位ビットから）
+ * 終端       : 行数 0(int) | 総行数(long)
+ * </pre>
+ *
+ * 使い方:
+ * <pre>
+ * java AnswerHistoryExporter --out answers.csv
+ * java AnswerHistoryExporter --out answers.qzc --format columnar --fetch-size 5000
+ * java AnswerHistoryExporter --out u1.csv --user u1 --db data/quiz.db
+ * </pre>
+ */
+public class AnswerHistoryExporter {
+    private static final Logger LOGGER = Logger.getLogger(AnswerHistoryExporter.class.getName());
+
+    private static final String SELECT_COLUMNS = "SELECT user_id, question_id, selected_answer, is_correct FROM user_answers ";
+    private static final String ALL_SQL = SELECT_COLUMNS + "ORDER BY user_id, question_id";
+    private static final String USER_SQL = SELECT_COLUMNS + "WHERE user_id = ? ORDER BY question_id";
+    private static final String[] COLUMNS =
+            { "user_id", "question_id", "prefecture", "correct_answer", "selected_answer", "is_correct" };
+
+    public static void main(String[] args) throws Exception {
+        Options options = Options.parse(args);
+        if (options.database != null) {
+            System.setProperty("quiz.db.url", "jdbc:sqlite:" + options.database);
+        }
+        try {
+            long start = System.nanoTime();
+            long rows = export(options);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.println(String.format(Locale.ROOT, "書き出し完了: %,d 行 %.1f 秒 (%.0f 行/秒) → %s",
+                    rows, seconds, rows / seconds, options.out));
+        } finally {
+            DatabaseManager.closeConnection();
+        }
+    }
+
+    /**
+     * 解答履歴をファイルへ書き出す。
+     *
+     * @param options 書き出しの設定
+     * @return 書き出した行数
+     * @throws IOException ファイルに書き込めなかった場合
+     */
+    static long export(Options options) throws IOException {
+        QuestionCatalog catalog = QuestionCatalog.get();
+        try (RowWriter writer = options.columnar() ? new ColumnarWriter(options.out) : new CsvWriter(options.out)) {
+            long rows = 0;
+            if (options.userId != null) {
+                rows = exportShard(DatabaseManager.answerShardOf(options.userId), options, catalog, writer);
+            } else {
+                for (int shard = 0; shard < DatabaseManager.answerShardCount(); shard++) {
+                    rows += exportShard(shard, options, catalog, writer);
+                }
+            }
+            writer.finish(rows);
+            return rows;
+        } catch (SQLException e) {
+            LOGGER.log(Level.SEVERE, "データベースエラー: 解答履歴の書き出しに失敗", e);
+            throw new RuntimeException("解答履歴の書き出し中にエラーが発生しました", e);
+        }
+    }
+
+    private static long exportShard(int shard, Options options, QuestionCatalog catalog, RowWriter writer)
+            throws SQLException, IOException {
+        String sql = options.userId == null ? ALL_SQL : USER_SQL;
+        try (Connection conn = DatabaseManager.getAnswerShardReadConnection(shard);
+                PreparedStatement pstmt = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            pstmt.setFetchSize(options.fetchSize);
+            if (options.userId != null) {
+                pstmt.setString(1, options.userId);
+            }
+            long rows = 0;
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    int index = catalog.indexOf(rs.getInt(2));
+                    if (index < 0) {
+                        continue;
+                    }
+                    writer.write(rs.getString(1), rs.getInt(2), catalog.prefecture(index), catalog.correctAnswer(index),
+                            rs.getString(3), rs.getInt(4) == 1);
+                    rows++;
+                }
+            }
+            return rows;
+        }
+    }
+
+    /**
+     * 1行ずつ受け取って書き出す出力形式。
+     */
+    private interface RowWriter extends Closeable {
+        void write(String userId, int questionId, String prefecture, String correctAnswer,
+                String selectedAnswer, boolean correct) throws IOException;
+
+        void finish(long rows) throws IOException;
+    }
+
+    /**
+     * RFC 4180 形式の CSV（見出し行つき、改行は LF）。
+     */
+    private static final class CsvWriter implements RowWriter {
+        private final ChannelOutput out;
+
+        CsvWriter(Path file) throws IOException {
+            this.out = new ChannelOutput(file);
+            for (int i = 0; i < COLUMNS.length; i++) {
+                if (i > 0) {
+                    out.putByte(',');
+                }
+                out.putUtf8(COLUMNS[i]);
+            }
+            out.putByte('\n');
+        }
+
+        @Override
+        public void write(String userId, int questionId, String prefecture, String correctAnswer,
+                String selectedAnswer, boolean correct) throws IOException {
+            field(userId);
+            out.putByte(',');
+            out.putDecimal(questionId);
+            out.putByte(',');
+            field(prefecture);
+            out.putByte(',');
+            field(correctAnswer);
+            out.putByte(',');
+            field(selectedAnswer);
+            out.putByte(',');
+            out.putByte(correct ? '1' : '0');
+            out.putByte('\n');
+        }
+
+        private void field(String value) throws IOException {
+            if (!needsQuotes(value)) {
+                out.putUtf8(value);
+                return;
+            }
+            out.putByte('"');
+            int from = 0;
+            int quote;
+            while ((quote = value.indexOf('"', from)) >= 0) {
+                out.putUtf8(value, from, quote + 1);
+                out.putByte('"');
+                from = quote + 1;
+            }
+            out.putUtf8(value, from, value.length());
+            out.putByte('"');
+        }
+
+        private static boolean needsQuotes(String value) {
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c == ',' || c == '"' || c == '\n' || c == '\r') {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public void finish(long rows) {
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+
+    /**
+     * 列ごとにまとめたバイナリ形式（クラスの説明を参照）。
+     * 行グループ1つ分（最大 4096 行）だけを配列に溜め、列ごとに符号化して書き出す。
+     */
+    private static final class ColumnarWriter implements RowWriter {
+        private static final byte[] MAGIC = { 'Q', 'Z', 'A', 'H' };
+        private static final byte VERSION = 1;
+        private static final int ROW_GROUP = 4096;
+
+        private final ChannelOutput out;
+        private final String[] userIds = new String[ROW_GROUP];
+        private final int[] questionIds = new int[ROW_GROUP];
+        private final String[] prefectures = new String[ROW_GROUP];
+        private final String[] correctAnswers = new String[ROW_GROUP];
+        private final String[] selectedAnswers = new String[ROW_GROUP];
+        private final byte[] correctBits = new byte[ROW_GROUP / 8];
+        private final Map<String, Integer> dictionary = new HashMap<>();
+        private final int[] codes = new int[ROW_GROUP];
+        private ByteBuffer block = ByteBuffer.allocate(64 * 1024); // 列ブロック1つ分（必要に応じて広げる）
+        private int count;
+
+        ColumnarWriter(Path file) throws IOException {
+            this.out = new ChannelOutput(file);
+            for (byte b : MAGIC) {
+                out.putByte(b);
+            }
+            out.putByte(VERSION);
+            out.putByte(COLUMNS.length);
+            for (String column : COLUMNS) {
+                out.putVarint(ChannelOutput.utf8Length(column, 0, column.length()));
+                out.putUtf8(column);
+            }
+        }
+
+        @Override
+        public void write(String userId, int questionId, String prefecture, String correctAnswer,
+                String selectedAnswer, boolean correct) throws IOException {
+            userIds[count] = userId;
+            questionIds[count] = questionId;
+            prefectures[count] = prefecture;
+            correctAnswers[count] = correctAnswer;
+            selectedAnswers[count] = selectedAnswer;
+            if (correct) {
+                correctBits[count >>> 3] |= (byte) (1 << (count & 7));
+            }
+            if (++count == ROW_GROUP) {
+                flushGroup();
+            }
+        }
+
+        @Override
+        public void finish(long rows) throws IOException {
+            if (count > 0) {
+                flushGroup();
+            }
+            out.putInt(0);
+            out.putLong(rows);
+        }
+
+        private void flushGroup() throws IOException {
+            out.putInt(count);
+            writeDictionaryColumn(userIds);
+            writeQuestionIds();
+            writeDictionaryColumn(prefectures);
+            writeDictionaryColumn(correctAnswers);
+            writeDictionaryColumn(selectedAnswers);
+            writeBlock(correctBits, (count + 7) >>> 3);
+
+            Arrays.fill(userIds, 0, count, null); // 次の行グループまで文字列を保持しない
+            Arrays.fill(prefectures, 0, count, null);
+            Arrays.fill(correctAnswers, 0, count, null);
+            Arrays.fill(selectedAnswers, 0, count, null);
+            Arrays.fill(correctBits, (byte) 0);
+            count = 0;
+        }
+
+        private void writeDictionaryColumn(String[] values) throws IOException {
+            dictionary.clear();
+            block.clear();
+            for (int i = 0; i < count; i++) {
+                codes[i] = dictionary.computeIfAbsent(values[i], value -> dictionary.size());
+            }
+            String[] entries = new String[dictionary.size()];
+            for (Map.Entry<String, Integer> entry : dictionary.entrySet()) {
+                entries[entry.getValue()] = entry.getKey();
+            }
+            ensureBlock(5);
+            putVarint(entries.length);
+            for (String entry : entries) {
+                int length = ChannelOutput.utf8Length(entry, 0, entry.length());
+                ensureBlock(5 + length);
+                putVarint(length);
+                ChannelOutput.encodeUtf8(entry, 0, entry.length(), block);
+            }
+            ensureBlock(count * 5);
+            for (int i = 0; i < count; i++) {
+                putVarint(codes[i]);
+            }
+            writeBlock(block.array(), block.position());
+        }
+
+        private void writeQuestionIds() throws IOException {
+            block.clear();
+            ensureBlock(count * 5);
+            int previous = 0;
+            for (int i = 0; i < count; i++) {
+                int delta = questionIds[i] - previous;
+                putVarint((delta << 1) ^ (delta >> 31)); // zigzag
+                previous = questionIds[i];
+            }
+            writeBlock(block.array(), block.position());
+        }
+
+        private void writeBlock(byte[] bytes, int length) throws IOException {
+            out.putInt(length);
+            out.putBytes(bytes, length);
+        }
+
+        private void ensureBlock(int bytes) {
+            if (block.remaining() < bytes) {
+                ByteBuffer larger = ByteBuffer.allocate(Math.max(block.capacity() * 2, block.position() + bytes));
+                block.flip();
+                larger.put(block);
+                block = larger;
+            }
+        }
+
+        private void putVarint(int value) {
+            while ((value & ~0x7F) != 0) {
+                block.put((byte) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            block.put((byte) value);
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+
+    /**
+     * 直接バッファに溜めて `FileChannel` へ書き出す出力先。
+     */
+    private static final class ChannelOutput implements Closeable {
+        private static final int BUFFER_BYTES = 1 << 20;
+
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+
+        ChannelOutput(Path file) throws IOException {
+            this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+        }
+
+        void putByte(int b) throws IOException {
+            ensure(1);
+            buffer.put((byte) b);
+        }
+
+        void putInt(int value) throws IOException {
+            ensure(4);
+            buffer.putInt(value);
+        }
+
+        void putLong(long value) throws IOException {
+            ensure(8);
+            buffer.putLong(value);
+        }
+
+        void putVarint(int value) throws IOException {
+            ensure(5);
+            while ((value & ~0x7F) != 0) {
+                buffer.put((byte) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            buffer.put((byte) value);
+        }
+
+        /**
+         * 0 以上の整数を10進数の文字列として書く。
+         */
+        void putDecimal(int value) throws IOException {
+            ensure(11);
+            if (value == 0) {
+                buffer.put((byte) '0');
+                return;
+            }
+            int digits = 0;
+            for (int v = value; v > 0; v /= 10) {
+                digits++;
+            }
+            int end = buffer.position() + digits;
+            for (int i = end - 1; value > 0; i--, value /= 10) {
+                buffer.put(i, (byte) ('0' + value % 10));
+            }
+            buffer.position(end);
+        }
+
+        void putBytes(byte[] bytes, int length) throws IOException {
+            int offset = 0;
+            while (offset < length) {
+                ensure(1);
+                int chunk = Math.min(buffer.remaining(), length - offset);
+                buffer.put(bytes, offset, chunk);
+                offset += chunk;
+            }
+        }
+
+        void putUtf8(String value) throws IOException {
+            putUtf8(value, 0, value.length());
+        }
+
+        void putUtf8(String value, int from, int to) throws IOException {
+            // 1文字は UTF-8 で最大3バイト（サロゲートペアは2文字で4バイト）。バッファより長い文字列は分けて書く。
+            int chunkChars = BUFFER_BYTES / 3 - 1;
+            for (int start = from; start < to;) {
+                int end = Math.min(to, start + chunkChars);
+                if (end < to && Character.isHighSurrogate(value.charAt(end - 1))) {
+                    end--;
+                }
+                ensure((end - start) * 3);
+                encodeUtf8(value, start, end, buffer);
+                start = end;
+            }
+        }
+
+        static int utf8Length(String value, int from, int to) {
+            int length = 0;
+            for (int i = from; i < to; i++) {
+                char c = value.charAt(i);
+                if (c < 0x80) {
+                    length++;
+                } else if (c < 0x800) {
+                    length += 2;
+                } else if (Character.isHighSurrogate(c) && i + 1 < to && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    length += 4;
+                    i++;
+                } else {
+                    length += 3;
+                }
+            }
+            return length;
+        }
+
+        /**
+         * 文字列を UTF-8 でバッファに直接書き込む（対になっていないサロゲートは `?` にする）。
+         */
+        static void encodeUtf8(String value, int from, int to, ByteBuffer target) {
+            for (int i = from; i < to; i++) {
+                char c = value.charAt(i);
+                if (c < 0x80) {
+                    target.put((byte) c);
+                } else if (c < 0x800) {
+                    target.put((byte) (0xC0 | (c >> 6)));
+                    target.put((byte) (0x80 | (c & 0x3F)));
+                } else if (Character.isSurrogate(c)) {
+                    if (Character.isHighSurrogate(c) && i + 1 < to && Character.isLowSurrogate(value.charAt(i + 1))) {
+                        int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                        target.put((byte) (0xF0 | (codePoint >> 18)));
+                        target.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+                        target.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+                        target.put((byte) (0x80 | (codePoint & 0x3F)));
+                    } else {
+                        target.put((byte) '?');
+                    }
+                } else {
+                    target.put((byte) (0xE0 | (c >> 12)));
+                    target.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                    target.put((byte) (0x80 | (c & 0x3F)));
+                }
+            }
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                drain();
+            }
+        }
+
+        private void drain() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                drain();
+            } finally {
+                channel.close();
+            }
+        }
+    }
+
+    /**
+     * コマンドライン引数。
+     */
+    static final class Options {
+        Path out;
+        String format;
+        String userId;
+        Path database;
+        int fetchSize = 1000;
+
+        boolean columnar() {
+            if (format != null) {
+                return format.equals("columnar");
+            }
+            return !out.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".csv");
+        }
+
+        static Options parse(String[] args) {
+            Options options = new Options();
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                String value = i + 1 < args.length ? args[i + 1] : null;
+                switch (arg) {
+                    case "--out" -> options.out = Path.of(require(arg, value));
+                    case "--format" -> options.format = require(arg, value).toLowerCase(Locale.ROOT);
+                    case "--user" -> options.userId = require(arg, value);
+                    case "--db" -> options.database = Path.of(require(arg, value));
+                    case "--fetch-size" -> options.fetchSize = Math.max(1, Integer.parseInt(require(arg, value)));
+                    default -> throw new IllegalArgumentException("不明なオプションです: " + arg);
+                }
+                i++;
+            }
+            if (options.out == null) {
+                throw new IllegalArgumentException("--out に書き出し先のファイルを指定してください");
+            }
+            if (options.format != null && !options.format.equals("csv") && !options.format.equals("columnar")) {
+                throw new IllegalArgumentException("--format は csv または columnar で指定してください");
+            }
+            return options;
+        }
+
+        private static String require(String option, String value) {
+            if (value == null) {
+                throw new IllegalArgumentException(option + " に値を指定してください");
+            }
+            return value;
+        }
+    }
+}
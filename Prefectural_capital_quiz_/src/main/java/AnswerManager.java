@@ -2,6 +2,11 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -11,9 +16,70 @@ import java.util.logging.Logger;
 public class AnswerManager {
     private static final Logger LOGGER = Logger.getLogger(AnswerManager.class.getName());
 
+    /**
+     * 解答を1文で記録する UPSERT。
+     * `(user_id, question_id)` の一意インデックスにより、既存の解答があれば更新、なければ挿入する。
+     */
+    private static final String UPSERT_SQL = "INSERT INTO user_answers (user_id, question_id, selected_answer, is_correct, answered_at) "
+            + "VALUES (?, ?, ?, ?, ?) "
+            + "ON CONFLICT(user_id, question_id) DO UPDATE SET "
+            + "selected_answer = excluded.selected_answer, is_correct = excluded.is_correct, answered_at = excluded.answered_at";
+
+    /** ユーザーごとの通算の解答数・正解数を1加算し、加算後の値を返す（ランキングへの反映に使う）。 */
+    private static final String USER_STATS_SQL = "INSERT INTO user_stats (user_id, answered, correct) VALUES (?, 1, ?) "
+            + "ON CONFLICT(user_id) DO UPDATE SET answered = answered + 1, correct = correct + excluded.correct "
+            + "RETURNING answered, correct";
+
+    /**
+     * ユーザーごとの連続正解数を更新し、更新後の値を返す。
+     * 正解なら現在の連続正解数を1加算して最長を更新し、不正解なら0に戻す（右辺の列は更新前の値）。
+     */
+    private static final String STREAK_SQL = "INSERT INTO user_streaks (user_id, current_streak, best_streak) VALUES (?, ?, ?) "
+            + "ON CONFLICT(user_id) DO UPDATE SET "
+            + "current_streak = CASE WHEN excluded.current_streak > 0 THEN current_streak + 1 ELSE 0 END, "
+            + "best_streak = MAX(best_streak, CASE WHEN excluded.current_streak > 0 THEN current_streak + 1 ELSE 0 END) "
+            + "RETURNING current_streak, best_streak";
+
+    /** ユーザー・問題ごとの解答数・正解数を1加算する。 */
+    private static final String QUESTION_STATS_SQL = "INSERT INTO user_question_stats (user_id, question_id, answered, correct) "
+            + "VALUES (?, ?, 1, ?) "
+            + "ON CONFLICT(user_id, question_id) DO UPDATE SET answered = answered + 1, correct = correct + excluded.correct";
+
+    /** 不正解だった問題を間違えた問題の集合に加える。 */
+    private static final String WRONG_SET_ADD_SQL = "INSERT OR IGNORE INTO user_wrong_set (user_id, question_id) VALUES (?, ?)";
+
+    /** 解答ログ（`AnswerEventLog`）の反映済みの通し番号を進める。 */
+    private static final String LOG_CHECKPOINT_SQL = "INSERT INTO answer_log_checkpoint (id, seq) VALUES (0, ?) "
+            + "ON CONFLICT(id) DO UPDATE SET seq = MAX(seq, excluded.seq)";
+
+    private static final String LOG_CHECKPOINT_READ_SQL = "SELECT seq FROM answer_log_checkpoint WHERE id = 0";
+
+    /** 正解した問題を間違えた問題の集合から外す。 */
+    private static final String WRONG_SET_REMOVE_SQL = "DELETE FROM user_wrong_set WHERE user_id = ? AND question_id = ?";
+
+    /** 1回分の解答の件数・正解数をまとめて加算し、加算後の値を返す（`recordAttempt` 用）。 */
+    private static final String ATTEMPT_STATS_SQL = "INSERT INTO user_stats (user_id, answered, correct) VALUES (?, ?, ?) "
+            + "ON CONFLICT(user_id) DO UPDATE SET answered = answered + excluded.answered, correct = correct + excluded.correct "
+            + "RETURNING answered, correct";
+
+    /**
+     * 1回分の解答による連続正解数の変化をまとめて反映し、更新後の値を返す（`recordAttempt` 用）。
+     * パラメータは ユーザーID、挿入時の現在・最長、全問正解か、解答数、最後の不正解の後の連続正解数、
+     * 最初の不正解までの連続正解数、途中の最長の連続正解数（右辺の列は更新前の値）。
+     */
+    private static final String ATTEMPT_STREAK_SQL = "INSERT INTO user_streaks (user_id, current_streak, best_streak) VALUES (?, ?, ?) "
+            + "ON CONFLICT(user_id) DO UPDATE SET "
+            + "current_streak = CASE WHEN ? THEN current_streak + ? ELSE ? END, "
+            + "best_streak = MAX(best_streak, current_streak + ?, ?) "
+            + "RETURNING current_streak, best_streak";
+
     /**
      * ユーザーの解答結果をデータベースに記録するメソッド。
-     * `ON CONFLICT` を使用せず、データの存在を確認して `INSERT` または `UPDATE` を適用。
+     * `INSERT ... ON CONFLICT DO UPDATE` で解答を挿入または更新し、同じトランザクションで集計テーブルも更新する。
+     * 
+     * - 解答と集計（`user_stats` / `user_streaks` / `user_question_stats` / `user_wrong_set`）は常に一緒にコミットされる。
+     * - ステートメントは接続ごとにキャッシュされたものを再利用する。
+     * - 記録した件数は `MetricsRegistry`、1件ごとの所要時間は JFR のイベントで確認する（解答ごとにログは出さない）。
      * 
      * @param userId ユーザーID
      * @param questionId 問題ID
@@ -21,92 +87,364 @@ public class AnswerManager {
      * @param isCorrect 正誤判定（true = 正解、false = 不正解）
      */
     public static void recordAnswer(String userId, int questionId, String selectedAnswer, boolean isCorrect) {
-        try (Connection conn = DatabaseManager.getConnection()) {
-            conn.setAutoCommit(false); // ✅ 明示的にトランザクションを開始
+        try {
+            recordAnswers(List.of(new AnswerRecord(userId, questionId, selectedAnswer, isCorrect)));
 
-            // ✅ まず、解答データが既に存在するか確認
-            boolean exists = checkIfAnswerExists(conn, userId, questionId);
+        } catch (SQLException e) {
+            LOGGER.log(Level.SEVERE, "データベースエラー: 解答の記録に失敗", e);
+            throw new RuntimeException("解答の記録中にエラーが発生しました", e);
+        }
+    }
 
-            if (exists) {
-                // ✅ すでにデータがある場合は UPDATE
-                updateAnswer(conn, userId, questionId, selectedAnswer, isCorrect);
-            } else {
-                // ✅ データがない場合は INSERT
-                insertAnswer(conn, userId, questionId, selectedAnswer, isCorrect);
+    /**
+     * 複数の解答を1つのトランザクションでまとめて記録するメソッド。
+     * 
+     * - 解答ごとに UPSERT と集計の更新を順に実行し、1回のコミットで書き込む。
+     *   同じ問題への解答が複数含まれていても、間違えた問題の集合は最後の解答の結果になる。
+     * - 1件でも失敗した場合は全体をロールバックし、例外を投げる。
+     * - 解答用データベースを分けている場合は、ファイルごとに1トランザクションで書き込む。
+     *   途中のファイルで失敗した場合、それまでのファイルへの書き込みはコミット済みのまま残る。
+     * 
+     * @param answers 記録する解答のリスト
+     * @throws SQLException 記録に失敗した場合
+     */
+    public static void recordAnswers(List<AnswerRecord> answers) throws SQLException {
+        if (answers.isEmpty()) {
+            return;
+        }
+        int shardCount = DatabaseManager.answerShardCount();
+        if (shardCount == 1) {
+            recordAnswers(0, answers, -1);
+            return;
+        }
+        List<List<AnswerRecord>> byShard = new ArrayList<>(shardCount);
+        for (int i = 0; i < shardCount; i++) {
+            byShard.add(new ArrayList<>());
+        }
+        for (AnswerRecord answer : answers) {
+            byShard.get(DatabaseManager.answerShardOf(answer.userId())).add(answer);
+        }
+        for (int i = 0; i < shardCount; i++) {
+            if (!byShard.get(i).isEmpty()) {
+                recordAnswers(i, byShard.get(i), -1);
             }
+        }
+    }
 
-            conn.commit(); // ✅ 成功したらコミット
-            LOGGER.info("解答が記録されました: " + userId + " -> Q" + questionId);
+    /**
+     * 1人のユーザーの1回分の解答を、1つのトランザクションでまとめて記録するメソッド。
+     *
+     * - 解答（`user_answers`）、問題ごとの集計、間違えた問題の集合は JDBC のバッチで送り、
+     *   通算と連続正解数は解答の並びから計算した値で1文ずつ更新する（`recordAnswers` の解答ごとの5文に比べて往復が少ない）。
+     * - 同じ問題への解答が複数含まれていても、`recordAnswers` と同じ結果になる。
+     * - 失敗した場合は全体をロールバックし、例外を投げる。
+     *
+     * @param userId  ユーザーID
+     * @param answers 記録する解答のリスト（解答した順。すべて `userId` の解答であること）
+     */
+    public static void recordAttempt(String userId, List<AnswerRecord> answers) {
+        if (answers.isEmpty()) {
+            return;
+        }
+        long start = System.nanoTime();
+        Leaderboard.Totals totals;
+        int correct = 0;
+        try (Connection conn = DatabaseManager.getAnswerConnection(userId)) {
+            conn.setAutoCommit(false);
+            try {
+                PreparedStatement upsert = DatabaseManager.prepareCached(conn, UPSERT_SQL);
+                PreparedStatement questionStats = DatabaseManager.prepareCached(conn, QUESTION_STATS_SQL);
+                Map<Integer, Boolean> lastOutcomes = new LinkedHashMap<>(); // 問題ごとの最後の正誤
+                long now = System.currentTimeMillis();
+                for (AnswerRecord answer : answers) {
+                    upsert.setString(1, userId);
+                    upsert.setInt(2, answer.questionId());
+                    upsert.setString(3, answer.selectedAnswer());
+                    upsert.setBoolean(4, answer.isCorrect());
+                    upsert.setLong(5, now);
+                    upsert.addBatch();
 
-        } catch (SQLException e) {
-            LOGGER.log(Level.SEVERE, "データベースエラー: 解答の記録に失敗", e);
-            try (Connection conn = DatabaseManager.getConnection()) {
-                if (conn != null && !conn.getAutoCommit()) {
-                    conn.rollback(); // ❌ エラー発生時にロールバック
+                    questionStats.setString(1, userId);
+                    questionStats.setInt(2, answer.questionId());
+                    questionStats.setInt(3, answer.isCorrect() ? 1 : 0);
+                    questionStats.addBatch();
+
+                    lastOutcomes.put(answer.questionId(), answer.isCorrect());
+                    correct += answer.isCorrect() ? 1 : 0;
+                }
+                upsert.executeBatch();
+                questionStats.executeBatch();
+
+                PreparedStatement wrongAdd = DatabaseManager.prepareCached(conn, WRONG_SET_ADD_SQL);
+                PreparedStatement wrongRemove = DatabaseManager.prepareCached(conn, WRONG_SET_REMOVE_SQL);
+                boolean anyWrong = false;
+                boolean anyRight = false;
+                for (Map.Entry<Integer, Boolean> outcome : lastOutcomes.entrySet()) {
+                    PreparedStatement wrongSet = outcome.getValue() ? wrongRemove : wrongAdd;
+                    wrongSet.setString(1, userId);
+                    wrongSet.setInt(2, outcome.getKey());
+                    wrongSet.addBatch();
+                    anyRight |= outcome.getValue();
+                    anyWrong |= !outcome.getValue();
+                }
+                if (anyWrong) {
+                    wrongAdd.executeBatch();
+                }
+                if (anyRight) {
+                    wrongRemove.executeBatch();
                 }
-            } catch (SQLException rollbackError) {
-                LOGGER.log(Level.SEVERE, "ロールバックの実行に失敗しました", rollbackError);
+
+                totals = applyAttemptTotals(conn, userId, answers, correct);
+                conn.commit();
+            } catch (SQLException e) {
+                try {
+                    conn.rollback();
+                } catch (SQLException rollbackError) {
+                    LOGGER.log(Level.SEVERE, "ロールバックの実行に失敗しました", rollbackError);
+                }
+                MetricsRegistry.add("answers.failed", answers.size());
+                throw e;
             }
-            throw new RuntimeException("解答の記録中にエラーが発生しました", e);
+        } catch (SQLException e) {
+            LOGGER.log(Level.SEVERE, "データベースエラー: 解答のまとめての記録に失敗", e);
+            throw new RuntimeException("解答のまとめての記録中にエラーが発生しました", e);
         }
+        MetricsRegistry.recordSince("attempt.transaction", start);
+        recordAttemptEvents(userId, answers);
+        MetricsRegistry.add("answers.recorded", answers.size());
+        MetricsRegistry.add("answers.correct", correct);
+        MetricsRegistry.increment("attempts.recorded");
+        applyCommitted(answers, List.of(totals));
     }
 
     /**
-     * 指定した `userId` と `questionId` の解答データが存在するか確認。
-     * 
-     * @param conn データベース接続
-     * @param userId ユーザーID
-     * @param questionId 問題ID
-     * @return すでに解答がある場合 `true`、ない場合 `false`
+     * コミットした解答を、データベースの外に持っている状態（復習スケジュール、進捗、ランキング）へ反映する。
+     *
+     * - 解答はコミット済みのため、ここでの失敗はログに残すだけで呼び出し元へは伝えない
+     *   （例外にすると呼び出し元が記録の失敗とみなし、再送で同じ解答を二重に数えるため）。
+     */
+    private static void applyCommitted(List<AnswerRecord> answers, Collection<Leaderboard.Totals> totals) {
+        try {
+            SpacedRepetitionScheduler.recordOutcomes(answers);
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "記録済みの解答を復習スケジュールへ反映できませんでした", e);
+        }
+        try {
+            ProgressStore.recordOutcomes(answers);
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "記録済みの解答を進捗へ反映できませんでした", e);
+        }
+        try {
+            Leaderboard.apply(totals);
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "記録済みの解答をランキングへ反映できませんでした", e);
+        }
+    }
+
+    /**
+     * コミットした1回分の解答を、1件ずつ JFR のイベントに記録する。
+     *
+     * - バッチで送るため解答ごとの所要時間はなく、1回分の所要時間は `attempt.transaction` で計る。
+     */
+    private static void recordAttemptEvents(String userId, List<AnswerRecord> answers) {
+        int shard = DatabaseManager.answerShardOf(userId);
+        for (AnswerRecord answer : answers) {
+            QuizEvents.AnswerRecorded event = new QuizEvents.AnswerRecorded();
+            if (!event.shouldCommit()) {
+                return; // 記録していない場合は残りも記録しない
+            }
+            event.userId = userId;
+            event.questionId = answer.questionId();
+            event.correct = answer.isCorrect();
+            event.shard = shard;
+            event.commit();
+        }
+    }
+
+    /**
+     * 解答ログから読んだ解答を記録し、同じトランザクションでログの反映済みの通し番号を進める。
+     *
+     * - 通し番号は解答と一緒にコミットされるため、途中で止まっても同じ解答を二度反映しない。
+     *
+     * @param shard   解答用データベースの番号（解答はすべてこのデータベースに属すること）
+     * @param answers 記録する解答のリスト（ログの順）
+     * @param logSeq  `answers` の最後の解答の通し番号
+     * @throws SQLException 記録に失敗した場合
+     */
+    static void recordLoggedAnswers(int shard, List<AnswerRecord> answers, long logSeq) throws SQLException {
+        recordAnswers(shard, answers, logSeq);
+    }
+
+    /**
+     * @param shard 解答用データベースの番号
+     * @return 反映済みの解答ログの通し番号（まだない場合は 0）
+     * @throws SQLException 読み取りに失敗した場合
      */
-    private static boolean checkIfAnswerExists(Connection conn, String userId, int questionId) throws SQLException {
-        String sql = "SELECT COUNT(*) FROM user_answers WHERE user_id = ? AND question_id = ?";
-        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setString(1, userId);
-            pstmt.setInt(2, questionId);
+    static long loggedCheckpoint(int shard) throws SQLException {
+        try (Connection conn = DatabaseManager.getAnswerShardReadConnection(shard)) {
+            PreparedStatement pstmt = DatabaseManager.prepareCached(conn, LOG_CHECKPOINT_READ_SQL); // キャッシュ済みのため close しない
             try (ResultSet rs = pstmt.executeQuery()) {
-                return rs.next() && rs.getInt(1) > 0;
+                return rs.next() ? rs.getLong(1) : 0;
             }
         }
     }
 
     /**
-     * すでに存在する解答を更新する。
-     * 
-     * @param conn データベース接続
-     * @param userId ユーザーID
-     * @param questionId 問題ID
-     * @param selectedAnswer ユーザーの選択した解答
-     * @param isCorrect 正誤判定
+     * 1つの解答用データベースに属する解答を1トランザクションで記録する。
+     *
+     * @param logSeq 解答ログの通し番号（ログから読んだものでない場合は -1）
+     */
+    private static void recordAnswers(int shard, List<AnswerRecord> answers, long logSeq) throws SQLException {
+        long start = System.nanoTime();
+        Map<String, Leaderboard.Totals> totals = new LinkedHashMap<>(); // ユーザーごとに最後の解答の後の通算
+        int correct = 0;
+        try (Connection conn = DatabaseManager.getAnswerShardConnection(shard)) {
+            conn.setAutoCommit(false);
+            try {
+                for (AnswerRecord answer : answers) {
+                    QuizEvents.AnswerRecorded event = new QuizEvents.AnswerRecorded();
+                    event.begin();
+                    totals.put(answer.userId(), apply(conn, answer));
+                    event.end();
+                    if (event.shouldCommit()) {
+                        event.userId = answer.userId();
+                        event.questionId = answer.questionId();
+                        event.correct = answer.isCorrect();
+                        event.shard = shard;
+                        event.commit();
+                    }
+                    correct += answer.isCorrect() ? 1 : 0;
+                }
+                if (logSeq >= 0) {
+                    PreparedStatement checkpoint = DatabaseManager.prepareCached(conn, LOG_CHECKPOINT_SQL);
+                    checkpoint.setLong(1, logSeq);
+                    checkpoint.executeUpdate();
+                }
+                conn.commit();
+            } catch (SQLException e) {
+                try {
+                    conn.rollback();
+                } catch (SQLException rollbackError) {
+                    LOGGER.log(Level.SEVERE, "ロールバックの実行に失敗しました", rollbackError);
+                }
+                MetricsRegistry.add("answers.failed", answers.size());
+                throw e;
+            }
+        }
+        MetricsRegistry.recordSince("answer.transaction", start);
+        MetricsRegistry.add("answers.recorded", answers.size());
+        MetricsRegistry.add("answers.correct", correct);
+        LOGGER.fine(() -> "解答をまとめて記録しました: " + answers.size() + " 件");
+        applyCommitted(answers, totals.values());
+    }
+
+    /**
+     * 1回分の解答の並びから、通算と連続正解数をまとめて更新する（コミットは呼び出し元が行う）。
+     *
+     * - 全問正解なら現在の連続正解数に解答数を足す。不正解がある場合、最長は「更新前の現在 + 最初の不正解までの連続」と
+     *   「途中の最長の連続」の大きい方と比べ、現在は最後の不正解の後の連続になる。
+     *
+     * @return 更新後のユーザーの通算
      */
-    private static void updateAnswer(Connection conn, String userId, int questionId, String selectedAnswer, boolean isCorrect) throws SQLException {
-        String sql = "UPDATE user_answers SET selected_answer = ?, is_correct = ? WHERE user_id = ? AND question_id = ?";
-        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setString(1, selectedAnswer);
-            pstmt.setBoolean(2, isCorrect);
-            pstmt.setString(3, userId);
-            pstmt.setInt(4, questionId);
-            pstmt.executeUpdate();
+    private static Leaderboard.Totals applyAttemptTotals(Connection conn, String userId, List<AnswerRecord> answers,
+            int correct) throws SQLException {
+        int leading = -1; // 最初の不正解までの連続正解数（不正解がなければ -1 のまま）
+        int run = 0;
+        int longest = 0;
+        for (AnswerRecord answer : answers) {
+            if (answer.isCorrect()) {
+                longest = Math.max(longest, ++run);
+            } else {
+                if (leading < 0) {
+                    leading = run;
+                }
+                run = 0;
+            }
+        }
+        boolean allCorrect = leading < 0;
+
+        PreparedStatement userStats = DatabaseManager.prepareCached(conn, ATTEMPT_STATS_SQL);
+        userStats.setString(1, userId);
+        userStats.setInt(2, answers.size());
+        userStats.setInt(3, correct);
+        long answered;
+        long correctTotal;
+        try (ResultSet rs = userStats.executeQuery()) {
+            rs.next();
+            answered = rs.getLong(1);
+            correctTotal = rs.getLong(2);
         }
+
+        PreparedStatement streak = DatabaseManager.prepareCached(conn, ATTEMPT_STREAK_SQL);
+        streak.setString(1, userId);
+        streak.setInt(2, run);
+        streak.setInt(3, longest);
+        streak.setBoolean(4, allCorrect);
+        streak.setInt(5, answers.size());
+        streak.setInt(6, run);
+        streak.setInt(7, allCorrect ? answers.size() : leading);
+        streak.setInt(8, longest);
+        int currentStreak;
+        int bestStreak;
+        try (ResultSet rs = streak.executeQuery()) {
+            rs.next();
+            currentStreak = rs.getInt(1);
+            bestStreak = rs.getInt(2);
+        }
+        return new Leaderboard.Totals(userId, answered, correctTotal, currentStreak, bestStreak);
     }
 
     /**
-     * 新しい解答データを挿入する。
-     * 
-     * @param conn データベース接続
-     * @param userId ユーザーID
-     * @param questionId 問題ID
-     * @param selectedAnswer ユーザーの選択した解答
-     * @param isCorrect 正誤判定
+     * 1件の解答を記録し、集計テーブルを差分更新する（コミットは呼び出し元が行う）。
+     * ステートメントはキャッシュ済みのため close しない。
+     *
+     * @return 更新後のユーザーの通算
      */
-    private static void insertAnswer(Connection conn, String userId, int questionId, String selectedAnswer, boolean isCorrect) throws SQLException {
-        String sql = "INSERT INTO user_answers (user_id, question_id, selected_answer, is_correct) VALUES (?, ?, ?, ?)";
-        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setString(1, userId);
-            pstmt.setInt(2, questionId);
-            pstmt.setString(3, selectedAnswer);
-            pstmt.setBoolean(4, isCorrect);
-            pstmt.executeUpdate();
+    private static Leaderboard.Totals apply(Connection conn, AnswerRecord answer) throws SQLException {
+        int correct = answer.isCorrect() ? 1 : 0;
+
+        PreparedStatement upsert = DatabaseManager.prepareCached(conn, UPSERT_SQL);
+        upsert.setString(1, answer.userId());
+        upsert.setInt(2, answer.questionId());
+        upsert.setString(3, answer.selectedAnswer());
+        upsert.setBoolean(4, answer.isCorrect());
+        upsert.setLong(5, System.currentTimeMillis());
+        upsert.executeUpdate();
+
+        PreparedStatement userStats = DatabaseManager.prepareCached(conn, USER_STATS_SQL);
+        userStats.setString(1, answer.userId());
+        userStats.setInt(2, correct);
+        long answered;
+        long correctTotal;
+        try (ResultSet rs = userStats.executeQuery()) {
+            rs.next();
+            answered = rs.getLong(1);
+            correctTotal = rs.getLong(2);
+        }
+
+        PreparedStatement streak = DatabaseManager.prepareCached(conn, STREAK_SQL);
+        streak.setString(1, answer.userId());
+        streak.setInt(2, correct);
+        streak.setInt(3, correct);
+        int currentStreak;
+        int bestStreak;
+        try (ResultSet rs = streak.executeQuery()) {
+            rs.next();
+            currentStreak = rs.getInt(1);
+            bestStreak = rs.getInt(2);
         }
+
+        PreparedStatement questionStats = DatabaseManager.prepareCached(conn, QUESTION_STATS_SQL);
+        questionStats.setString(1, answer.userId());
+        questionStats.setInt(2, answer.questionId());
+        questionStats.setInt(3, correct);
+        questionStats.executeUpdate();
+
+        PreparedStatement wrongSet = DatabaseManager.prepareCached(conn,
+                answer.isCorrect() ? WRONG_SET_REMOVE_SQL : WRONG_SET_ADD_SQL);
+        wrongSet.setString(1, answer.userId());
+        wrongSet.setInt(2, answer.questionId());
+        wrongSet.executeUpdate();
+        return new Leaderboard.Totals(answer.userId(), answered, correctTotal, currentStreak, bestStreak);
     }
 }
@@ -0,0 +1,10 @@
+/**
+ * 1件の解答を表すレコード。
+ *
+ * @param userId         解答したユーザーID
+ * @param questionId     問題ID
+ * @param selectedAnswer ユーザーが選んだ解答
+ * @param isCorrect      正誤判定（true = 正解、false = 不正解）
+ */
+public record AnswerRecord(String userId, int questionId, String selectedAnswer, boolean isCorrect) {
+}
@@ -0,0 +1,364 @@
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * 解答の書き込みを非同期にまとめて行うクラス（ライトビハインド）。
+ *
+ * - 解答を上限付きのキューに積み、バックグラウンドの書き込みスレッドがまとめて1トランザクションで記録する。
+ * - `batchSize` 件たまるか、最初の解答から `flushMillis` ミリ秒経過した時点でコミットする（グループコミット）。
+ * - キューが満杯の場合、`record()` は空きができるまで待つ（バックプレッシャー）。
+ * - 耐久性のモードはシステムプロパティ `quiz.answers.durability` で切り替える。
+ *   - `SYNC`: 呼び出しスレッドで直接記録する（従来どおり）。
+ *   - `GROUP_COMMIT`: 他の解答とまとめてコミットし、コミット完了まで呼び出し元を待たせる。
+ *   - `ASYNC`: キューに積んだ時点で戻る。終了時の `shutdown()` で残りを書き込む。
+ * - 解答用データベースを分けている場合（`quiz.db.answerShards`）は、ファイルごとに書き込みスレッドとキューを持つ。
+ *   各スレッドは自分のファイルにしか書かないため、書き込みロックを奪い合わずに並列でコミットできる。
+ * - システムプロパティ `quiz.answers.storage=eventlog` の場合は、キューと書き込みスレッドを使わずに
+ *   `AnswerEventLog` へ追記する（耐久性のモードは fsync を待つかどうかに使う）。
+ */
+public class AnswerRecorder {
+    private static final Logger LOGGER = Logger.getLogger(AnswerRecorder.class.getName());
+
+    /**
+     * 解答記録の耐久性モード。
+     */
+    public enum DurabilityMode {
+        SYNC, GROUP_COMMIT, ASYNC
+    }
+
+    private static final DurabilityMode MODE = DurabilityMode.valueOf(
+            System.getProperty("quiz.answers.durability", "GROUP_COMMIT").toUpperCase(Locale.ROOT));
+    private static final int BATCH_SIZE = Integer.getInteger("quiz.answers.batchSize", 64);        // 1回のコミットでまとめる最大件数
+    private static final long FLUSH_MILLIS = Long.getLong("quiz.answers.flushMillis", 10L);       // コミットまで待つ最大時間
+    private static final int QUEUE_CAPACITY = Integer.getInteger("quiz.answers.queueCapacity", 10_000); // キューの上限
+    private static final boolean EVENT_LOG =
+            System.getProperty("quiz.answers.storage", "sqlite").equalsIgnoreCase("eventlog"); // 解答ログに追記する
+
+    private static final LongAdder committedAnswers = new LongAdder();
+    private static final LongAdder committedBatches = new LongAdder();
+    private static final LongAdder failedAnswers = new LongAdder();
+
+    private static Writer[] writers = null; // guarded by AnswerRecorder.class
+
+    /**
+     * 解答を記録する。
+     *
+     * - `SYNC` の場合は `AnswerManager.recordAnswer` を直接呼ぶ。
+     * - `GROUP_COMMIT` の場合はコミットが完了するまで待つ。
+     * - `ASYNC` の場合はキューに積んだ時点で戻る。
+     * - 解答ログに追記する場合、`ASYNC` 以外は fsync されるまで待つ。
+     *
+     * @param userId         ユーザーID
+     * @param questionId     問題ID
+     * @param selectedAnswer ユーザーの選択した解答
+     * @param isCorrect      正誤判定
+     */
+    public static void record(String userId, int questionId, String selectedAnswer, boolean isCorrect) {
+        if (EVENT_LOG) {
+            AnswerEventLog.append(new AnswerRecord(userId, questionId, selectedAnswer, isCorrect), MODE != DurabilityMode.ASYNC);
+            committedAnswers.increment();
+            return;
+        }
+        if (MODE == DurabilityMode.SYNC) {
+            AnswerManager.recordAnswer(userId, questionId, selectedAnswer, isCorrect);
+            return;
+        }
+
+        AnswerRecord answer = new AnswerRecord(userId, questionId, selectedAnswer, isCorrect);
+        CompletableFuture<Void> done = MODE == DurabilityMode.GROUP_COMMIT ? new CompletableFuture<>() : null;
+        writers()[DatabaseManager.answerShardOf(userId)].enqueue(new Pending(answer, done));
+        if (done != null) {
+            await(done);
+        }
+    }
+
+    /**
+     * 1人のユーザーの1回分の解答をまとめて記録する。
+     *
+     * - キューを通さず、`AnswerManager.recordAttempt` で1つのトランザクションとしてコミットする（耐久性のモードによらない）。
+     * - 解答ログに追記する場合は順に追記し、`ASYNC` 以外は最後の解答が fsync されるまで待つ（fsync は1回）。
+     *
+     * @param userId  ユーザーID
+     * @param answers 解答した順の解答（すべて `userId` の解答であること）
+     */
+    public static void recordAttempt(String userId, List<AnswerRecord> answers) {
+        if (answers.isEmpty()) {
+            return;
+        }
+        if (EVENT_LOG) {
+            for (int i = 0; i < answers.size(); i++) {
+                AnswerEventLog.append(answers.get(i), i == answers.size() - 1 && MODE != DurabilityMode.ASYNC);
+            }
+            committedAnswers.add(answers.size());
+            return;
+        }
+        try {
+            AnswerManager.recordAttempt(userId, answers);
+        } catch (RuntimeException e) {
+            failedAnswers.add(answers.size());
+            throw e;
+        }
+        committedAnswers.add(answers.size());
+        committedBatches.increment();
+    }
+
+    /**
+     * 解答ログを使う場合は、前回の実行で反映されなかった解答を読み直して集計に反映する。起動時に呼ぶ。
+     */
+    public static void start() {
+        if (EVENT_LOG) {
+            AnswerEventLog.open();
+        }
+    }
+
+    /**
+     * キューに積まれたすべての解答がコミットされるまで待つ。
+     * 解答ログを使う場合は、未反映の解答を集計に反映する。
+     */
+    public static void flush() {
+        if (EVENT_LOG) {
+            AnswerEventLog.compact();
+            return;
+        }
+        Writer[] current;
+        synchronized (AnswerRecorder.class) {
+            current = writers;
+        }
+        if (current != null) {
+            List<CompletableFuture<Void>> pending = new ArrayList<>(current.length);
+            for (Writer writer : current) {
+                CompletableFuture<Void> done = new CompletableFuture<>();
+                writer.enqueue(new Pending(null, done));
+                pending.add(done);
+            }
+            for (CompletableFuture<Void> done : pending) {
+                await(done);
+            }
+        }
+    }
+
+    /**
+     * 残りの解答を書き込み、書き込みスレッドを停止する。アプリ終了時に呼ぶ。
+     * 停止後に `record()` が呼ばれた場合は新しい書き込みスレッドを起動する。
+     */
+    public static void shutdown() {
+        if (EVENT_LOG) {
+            AnswerEventLog.close();
+            return;
+        }
+        Writer[] current;
+        synchronized (AnswerRecorder.class) {
+            current = writers;
+            writers = null;
+        }
+        if (current != null) {
+            for (Writer writer : current) {
+                writer.stop();
+            }
+            LOGGER.fine(() -> "解答記録の統計: " + stats());
+        }
+    }
+
+    /**
+     * @return 現在の耐久性モード
+     */
+    public static DurabilityMode mode() {
+        return MODE;
+    }
+
+    /**
+     * @return コミット済みの件数などの統計
+     */
+    public static String stats() {
+        if (EVENT_LOG) {
+            return "mode=" + MODE + " storage=eventlog " + AnswerEventLog.stats();
+        }
+        return "mode=" + MODE + " committed=" + committedAnswers.sum() + " batches=" + committedBatches.sum()
+                + " failed=" + failedAnswers.sum();
+    }
+
+    private static synchronized Writer[] writers() {
+        if (writers == null) {
+            writers = new Writer[DatabaseManager.answerShardCount()];
+            for (int i = 0; i < writers.length; i++) {
+                writers[i] = new Writer(writers.length == 1 ? "answer-writer" : "answer-writer-" + i);
+            }
+        }
+        return writers;
+    }
+
+    private static void await(CompletableFuture<Void> done) {
+        try {
+            done.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new RuntimeException("解答の記録中にエラーが発生しました", cause);
+        }
+    }
+
+    /**
+     * キューに積まれた解答。`answer` が `null` のものは `flush()` の目印。
+     */
+    private record Pending(AnswerRecord answer, CompletableFuture<Void> done) {
+    }
+
+    /**
+     * キューを消費してまとめて書き込むバックグラウンドスレッド。
+     */
+    private static final class Writer implements Runnable {
+        private final BlockingQueue<Pending> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        private final Thread thread;
+        private volatile boolean running = true;
+
+        Writer(String name) {
+            thread = new Thread(this, name);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        void enqueue(Pending pending) {
+            if (!running) {
+                throw new IllegalStateException("解答の書き込みスレッドは停止しています。");
+            }
+            try {
+                queue.put(pending);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("解答の記録待ち中に割り込まれました", e);
+            }
+            // 積んでいる間に停止した場合、書き込みスレッドが受け取らずに終わったかもしれないため取り戻す
+            // （取り戻せなかった場合は、書き込みスレッドか stop() が結果を通知する）
+            if (!running && queue.remove(pending)) {
+                throw new IllegalStateException("解答の書き込みスレッドは停止しています。");
+            }
+        }
+
+        void stop() {
+            running = false;
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            // 停止と行き違いに積まれた解答は書き込まれないため、待っている呼び出し元に失敗を通知する
+            List<Pending> left = new ArrayList<>();
+            queue.drainTo(left);
+            if (!left.isEmpty()) {
+                LOGGER.warning("停止後に積まれた解答を記録できませんでした: " + left.size() + " 件");
+                fail(left, new IllegalStateException("解答の書き込みスレッドは停止しています。"));
+            }
+        }
+
+        @Override
+        public void run() {
+            List<Pending> batch = new ArrayList<>(BATCH_SIZE);
+            while (running || !queue.isEmpty()) {
+                try {
+                    Pending first = queue.poll(FLUSH_MILLIS, TimeUnit.MILLISECONDS);
+                    if (first == null) {
+                        continue;
+                    }
+                    batch.add(first);
+
+                    // 最初の解答から FLUSH_MILLIS 経過するか BATCH_SIZE 件たまるまで集める
+                    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(FLUSH_MILLIS);
+                    while (batch.size() < BATCH_SIZE) {
+                        long remaining = deadline - System.nanoTime();
+                        Pending next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+                        if (next == null) {
+                            break;
+                        }
+                        batch.add(next);
+                    }
+                } catch (InterruptedException e) {
+                    running = false;
+                }
+                if (!batch.isEmpty()) {
+                    try {
+                        write(batch);
+                    } catch (Throwable e) {
+                        // スレッドが終わると以降の解答が誰にも書き込まれず、呼び出し元が待ち続けるため、失敗を通知して続ける
+                        LOGGER.log(Level.SEVERE, "解答の書き込み中に予期しないエラーが発生しました。", e);
+                        fail(batch, e);
+                    }
+                    batch.clear();
+                }
+            }
+        }
+
+        /**
+         * 集めた解答を1トランザクションで書き込み、待っている呼び出し元に結果を通知する。
+         * まとめての書き込みに失敗した場合は1件ずつ書き込み、他の解答を巻き込まないようにする。
+         */
+        private void write(List<Pending> batch) {
+            List<AnswerRecord> answers = new ArrayList<>(batch.size());
+            for (Pending pending : batch) {
+                if (pending.answer() != null) {
+                    answers.add(pending.answer());
+                }
+            }
+
+            try {
+                AnswerManager.recordAnswers(answers); // コミット後の反映の失敗は例外にならない
+                committedAnswers.add(answers.size());
+                committedBatches.increment();
+                for (Pending pending : batch) {
+                    if (pending.done() != null) {
+                        pending.done().complete(null);
+                    }
+                }
+            } catch (SQLException e) {
+                LOGGER.log(Level.WARNING, "解答のまとめ書きに失敗したため1件ずつ記録します。", e);
+                for (Pending pending : batch) {
+                    writeOne(pending);
+                }
+            }
+        }
+
+        /**
+         * 待っている呼び出し元に失敗を通知する（通知済みのものはそのまま）。
+         */
+        private void fail(List<Pending> batch, Throwable cause) {
+            for (Pending pending : batch) {
+                if (pending.answer() != null) {
+                    failedAnswers.increment();
+                }
+                if (pending.done() != null) {
+                    pending.done().completeExceptionally(cause);
+                }
+            }
+        }
+
+        private void writeOne(Pending pending) {
+            try {
+                if (pending.answer() != null) {
+                    AnswerRecord answer = pending.answer();
+                    AnswerManager.recordAnswer(answer.userId(), answer.questionId(),
+                            answer.selectedAnswer(), answer.isCorrect());
+                    committedAnswers.increment();
+                }
+                if (pending.done() != null) {
+                    pending.done().complete(null);
+                }
+            } catch (RuntimeException e) {
+                failedAnswers.increment();
+                if (pending.done() != null) {
+                    pending.done().completeExceptionally(e);
+                }
+            }
+        }
+    }
+}
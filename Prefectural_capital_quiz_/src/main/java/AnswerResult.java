@@ -0,0 +1,10 @@
+/**
+ * 1問に解答した結果。
+ *
+ * @param questionId     問題ID
+ * @param selectedAnswer ユーザーが選んだ解答
+ * @param correctAnswer  正解
+ * @param correct        正解なら `true`
+ */
+public record AnswerResult(int questionId, String selectedAnswer, String correctAnswer, boolean correct) {
+}
@@ -0,0 +1,217 @@
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.logging.Logger;
+
+/**
+ * 解答用データベースの分割数（`quiz.db.answerShards`）を変えるために、解答と集計を新しい分割へ移すツール。
+ *
+ * - 移す前と後のファイルは分割数を名前に含むため重ならない（0 は分割しない状態、つまりカタログのデータベース）。
+ * - 移し先のユーザー単位のテーブルを空にしてから、移し元の行を1行ずつ読み、user_id のハッシュで移し先を決めて書く。
+ *   移し先ごとに `--batch` 件（既定 10000）ずつコミットするため、メモリ使用量は件数によらない。
+ * - 最後にテーブルごとの件数を突き合わせる。移し元のファイルは消さない（確認後に手で消す）。
+ * - アプリを止めた状態で実行し、終わったら `-Dquiz.db.answerShards` を新しい分割数にして起動する。
+ *
+ * 使い方:
+ * <pre>
+ * java AnswerShardRebalancer --from 0 --to 4            (分割していない状態から4分割へ)
+ * java AnswerShardRebalancer --from 4 --to 8 --db data/quiz.db
+ * </pre>
+ */
+public class AnswerShardRebalancer {
+    private static final Logger LOGGER = Logger.getLogger(AnswerShardRebalancer.class.getName());
+
+    /** ユーザー単位のテーブル（どれも user_id 列を持つ） */
+    private static final String[] TABLES =
+            { "user_answers", "user_stats", "user_streaks", "user_question_stats", "user_wrong_set", "user_review_schedule" };
+
+    public static void main(String[] args) throws Exception {
+        int from = -1;
+        int to = -1;
+        int batchSize = 10_000;
+        for (int i = 0; i < args.length; i++) {
+            String value = i + 1 < args.length ? args[i + 1] : null;
+            switch (args[i]) {
+                case "--from" -> from = Integer.parseInt(require(args[i], value));
+                case "--to" -> to = Integer.parseInt(require(args[i], value));
+                case "--db" -> System.setProperty("quiz.db.url", "jdbc:sqlite:" + require(args[i], value));
+                case "--batch" -> batchSize = Math.max(1, Integer.parseInt(require(args[i], value)));
+                default -> throw new IllegalArgumentException("不明なオプションです: " + args[i]);
+            }
+            i++;
+        }
+        if (from < 0 || to < 0 || from == to) {
+            throw new IllegalArgumentException("--from と --to に異なる分割数（0 以上）を指定してください");
+        }
+        Class.forName("org.sqlite.JDBC");
+
+        long start = System.nanoTime();
+        long[] copied = rebalance(from, to, batchSize);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        long total = 0;
+        for (int t = 0; t < TABLES.length; t++) {
+            System.out.println(String.format(Locale.ROOT, "%-22s %,d 行", TABLES[t], copied[t]));
+            total += copied[t];
+        }
+        System.out.println(String.format(Locale.ROOT, "移行完了: %d → %d 分割 %,d 行 %.1f 秒 (%.0f 行/秒)",
+                from, to, total, seconds, total / seconds));
+        System.out.println("起動時に -Dquiz.db.answerShards=" + to + " を指定してください。");
+    }
+
+    /**
+     * 解答と集計を `from` 分割から `to` 分割へ移す。
+     *
+     * @return テーブルごとの移した行数（`TABLES` の順）
+     * @throws SQLException 移行または件数の突き合わせに失敗した場合
+     */
+    static long[] rebalance(int from, int to, int batchSize) throws SQLException {
+        List<Connection> sources = new ArrayList<>();
+        List<Connection> targets = new ArrayList<>();
+        try {
+            for (int i = 0; i < Math.max(from, 1); i++) {
+                sources.add(open(DatabaseManager.answerShardUrl(from, i)));
+            }
+            for (int i = 0; i < Math.max(to, 1); i++) {
+                Connection target = open(DatabaseManager.answerShardUrl(to, i));
+                SchemaMigrator.prepareAnswerShard(target);
+                clear(target);
+                target.setAutoCommit(false);
+                targets.add(target);
+            }
+
+            long[] copied = new long[TABLES.length];
+            for (int t = 0; t < TABLES.length; t++) {
+                for (Connection source : sources) {
+                    copied[t] += copyTable(TABLES[t], source, targets, to, batchSize);
+                }
+                long expected = count(TABLES[t], sources);
+                long actual = count(TABLES[t], targets);
+                if (expected != actual || copied[t] != expected) {
+                    throw new SQLException(TABLES[t] + " の件数が一致しません: 移行元=" + expected
+                            + " 移行先=" + actual + " 書き込み=" + copied[t]);
+                }
+            }
+            return copied;
+        } finally {
+            for (Connection conn : targets) {
+                closeQuietly(conn);
+            }
+            for (Connection conn : sources) {
+                closeQuietly(conn);
+            }
+        }
+    }
+
+    /**
+     * 1つのテーブルを移し元から読み、user_id のハッシュで決めた移し先へ書く。
+     */
+    private static long copyTable(String table, Connection source, List<Connection> targets, int to, int batchSize)
+            throws SQLException {
+        try (Statement stmt = source.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                ResultSet rs = stmt.executeQuery("SELECT * FROM " + table)) {
+            ResultSetMetaData meta = rs.getMetaData();
+            int columns = meta.getColumnCount();
+            int userIdColumn = -1;
+            StringBuilder names = new StringBuilder();
+            StringBuilder marks = new StringBuilder();
+            for (int c = 1; c <= columns; c++) {
+                if (meta.getColumnName(c).equalsIgnoreCase("user_id")) {
+                    userIdColumn = c;
+                }
+                names.append(c > 1 ? ", " : "").append(meta.getColumnName(c));
+                marks.append(c > 1 ? ", ?" : "?");
+            }
+            if (userIdColumn < 0) {
+                throw new SQLException(table + " に user_id 列がありません");
+            }
+            String insert = "INSERT OR REPLACE INTO " + table + " (" + names + ") VALUES (" + marks + ")";
+
+            PreparedStatement[] inserts = new PreparedStatement[targets.size()];
+            int[] pending = new int[targets.size()];
+            long copied = 0;
+            try {
+                for (int i = 0; i < inserts.length; i++) {
+                    inserts[i] = targets.get(i).prepareStatement(insert);
+                }
+                while (rs.next()) {
+                    int shard = DatabaseManager.shardOf(rs.getString(userIdColumn), to);
+                    for (int c = 1; c <= columns; c++) {
+                        inserts[shard].setObject(c, rs.getObject(c));
+                    }
+                    inserts[shard].addBatch();
+                    if (++pending[shard] >= batchSize) {
+                        copied += flush(inserts[shard], targets.get(shard));
+                        pending[shard] = 0;
+                    }
+                }
+                for (int i = 0; i < inserts.length; i++) {
+                    if (pending[i] > 0) {
+                        copied += flush(inserts[i], targets.get(i));
+                    }
+                }
+            } finally {
+                for (PreparedStatement insertStmt : inserts) {
+                    if (insertStmt != null) {
+                        insertStmt.close();
+                    }
+                }
+            }
+            LOGGER.fine(() -> table + " を移しました");
+            return copied;
+        }
+    }
+
+    private static long flush(PreparedStatement insert, Connection target) throws SQLException {
+        long rows = 0;
+        for (int count : insert.executeBatch()) {
+            rows += Math.max(count, 0);
+        }
+        target.commit();
+        return rows;
+    }
+
+    private static void clear(Connection target) throws SQLException {
+        try (Statement stmt = target.createStatement()) {
+            for (String table : TABLES) {
+                stmt.executeUpdate("DELETE FROM " + table);
+            }
+        }
+    }
+
+    private static long count(String table, List<Connection> connections) throws SQLException {
+        long total = 0;
+        for (Connection conn : connections) {
+            try (Statement stmt = conn.createStatement();
+                    ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM " + table)) {
+                total += rs.next() ? rs.getLong(1) : 0;
+            }
+        }
+        return total;
+    }
+
+    private static Connection open(String url) throws SQLException {
+        return DriverManager.getConnection(url, DatabaseManager.connectionProperties());
+    }
+
+    private static void closeQuietly(Connection conn) {
+        try {
+            conn.close();
+        } catch (SQLException e) {
+            LOGGER.warning("接続のクローズに失敗しました: " + e.getMessage());
+        }
+    }
+
+    private static String require(String option, String value) {
+        if (value == null) {
+            throw new IllegalArgumentException(option + " に値を指定してください");
+        }
+        return value;
+    }
+}
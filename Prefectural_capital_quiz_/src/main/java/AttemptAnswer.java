@@ -0,0 +1,8 @@
+/**
+ * まとめて提出する1回分の解答のうちの1問。
+ *
+ * @param questionId 問題ID
+ * @param answer     ユーザーが選んだ解答（選択肢の文字列）
+ */
+public record AttemptAnswer(int questionId, String answer) {
+}
@@ -0,0 +1,10 @@
+import java.util.List;
+
+/**
+ * まとめて提出した1回分の解答の採点結果。
+ *
+ * @param summary 結果の集計（`QuizApp` のクイズ結果と同じ項目）
+ * @param results 1問ごとの結果（提出した順）
+ */
+public record AttemptResult(QuizSummary summary, List<AnswerResult> results) {
+}
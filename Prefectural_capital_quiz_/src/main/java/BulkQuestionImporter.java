@@ -0,0 +1,528 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * CSV / TSV ファイルから問題を `questions` テーブルへ一括で取り込むツール。
+ *
+ * - ファイルはメモリマップした固定サイズの窓（64MB）を順にずらしながら1行ずつ読む。ファイル全体を読み込まない。
+ * - 1行は「問題文（県名など）, 正解」の2列。先頭行が見出し（`prefecture` または `県名` で始まる）なら読み飛ばす。
+ *   CSV は `"` で囲んだ列（`""` は `"` 1文字）に対応する。列の中の改行には対応しない。
+ * - 空の列、列数の誤り、長すぎる列は不正な行として数え、最初の数件だけ警告を出す。
+ * - 重複（既存の問題や、ファイル内で先に出てきた行と同じ問題文・正解の組）は、上限つきの指紋表で取り除く。
+ *   表があふれた場合は取り込み後に SQL で残りの重複を消すため、結果はどちらでも同じになる。
+ * - 取り込み中は `questions` の二次インデックスを外し、`--batch` 件（既定 10000）ごとにコミットする。
+ *   インデックスは最後に（失敗した場合も）作り直す。失敗した場合、それまでにコミットしたバッチは残る。
+ * - メモリ使用量は指紋表（`--dedupe-capacity` × 8 バイト、既定 8MB）とバッチ1つ分で決まり、ファイルの大きさによらない。
+ *
+ * 使い方:
+ * <pre>
+ * java BulkQuestionImporter municipalities.csv
+ * java BulkQuestionImporter landmarks.tsv --db data/quiz.db --batch 50000
+ * java BulkQuestionImporter questions.txt --format tsv --dedupe-capacity 4194304
+ * </pre>
+ */
+public class BulkQuestionImporter {
+    private static final Logger LOGGER = Logger.getLogger(BulkQuestionImporter.class.getName());
+
+    private static final int MAX_FIELD_LENGTH = 200;    // 1列の最大文字数
+    private static final int MAX_INVALID_WARNINGS = 10; // 警告を出す不正な行の件数
+
+    private static final String MAX_ID_SQL = "SELECT COALESCE(MAX(question_id), 0) FROM questions";
+    private static final String EXISTING_SQL = "SELECT prefecture, correct_answer FROM questions";
+    private static final String INDEXES_SQL = "SELECT name, sql FROM sqlite_master "
+            + "WHERE type = 'index' AND tbl_name = 'questions' AND sql IS NOT NULL";
+    private static final String INSERT_SQL = "INSERT INTO questions (prefecture, correct_answer) VALUES (?, ?)";
+    private static final String DEDUPE_SQL = "DELETE FROM questions WHERE question_id > ? AND question_id NOT IN "
+            + "(SELECT MIN(question_id) FROM questions GROUP BY prefecture, correct_answer)";
+
+    private final Options options;
+    private long linesRead;
+    private long inserted;
+    private long duplicates;
+    private long invalid;
+
+    private BulkQuestionImporter(Options options) {
+        this.options = options;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = Options.parse(args);
+        if (options.database != null) {
+            System.setProperty("quiz.db.url", "jdbc:sqlite:" + options.database);
+        }
+        try {
+            Result result = importFile(options);
+            System.out.println(result);
+        } finally {
+            DatabaseManager.closeConnection();
+        }
+    }
+
+    /**
+     * ファイルを取り込む。
+     *
+     * @param options 取り込みの設定
+     * @return 取り込みの結果
+     * @throws IOException ファイルを読めなかった場合
+     */
+    static Result importFile(Options options) throws IOException {
+        return new BulkQuestionImporter(options).run();
+    }
+
+    private Result run() throws IOException {
+        long start = System.nanoTime();
+        FingerprintSet seen = new FingerprintSet(options.dedupeCapacity);
+        try (Connection conn = DatabaseManager.getConnection();
+                MappedLineReader reader = new MappedLineReader(options.file)) {
+            long maxIdBefore = maxQuestionId(conn);
+            loadExisting(conn, seen);
+            Map<String, String> indexes = dropIndexes(conn);
+
+            boolean autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            Exception failure = null;
+            try {
+                insertAll(conn, reader, seen, start);
+                if (seen.isSaturated()) {
+                    removeRemainingDuplicates(conn, maxIdBefore);
+                }
+                conn.commit();
+            } catch (SQLException | IOException | RuntimeException e) {
+                failure = e;
+                conn.rollback();
+                throw e;
+            } finally {
+                try {
+                    recreateIndexes(conn, indexes);
+                } catch (SQLException | RuntimeException e) {
+                    if (failure == null) {
+                        throw e;
+                    }
+                    failure.addSuppressed(e); // 取り込みの失敗の原因を残す
+                }
+                conn.setAutoCommit(autoCommit);
+            }
+        } catch (SQLException e) {
+            LOGGER.log(Level.SEVERE, "データベースエラー: 問題の一括取り込みに失敗", e);
+            throw new RuntimeException("問題の一括取り込み中にエラーが発生しました", e);
+        }
+        return new Result(linesRead, inserted, duplicates, invalid, System.nanoTime() - start);
+    }
+
+    private void insertAll(Connection conn, MappedLineReader reader, FingerprintSet seen, long start)
+            throws SQLException, IOException {
+        char delimiter = options.delimiter();
+        PreparedStatement pstmt = DatabaseManager.prepareCached(conn, INSERT_SQL); // キャッシュ済みのため close しない
+        int pending = 0;
+        String line;
+        while ((line = reader.nextLine()) != null) {
+            linesRead++;
+            if (linesRead % options.reportEvery == 0) {
+                System.out.println(progress(start));
+            }
+            if (line.isBlank()) {
+                continue;
+            }
+            List<String> fields = parseFields(line, delimiter);
+            if (linesRead == 1 && isHeader(fields)) {
+                continue;
+            }
+            String problem = validate(fields);
+            if (problem != null) {
+                if (++invalid <= MAX_INVALID_WARNINGS) {
+                    LOGGER.warning(linesRead + " 行目を読み飛ばしました（" + problem + "）: " + line);
+                }
+                continue;
+            }
+            String prefecture = fields.get(0).trim();
+            String answer = fields.get(1).trim();
+            if (!seen.add(fingerprint(prefecture, answer))) {
+                duplicates++;
+                continue;
+            }
+
+            pstmt.setString(1, prefecture);
+            pstmt.setString(2, answer);
+            pstmt.addBatch();
+            if (++pending >= options.batchSize) {
+                flush(conn, pstmt);
+                pending = 0;
+            }
+        }
+        if (pending > 0) {
+            flush(conn, pstmt);
+        }
+    }
+
+    private void flush(Connection conn, PreparedStatement pstmt) throws SQLException {
+        for (int count : pstmt.executeBatch()) {
+            inserted += Math.max(count, 0);
+        }
+        conn.commit();
+    }
+
+    private String progress(long start) {
+        double seconds = (System.nanoTime() - start) / 1e9;
+        return String.format(Locale.ROOT, "%,d 行 (%.0f 行/秒) 登録=%,d 重複=%,d 不正=%,d",
+                linesRead, linesRead / seconds, inserted, duplicates, invalid);
+    }
+
+    private static long maxQuestionId(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+                ResultSet rs = stmt.executeQuery(MAX_ID_SQL)) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    /**
+     * 既存の問題の指紋を表に入れる（表に入りきらない分は取り込み後の SQL で重複を消す）。
+     */
+    private static void loadExisting(Connection conn, FingerprintSet seen) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+                ResultSet rs = stmt.executeQuery(EXISTING_SQL)) {
+            while (rs.next() && !seen.isSaturated()) {
+                seen.add(fingerprint(rs.getString("prefecture"), rs.getString("correct_answer")));
+            }
+        }
+    }
+
+    /**
+     * `questions` の二次インデックスを外す（1行ごとの更新をやめ、最後にまとめて作る）。
+     *
+     * @return インデックス名 → 作り直すための SQL 文
+     */
+    private static Map<String, String> dropIndexes(Connection conn) throws SQLException {
+        Map<String, String> indexes = new LinkedHashMap<>();
+        try (Statement stmt = conn.createStatement()) {
+            try (ResultSet rs = stmt.executeQuery(INDEXES_SQL)) {
+                while (rs.next()) {
+                    indexes.put(rs.getString("name"), rs.getString("sql"));
+                }
+            }
+            for (String name : indexes.keySet()) {
+                stmt.executeUpdate("DROP INDEX IF EXISTS \"" + name.replace("\"", "\"\"") + "\"");
+            }
+        }
+        if (!indexes.isEmpty()) {
+            LOGGER.info("取り込み中はインデックスを外します: " + indexes.keySet());
+        }
+        return indexes;
+    }
+
+    private static void recreateIndexes(Connection conn, Map<String, String> indexes) throws SQLException {
+        if (indexes.isEmpty()) {
+            return;
+        }
+        try (Statement stmt = conn.createStatement()) {
+            for (String sql : indexes.values()) {
+                stmt.executeUpdate(sql);
+            }
+        }
+        conn.commit();
+        LOGGER.info("インデックスを作り直しました: " + indexes.keySet());
+    }
+
+    private void removeRemainingDuplicates(Connection conn, long maxIdBefore) throws SQLException {
+        LOGGER.info("指紋表があふれたため、SQL で残りの重複を取り除きます。");
+        PreparedStatement pstmt = DatabaseManager.prepareCached(conn, DEDUPE_SQL); // キャッシュ済みのため close しない
+        pstmt.setLong(1, maxIdBefore);
+        int removed = pstmt.executeUpdate();
+        inserted -= removed;
+        duplicates += removed;
+    }
+
+    /**
+     * 1行を列に分ける。
+     *
+     * - 区切り文字が `,` の場合は `"` で囲んだ列に対応する（`""` は `"` 1文字）。
+     */
+    static List<String> parseFields(String line, char delimiter) {
+        List<String> fields = new ArrayList<>(2);
+        if (delimiter != ',') {
+            int from = 0;
+            int at;
+            while ((at = line.indexOf(delimiter, from)) >= 0) {
+                fields.add(line.substring(from, at));
+                from = at + 1;
+            }
+            fields.add(line.substring(from));
+            return fields;
+        }
+
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == delimiter) {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    private static boolean isHeader(List<String> fields) {
+        String first = fields.get(0).trim();
+        return first.equalsIgnoreCase("prefecture") || first.equals("県名");
+    }
+
+    /**
+     * @return 不正な理由（正しい行の場合は `null`）
+     */
+    private static String validate(List<String> fields) {
+        if (fields.size() != 2) {
+            return "列数が " + fields.size() + " です";
+        }
+        for (String field : fields) {
+            String value = field.trim();
+            if (value.isEmpty()) {
+                return "空の列があります";
+            }
+            if (value.length() > MAX_FIELD_LENGTH) {
+                return MAX_FIELD_LENGTH + " 文字を超える列があります";
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 問題文と正解の組の 64 ビットの指紋（FNV-1a）。
+     */
+    private static long fingerprint(String prefecture, String answer) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < prefecture.length(); i++) {
+            hash = (hash ^ prefecture.charAt(i)) * 0x100000001b3L;
+        }
+        hash = (hash ^ 0xffff) * 0x100000001b3L; // 区切り（("ab","c") と ("a","bc") を区別する）
+        for (int i = 0; i < answer.length(); i++) {
+            hash = (hash ^ answer.charAt(i)) * 0x100000001b3L;
+        }
+        return hash == 0 ? 1 : hash; // 0 は空きスロットの印
+    }
+
+    /**
+     * 取り込みの結果。
+     *
+     * @param lines      読んだ行数
+     * @param inserted   登録した問題数
+     * @param duplicates 重複として除いた行数
+     * @param invalid    不正として除いた行数
+     * @param elapsedNanos 所要時間（ナノ秒）
+     */
+    record Result(long lines, long inserted, long duplicates, long invalid, long elapsedNanos) {
+
+        double rowsPerSecond() {
+            return elapsedNanos == 0 ? 0 : lines / (elapsedNanos / 1e9);
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "取り込み完了: %,d 行 %.1f 秒 (%.0f 行/秒) 登録=%,d 重複=%,d 不正=%,d",
+                    lines, elapsedNanos / 1e9, rowsPerSecond(), inserted, duplicates, invalid);
+        }
+    }
+
+    /**
+     * 容量が固定の、指紋（64 ビット）の集合。オープンアドレス法で `long[]` に直接格納する。
+     * 75% まで埋まったら以降は追加せず（あふれた印を立てて）すべて新しい値として扱う。
+     */
+    private static final class FingerprintSet {
+        private final long[] slots;
+        private final int mask;
+        private final int maxSize;
+        private int size;
+        private boolean saturated;
+
+        FingerprintSet(int capacity) {
+            int slotCount = Integer.highestOneBit(Math.max(16, capacity - 1)) << 1;
+            this.slots = new long[slotCount];
+            this.mask = slotCount - 1;
+            this.maxSize = slotCount / 4 * 3;
+        }
+
+        /**
+         * @return 新しい指紋の場合は `true`、すでにある場合は `false`
+         */
+        boolean add(long fingerprint) {
+            int slot = (int) (fingerprint ^ (fingerprint >>> 32)) & mask;
+            while (slots[slot] != 0) {
+                if (slots[slot] == fingerprint) {
+                    return false;
+                }
+                slot = (slot + 1) & mask;
+            }
+            if (size >= maxSize) {
+                saturated = true;
+                return true;
+            }
+            slots[slot] = fingerprint;
+            size++;
+            return true;
+        }
+
+        boolean isSaturated() {
+            return saturated;
+        }
+    }
+
+    /**
+     * メモリマップした窓をずらしながらファイルを1行ずつ読むリーダー（UTF-8、改行は LF または CRLF）。
+     */
+    private static final class MappedLineReader implements Closeable {
+        private static final long WINDOW_BYTES = 64L * 1024 * 1024;
+
+        private final FileChannel channel;
+        private final long fileSize;
+        private MappedByteBuffer window;
+        private long windowStart;
+        private int position;
+        private byte[] scratch = new byte[256];
+
+        MappedLineReader(Path file) throws IOException {
+            this.channel = FileChannel.open(file, StandardOpenOption.READ);
+            this.fileSize = channel.size();
+            map(0);
+            if (window.limit() >= 3 && window.get(0) == (byte) 0xEF && window.get(1) == (byte) 0xBB
+                    && window.get(2) == (byte) 0xBF) {
+                position = 3; // BOM
+            }
+        }
+
+        /**
+         * @return 次の行（改行を除く）。ファイルの終わりでは `null`
+         */
+        String nextLine() throws IOException {
+            while (true) {
+                int limit = window.limit();
+                for (int i = position; i < limit; i++) {
+                    if (window.get(i) == '\n') {
+                        String line = decode(position, i);
+                        position = i + 1;
+                        return line;
+                    }
+                }
+                if (windowStart + limit >= fileSize) {
+                    if (position >= limit) {
+                        return null;
+                    }
+                    String line = decode(position, limit); // 改行で終わらない最後の行
+                    position = limit;
+                    return line;
+                }
+                if (position == 0) {
+                    throw new IOException("1行が " + WINDOW_BYTES + " バイトを超えています: " + windowStart + " バイト目");
+                }
+                map(windowStart + position); // 読みかけの行の先頭から窓を取り直す
+            }
+        }
+
+        private String decode(int from, int to) {
+            if (to > from && window.get(to - 1) == '\r') {
+                to--;
+            }
+            int length = to - from;
+            if (scratch.length < length) {
+                scratch = new byte[Math.max(length, scratch.length * 2)];
+            }
+            window.get(from, scratch, 0, length);
+            return new String(scratch, 0, length, StandardCharsets.UTF_8);
+        }
+
+        private void map(long start) throws IOException {
+            windowStart = start;
+            position = 0;
+            window = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(WINDOW_BYTES, fileSize - start));
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    /**
+     * コマンドライン引数。
+     */
+    static final class Options {
+        Path file;
+        String format;
+        Path database;
+        int batchSize = 10_000;
+        int dedupeCapacity = 1 << 20;
+        long reportEvery = 100_000;
+
+        char delimiter() {
+            String name = format != null ? format : file.getFileName().toString().toLowerCase(Locale.ROOT);
+            return name.endsWith("tsv") || name.endsWith("txt") ? '\t' : ',';
+        }
+
+        static Options parse(String[] args) {
+            Options options = new Options();
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                if (!arg.startsWith("--")) {
+                    options.file = Path.of(arg);
+                    continue;
+                }
+                String value = i + 1 < args.length ? args[i + 1] : null;
+                switch (arg) {
+                    case "--format" -> options.format = require(arg, value).toLowerCase(Locale.ROOT);
+                    case "--db" -> options.database = Path.of(require(arg, value));
+                    case "--batch" -> options.batchSize = Math.max(1, Integer.parseInt(require(arg, value)));
+                    case "--dedupe-capacity" -> options.dedupeCapacity = Integer.parseInt(require(arg, value));
+                    case "--report-every" -> options.reportEvery = Math.max(1, Long.parseLong(require(arg, value)));
+                    default -> throw new IllegalArgumentException("不明なオプションです: " + arg);
+                }
+                i++;
+            }
+            if (options.file == null) {
+                throw new IllegalArgumentException("取り込むファイルを指定してください");
+            }
+            if (options.format != null && !options.format.equals("csv") && !options.format.equals("tsv")) {
+                throw new IllegalArgumentException("--format は csv または tsv で指定してください");
+            }
+            if (options.dedupeCapacity < 16 || options.dedupeCapacity > (1 << 27)) {
+                throw new IllegalArgumentException("--dedupe-capacity は 16〜134217728 で指定してください");
+            }
+            return options;
+        }
+
+        private static String require(String option, String value) {
+            if (value == null) {
+                throw new IllegalArgumentException(option + " に値を指定してください");
+            }
+            return value;
+        }
+    }
+}
@@ -0,0 +1,410 @@
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * SQLite の接続プールを管理するクラス。
+ *
+ * - 事前に開いた物理接続を上限付きで保持し、複数スレッドへ安全に貸し出す。
+ * - 貸し出す接続はラッパーで、`close()` を呼ぶと物理接続を閉じずにプールへ返却する。
+ * - 返却時に未コミットのトランザクションはロールバックし、自動コミットに戻す。
+ * - 物理接続ごとに `prepareCached()` で準備した `PreparedStatement` をキャッシュし、同じ SQL の再解析を避ける。
+ *   キャッシュは最近使った順に `quiz.db.statementCacheSize`（既定 64）文までで、あふれたものは閉じる。
+ *   借りた接続の `prepareStatement(sql)` はキャッシュを使わず、ドライバのステートメントをそのまま返す
+ *   （組み立てた SQL や、同じ SQL を入れ子で使う処理のため）。
+ * - キャッシュしたステートメントは `StatementRegistry` で計測し、SQL 文ごとの所要時間と行数を集計する。
+ * - 待ち時間、使用時間（借りてから返すまで）の分布、使用中/待機中の接続数、接続失敗回数などの統計を提供する。
+ */
+public class ConnectionPool implements AutoCloseable {
+    private static final Logger LOGGER = Logger.getLogger(ConnectionPool.class.getName());
+    private static final int STATEMENT_CACHE_SIZE = Integer.getInteger("quiz.db.statementCacheSize", 64);
+
+    private final String url;
+    private final Properties properties;
+    private final int maxSize;
+    private final long borrowTimeoutMillis;
+
+    private final LinkedBlockingDeque<PhysicalConnection> idle = new LinkedBlockingDeque<>();
+    private final Semaphore permits;
+    private final AtomicInteger openCount = new AtomicInteger();
+    private final AtomicInteger activeCount = new AtomicInteger();
+
+    private final LongAdder borrowCount = new LongAdder();
+    private final LongAdder borrowWaitNanos = new LongAdder();
+    private final AtomicLong maxBorrowWaitNanos = new AtomicLong();
+    private final LongAdder borrowTimeouts = new LongAdder();
+    private final LongAdder openFailures = new LongAdder();
+    private final LatencyHistogram waitLatency = new LatencyHistogram();
+    private final LatencyHistogram holdLatency = new LatencyHistogram();
+
+    private volatile boolean closed = false;
+
+    /**
+     * プールを作成し、`initialSize` 本の接続を事前に開く。
+     *
+     * @param url                 JDBC URL
+     * @param properties          ドライバへ渡す接続プロパティ（PRAGMA 設定など）
+     * @param initialSize         事前に開く接続数
+     * @param maxSize             同時に貸し出せる接続数の上限
+     * @param borrowTimeoutMillis 接続の空きを待つ最大時間（ミリ秒）
+     * @throws SQLException 事前接続が1本も開けなかった場合
+     */
+    public ConnectionPool(String url, Properties properties, int initialSize, int maxSize, long borrowTimeoutMillis)
+            throws SQLException {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("maxSize は1以上を指定してください: " + maxSize);
+        }
+        this.url = url;
+        this.properties = properties;
+        this.maxSize = maxSize;
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+        this.permits = new Semaphore(maxSize, true);
+
+        int preOpen = Math.min(Math.max(initialSize, 1), maxSize);
+        for (int i = 0; i < preOpen; i++) {
+            try {
+                idle.offerFirst(openPhysical());
+            } catch (SQLException e) {
+                if (i == 0) {
+                    throw e; // 1本も開けない場合はデータベース自体が利用できない
+                }
+                LOGGER.log(Level.WARNING, "接続の事前オープンに失敗しました。必要時に再試行します。", e);
+                break;
+            }
+        }
+    }
+
+    /**
+     * プールから接続を借りる。
+     *
+     * - 待機中の接続があればそれを返し、なければ上限まで新しく開く。
+     * - 上限に達している場合は `borrowTimeoutMillis` まで返却を待つ。
+     *
+     * @return プールへ返却するラッパー接続（`close()` で返却される）
+     * @throws SQLException タイムアウトまたは接続の確立に失敗した場合
+     */
+    public Connection borrow() throws SQLException {
+        if (closed) {
+            throw new SQLException("接続プールはすでにクローズされています。");
+        }
+
+        long start = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(borrowTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                borrowTimeouts.increment();
+                throw new SQLException("接続の取得がタイムアウトしました (" + borrowTimeoutMillis + "ms)");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("接続の取得中に割り込まれました。", e);
+        }
+        long waited = System.nanoTime() - start;
+        borrowCount.increment();
+        borrowWaitNanos.add(waited);
+        maxBorrowWaitNanos.accumulateAndGet(waited, Math::max);
+        waitLatency.record(waited);
+
+        PhysicalConnection physical;
+        try {
+            physical = takeIdleOrOpen();
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+        activeCount.incrementAndGet();
+        return (Connection) Proxy.newProxyInstance(
+                ConnectionPool.class.getClassLoader(),
+                new Class<?>[] { Connection.class },
+                new PooledConnection(physical));
+    }
+
+    /**
+     * 待機中の接続を取り出す。壊れた接続は捨て、なければ新しく開く。
+     */
+    private PhysicalConnection takeIdleOrOpen() throws SQLException {
+        PhysicalConnection physical;
+        while ((physical = idle.pollFirst()) != null) {
+            if (!physical.connection.isClosed()) {
+                return physical;
+            }
+            closePhysical(physical);
+        }
+        return openPhysical();
+    }
+
+    /**
+     * 物理接続を1本開く。
+     */
+    private PhysicalConnection openPhysical() throws SQLException {
+        try {
+            PhysicalConnection physical = new PhysicalConnection(DriverManager.getConnection(url, properties));
+            openCount.incrementAndGet();
+            return physical;
+        } catch (SQLException e) {
+            openFailures.increment();
+            LOGGER.log(Level.SEVERE, "データベース接続に失敗しました: " + url, e);
+            throw e;
+        }
+    }
+
+    /**
+     * ラッパー接続から呼ばれ、物理接続をプールへ戻す。
+     *
+     * - 未コミットのトランザクションはロールバックし、自動コミットを有効に戻す。
+     * - キャッシュ済みのステートメントに残ったバッチは捨てる（失敗した処理の行を次の借り手の `executeBatch` で送らないため）。
+     * - 状態のリセットに失敗した接続は再利用せずに閉じる。
+     */
+    private void release(PhysicalConnection physical) {
+        activeCount.decrementAndGet();
+        try {
+            boolean reusable = !closed && !physical.connection.isClosed();
+            if (reusable) {
+                try {
+                    if (!physical.connection.getAutoCommit()) {
+                        physical.connection.rollback();
+                        physical.connection.setAutoCommit(true);
+                    }
+                    physical.clearBatches();
+                } catch (SQLException e) {
+                    LOGGER.log(Level.WARNING, "返却された接続のリセットに失敗したため破棄します。", e);
+                    reusable = false;
+                }
+            }
+            if (reusable) {
+                idle.offerFirst(physical);
+            } else {
+                closePhysical(physical);
+            }
+        } catch (SQLException e) {
+            LOGGER.log(Level.WARNING, "返却された接続の状態確認に失敗しました。", e);
+            closePhysical(physical);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private void closePhysical(PhysicalConnection physical) {
+        openCount.decrementAndGet();
+        for (CachedStatement cached : physical.statements.values()) {
+            try {
+                cached.raw().close();
+            } catch (SQLException e) {
+                LOGGER.log(Level.FINE, "キャッシュ済みステートメントのクローズに失敗しました。", e);
+            }
+        }
+        physical.statements.clear();
+        try {
+            physical.connection.close();
+        } catch (SQLException e) {
+            LOGGER.log(Level.WARNING, "接続のクローズに失敗しました。", e);
+        }
+    }
+
+    /**
+     * 現在のプール統計を取得する。
+     *
+     * @return 統計のスナップショット
+     */
+    public Stats stats() {
+        return new Stats(
+                borrowCount.sum(),
+                borrowWaitNanos.sum(),
+                maxBorrowWaitNanos.get(),
+                borrowTimeouts.sum(),
+                activeCount.get(),
+                idle.size(),
+                openCount.get(),
+                maxSize,
+                openFailures.sum(),
+                waitLatency.percentileNanos(99),
+                holdLatency.percentileNanos(50),
+                holdLatency.percentileNanos(99),
+                holdLatency.maxNanos());
+    }
+
+    /**
+     * プールを閉じ、待機中の物理接続をすべてクローズする。
+     * 貸し出し中の接続は返却された時点でクローズされる。
+     */
+    @Override
+    public void close() {
+        closed = true;
+        PhysicalConnection physical;
+        while ((physical = idle.pollFirst()) != null) {
+            closePhysical(physical);
+        }
+    }
+
+    /**
+     * 借りている接続の物理接続にキャッシュされた `PreparedStatement` を取得する。
+     *
+     * - 同じ SQL 文字列に対しては同じステートメントを再利用するため、SQLite での再解析が発生しない。
+     * - 返されたステートメントはプールが管理する（`close()` してもパラメータが消えるだけで、閉じられない）。
+     * - パラメータは毎回すべて設定し直すこと。
+     * - 同じ接続で同じ SQL を入れ子に使う（一方の結果を読みながらもう一方を実行する）場合は、
+     *   `ResultSet` を閉じ合うため、内側では `conn.prepareStatement(sql)` を使うこと。
+     *
+     * @param conn `borrow()` で借りた接続
+     * @param sql  SQL 文
+     * @return キャッシュされた `PreparedStatement`
+     * @throws SQLException ステートメントの準備に失敗した場合
+     */
+    public static PreparedStatement prepareCached(Connection conn, String sql) throws SQLException {
+        if (!Proxy.isProxyClass(conn.getClass())
+                || !(Proxy.getInvocationHandler(conn) instanceof PooledConnection pooled)) {
+            throw new SQLException("プールから借りた接続ではありません: " + conn);
+        }
+        if (pooled.returned.get() != 0) {
+            throw new SQLException("接続はすでにプールへ返却されています。");
+        }
+        return pooled.physical.prepare(sql);
+    }
+
+    /**
+     * プール統計のスナップショット。
+     *
+     * @param borrowCount        接続の貸し出し回数
+     * @param totalWaitNanos     貸し出しを待った合計時間（ナノ秒）
+     * @param maxWaitNanos       貸し出しを待った最大時間（ナノ秒）
+     * @param timeouts           待機がタイムアウトした回数
+     * @param active             貸し出し中の接続数
+     * @param idle               待機中の接続数
+     * @param open               開いている物理接続数
+     * @param maxSize            接続数の上限
+     * @param openFailures       物理接続のオープンに失敗した回数
+     * @param waitP99Nanos       貸し出しを待った時間の 99 パーセンタイル（ナノ秒）
+     * @param holdP50Nanos       借りてから返すまでの時間の中央値（ナノ秒）
+     * @param holdP99Nanos       借りてから返すまでの時間の 99 パーセンタイル（ナノ秒）
+     * @param holdMaxNanos       借りてから返すまでの最大時間（ナノ秒）
+     */
+    public record Stats(long borrowCount, long totalWaitNanos, long maxWaitNanos, long timeouts,
+            int active, int idle, int open, int maxSize, long openFailures,
+            long waitP99Nanos, long holdP50Nanos, long holdP99Nanos, long holdMaxNanos) {
+
+        /**
+         * 1回あたりの平均待ち時間（マイクロ秒）を返す。
+         */
+        public double averageWaitMicros() {
+            return borrowCount == 0 ? 0.0 : totalWaitNanos / 1_000.0 / borrowCount;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("borrows=%d avgWait=%.1fus p99Wait=%.1fus maxWait=%.1fus "
+                    + "hold[p50=%.3fms p99=%.3fms max=%.3fms] timeouts=%d active=%d idle=%d open=%d/%d openFailures=%d",
+                    borrowCount, averageWaitMicros(), waitP99Nanos / 1_000.0, maxWaitNanos / 1_000.0,
+                    holdP50Nanos / 1e6, holdP99Nanos / 1e6, holdMaxNanos / 1e6, timeouts,
+                    active, idle, open, maxSize, openFailures);
+        }
+    }
+
+    /**
+     * 貸し出した接続のラッパー。
+     * `close()` でプールへ返却し、返却後の操作は例外にする。
+     */
+    private final class PooledConnection implements InvocationHandler {
+        private final PhysicalConnection physical;
+        private final AtomicInteger returned = new AtomicInteger();
+        private final long borrowedAt = System.nanoTime();
+
+        PooledConnection(PhysicalConnection physical) {
+            this.physical = physical;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (returned.compareAndSet(0, 1)) {
+                        holdLatency.recordSince(borrowedAt);
+                        release(physical);
+                    }
+                    return null;
+                case "isClosed":
+                    return returned.get() != 0 || physical.connection.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "PooledConnection[" + physical.connection + "]";
+                default:
+                    break;
+            }
+            if (returned.get() != 0) {
+                throw new SQLException("接続はすでにプールへ返却されています。");
+            }
+            try {
+                return method.invoke(physical.connection, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    /**
+     * ドライバのステートメントと、それを包んだ計測用のラッパー。
+     */
+    private record CachedStatement(PreparedStatement raw, PreparedStatement instrumented) {
+    }
+
+    /**
+     * 物理接続と、その接続で準備済みのステートメント。
+     * 一度に1スレッドにしか貸し出されないため、キャッシュは同期しない。
+     */
+    private static final class PhysicalConnection {
+        private final Connection connection;
+        private final Map<String, CachedStatement> statements = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedStatement> eldest) {
+                if (size() <= STATEMENT_CACHE_SIZE) {
+                    return false;
+                }
+                try {
+                    eldest.getValue().raw().close();
+                } catch (SQLException e) {
+                    LOGGER.log(Level.FINE, "キャッシュからあふれたステートメントのクローズに失敗しました。", e);
+                }
+                return true;
+            }
+        };
+
+        PhysicalConnection(Connection connection) {
+            this.connection = connection;
+        }
+
+        PreparedStatement prepare(String sql) throws SQLException {
+            CachedStatement cached = statements.get(sql);
+            if (cached == null || cached.raw().isClosed()) {
+                PreparedStatement raw = connection.prepareStatement(sql);
+                cached = new CachedStatement(raw, StatementRegistry.instrument(raw, sql));
+                statements.put(sql, cached);
+            }
+            return cached.instrumented();
+        }
+
+        void clearBatches() throws SQLException {
+            for (CachedStatement cached : statements.values()) {
+                if (!cached.raw().isClosed()) {
+                    cached.raw().clearBatch();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,172 @@
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+/**
+ * パスワードのハッシュ化と照合を行うクラス。
+ *
+ * - ハッシュ化と照合は、スレッド数とキューの長さに上限のある専用のスレッドプールで実行する。
+ *   一斉ログインでハッシュ計算が集中しても、クイズの処理に使う CPU を使い切らない。
+ * - キューが満杯、または待ち時間が上限を超えた場合は `RejectedExecutionException` を投げる（HTTP では 503）。
+ * - 新しいパスワードの方式はシステムプロパティで切り替える。照合は保存形式から方式を判定する。
+ *   - `quiz.auth.hasher`: `sha256`（既定、これまでの形式）または `pbkdf2`
+ *   - `quiz.auth.pbkdf2.iterations`: PBKDF2 の反復回数（既定 100000）
+ *   - `quiz.auth.threads`: 専用スレッドの数（既定は CPU 数の半分、最低1）
+ *   - `quiz.auth.queueCapacity`: 待ち行列の上限（既定 1000）
+ *   - `quiz.auth.timeoutMillis`: 結果を待つ最大時間（既定 10000）
+ */
+public final class CredentialService {
+    private static final Logger LOGGER = Logger.getLogger(CredentialService.class.getName());
+
+    private static final int THREADS = Integer.getInteger("quiz.auth.threads",
+            Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+    private static final int QUEUE_CAPACITY = Integer.getInteger("quiz.auth.queueCapacity", 1000);
+    private static final long TIMEOUT_MILLIS = Long.getLong("quiz.auth.timeoutMillis", 10_000L);
+
+    private static final PasswordHasher SHA256 = new Sha256PasswordHasher();
+    private static final PasswordHasher PBKDF2 =
+            new Pbkdf2PasswordHasher(Integer.getInteger("quiz.auth.pbkdf2.iterations", 100_000));
+    private static final PasswordHasher HASHER = configuredHasher();        // 新しいパスワードに使う方式
+    private static final List<PasswordHasher> VERIFIERS = List.of(SHA256, PBKDF2); // 照合できる方式
+
+    private static final LongAdder hashes = new LongAdder();
+    private static final LongAdder rejected = new LongAdder();
+    private static final AtomicInteger maxQueueDepth = new AtomicInteger();
+    private static final LatencyHistogram hashLatency = new LatencyHistogram();
+    private static final long startNanos = System.nanoTime();
+
+    private static final ThreadPoolExecutor EXECUTOR = createExecutor();
+
+    /** 存在しないユーザーの照合にも同じ時間をかけるためのハッシュ（ユーザーの有無を応答時間から推測させない） */
+    private static final String DUMMY_HASH = HASHER.hash("dummy");
+
+    private CredentialService() {
+    }
+
+    /**
+     * 新しいパスワードを現在の方式でハッシュ化する。
+     *
+     * @param password パスワード（平文）
+     * @return 保存用の文字列
+     * @throws RejectedExecutionException 処理が混み合っている場合
+     */
+    public static String hash(String password) {
+        return submit(() -> HASHER.hash(password));
+    }
+
+    /**
+     * パスワードが保存済みのハッシュと一致するかを確認する。
+     *
+     * @param password パスワード（平文）
+     * @param stored   保存済みの文字列（ユーザーが存在しない場合は `null`）
+     * @return 一致する場合は `true`（`stored` が `null` の場合は常に `false`）
+     * @throws RejectedExecutionException 処理が混み合っている場合
+     */
+    public static boolean verify(String password, String stored) {
+        if (stored == null) {
+            submit(() -> HASHER.verify(password, DUMMY_HASH));
+            return false;
+        }
+        return submit(() -> {
+            for (PasswordHasher hasher : VERIFIERS) {
+                if (hasher.supports(stored)) {
+                    return hasher.verify(password, stored);
+                }
+            }
+            LOGGER.warning("不明な形式のパスワードハッシュです。");
+            return false;
+        });
+    }
+
+    /**
+     * 保存済みのハッシュを現在の方式で作り直すべきかを判定する（ログイン成功時の移行用）。
+     *
+     * @param stored 保存済みの文字列
+     * @return 作り直すべき場合は `true`
+     */
+    public static boolean needsRehash(String stored) {
+        return HASHER.needsRehash(stored);
+    }
+
+    /**
+     * @return 方式、処理件数、1秒あたりの処理件数、待ち行列の長さなどの統計
+     */
+    public static String stats() {
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        return String.format(Locale.ROOT,
+                "hasher=%s threads=%d hashes=%d hashesPerSec=%.1f queue=%d maxQueue=%d rejected=%d latency[%s]",
+                HASHER.name(), THREADS, hashes.sum(), hashes.sum() / seconds, EXECUTOR.getQueue().size(),
+                maxQueueDepth.get(), rejected.sum(), hashLatency.summary());
+    }
+
+    private static <T> T submit(Callable<T> task) {
+        Future<T> future;
+        try {
+            future = EXECUTOR.submit(() -> {
+                long start = System.nanoTime();
+                try {
+                    return task.call();
+                } finally {
+                    hashLatency.recordSince(start);
+                    hashes.increment();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            throw new RejectedExecutionException("認証処理が混み合っています。しばらくしてから再試行してください。", e);
+        }
+        maxQueueDepth.accumulateAndGet(EXECUTOR.getQueue().size(), Math::max);
+
+        try {
+            return future.get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            rejected.increment();
+            throw new RejectedExecutionException("認証処理がタイムアウトしました (" + TIMEOUT_MILLIS + "ms)", e);
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("認証処理中に割り込まれました", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new RuntimeException("認証処理中にエラーが発生しました", cause);
+        }
+    }
+
+    private static PasswordHasher configuredHasher() {
+        String name = System.getProperty("quiz.auth.hasher", "sha256").toLowerCase(Locale.ROOT);
+        switch (name) {
+            case "sha256":
+                return SHA256;
+            case "pbkdf2":
+                return PBKDF2;
+            default:
+                throw new IllegalArgumentException("不明なハッシュ方式です: " + name);
+        }
+    }
+
+    private static ThreadPoolExecutor createExecutor() {
+        AtomicInteger sequence = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(THREADS, THREADS, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(QUEUE_CAPACITY), runnable -> {
+                    Thread thread = new Thread(runnable, "credential-" + sequence.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        executor.allowCoreThreadTimeOut(true); // ログインがない間はスレッドを残さない
+        return executor;
+    }
+}
@@ -0,0 +1,404 @@
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.sqlite.SQLiteConnection;
+
+/**
+ * データベースの定期メンテナンス（オンラインバックアップ、古い解答の集約、空き領域の解放）。
+ *
+ * - バックアップは SQLite のオンラインバックアップ API で、読み取り用の接続から一度にコピーする。
+ *   WAL モードのため読み取りのスナップショットは書き込みを妨げず、アプリを止めずに一貫した複製が取れる
+ *   （少しずつコピーすると、途中で書き込まれるたびに最初からやり直しになるため）。
+ *   カタログと解答用データベースを `quiz.maintenance.backupDir`（既定はデータベースの横の `.backups`）の下の
+ *   時刻ごとのディレクトリへ書き、書き終えてから名前を付け替える。新しいものから `quiz.maintenance.backupRetain`（既定 7）個を残す。
+ *   ファイルごとにコピーするため、カタログと解答用データベースの間では同じ時点にならない。
+ * - `quiz.maintenance.retentionDays`（既定 0 で行わない）より前に解答した `user_answers` の行を消す。
+ *   ユーザーごとの通算は `user_stats`、問題ごとの解答数・正解数は `user_question_stats` に残るため、消す前にそこへ足すものはない
+ *   （集計テーブルより前の解答で問題ごとの集計がないものだけ補う）。
+ *   rowid の範囲ごとに短いトランザクションで行うため、解答の記録は長く待たされない。
+ * - 最後に `PRAGMA incremental_vacuum` で空きページを少しずつファイルから返す。`auto_vacuum = INCREMENTAL` でない
+ *   既存のファイルは、アプリを止めて `--enable-incremental-vacuum` で一度だけ変換する（VACUUM でファイル全体を書き直す）。
+ * - HTTP サーバーでは `quiz.maintenance.intervalMinutes`（既定 1440、0 で行わない）ごとに実行する。
+ *
+ * 使い方:
+ * <pre>
+ * java DatabaseMaintenance                                   (バックアップと空き領域の解放)
+ * java DatabaseMaintenance --retention-days 365 --db data/quiz.db
+ * java DatabaseMaintenance --no-backup --enable-incremental-vacuum   (アプリを止めて一度だけ)
+ * </pre>
+ */
+public class DatabaseMaintenance {
+    private static final Logger LOGGER = Logger.getLogger(DatabaseMaintenance.class.getName());
+
+    private static final int AUTO_VACUUM_INCREMENTAL = 2;
+    private static final int BACKUP_SLEEP_MILLIS = 100; // コピー先がロックされていた場合の待ち時間
+    private static final int BACKUP_RETRIES = 50;
+    private static final int ROLLUP_BATCH = Integer.getInteger("quiz.maintenance.rollupBatch", 5000); // 1トランザクションで調べる rowid の範囲
+    private static final int VACUUM_PAGES = Integer.getInteger("quiz.maintenance.vacuumPages", 1000); // 1回に返すページ数
+    private static final DateTimeFormatter BACKUP_NAME = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS");
+
+    /** 範囲内の古い解答の問題ごとの集計がない場合に補う（集計テーブルより前の解答のため）。 */
+    private static final String ROLLUP_QUESTION_STATS_SQL = "INSERT OR IGNORE INTO user_question_stats "
+            + "(user_id, question_id, answered, correct) "
+            + "SELECT user_id, question_id, 1, is_correct FROM user_answers "
+            + "WHERE rowid > ? AND rowid <= ? AND answered_at < ?";
+
+    private static final String ROLLUP_DELETE_SQL = "DELETE FROM user_answers WHERE rowid > ? AND rowid <= ? AND answered_at < ?";
+
+    private static ScheduledExecutorService scheduler;
+
+    /**
+     * 1回分のメンテナンスの結果。
+     *
+     * @param backup     バックアップのディレクトリ（取らなかった場合は `null`）
+     * @param rolledUp   集約して消した解答の行数
+     * @param freedPages ファイルから返したページ数
+     * @param millis     所要時間（ミリ秒）
+     */
+    public record Result(Path backup, long rolledUp, long freedPages, long millis) {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = Options.parse(args);
+        if (options.database != null) {
+            System.setProperty("quiz.db.url", "jdbc:sqlite:" + options.database);
+        }
+        try {
+            if (options.enableIncrementalVacuum) {
+                enableIncrementalVacuum();
+            }
+            Result result = run(options);
+            System.out.println(String.format(Locale.ROOT, "メンテナンス完了: バックアップ=%s 集約=%,d 行 解放=%,d ページ %.1f 秒",
+                    result.backup() == null ? "-" : result.backup(), result.rolledUp(), result.freedPages(),
+                    result.millis() / 1000.0));
+        } finally {
+            DatabaseManager.closeConnection();
+        }
+    }
+
+    /**
+     * 一定間隔ごとにメンテナンスを始める。すでに始めている場合は何もしない。
+     *
+     * @param intervalMinutes 間隔（分、0 以下の場合は何もしない）
+     */
+    public static synchronized void startScheduled(long intervalMinutes) {
+        if (intervalMinutes <= 0 || scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "quiz-maintenance");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                Result result = run(Options.defaults());
+                LOGGER.info("データベースのメンテナンスが完了しました: " + result);
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.SEVERE, "データベースのメンテナンスに失敗しました。次の回に再び行います。", e);
+            }
+        }, intervalMinutes, intervalMinutes, TimeUnit.MINUTES);
+    }
+
+    /**
+     * 定期的なメンテナンスを止める（実行中の回は終わるまで待つ）。
+     */
+    public static synchronized void stopScheduled() {
+        if (scheduler != null) {
+            scheduler.close();
+            scheduler = null;
+        }
+    }
+
+    /**
+     * バックアップ、古い解答の集約、空き領域の解放を順に行う。
+     *
+     * @param options 設定
+     * @return 結果
+     */
+    static synchronized Result run(Options options) {
+        long start = System.nanoTime();
+        Path backup = null;
+        long rolledUp = 0;
+        long freedPages = 0;
+        try {
+            if (options.backup) {
+                backup = backup(options.backupDir, options.backupRetain);
+            }
+            if (options.retentionDays > 0) {
+                long cutoff = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(options.retentionDays);
+                for (int shard = 0; shard < DatabaseManager.answerShardCount(); shard++) {
+                    rolledUp += rollUp(shard, cutoff);
+                }
+            }
+            freedPages += incrementalVacuum(-1);
+            if (DatabaseManager.answersSharded()) {
+                for (int shard = 0; shard < DatabaseManager.answerShardCount(); shard++) {
+                    freedPages += incrementalVacuum(shard);
+                }
+            }
+        } catch (SQLException | IOException e) {
+            LOGGER.log(Level.SEVERE, "データベースエラー: メンテナンスに失敗", e);
+            throw new RuntimeException("データベースのメンテナンス中にエラーが発生しました", e);
+        }
+        MetricsRegistry.recordSince("maintenance.run", start);
+        MetricsRegistry.add("maintenance.rolledUp", rolledUp);
+        return new Result(backup, rolledUp, freedPages, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    /**
+     * カタログと解答用データベースを時刻ごとのディレクトリへバックアップし、古いバックアップを消す。
+     *
+     * @return バックアップのディレクトリ
+     */
+    private static Path backup(Path dir, int retain) throws SQLException, IOException {
+        long start = System.nanoTime();
+        String name = LocalDateTime.now().format(BACKUP_NAME);
+        Path target = dir.resolve(name);
+        Path working = dir.resolve(name + ".tmp");
+        Files.createDirectories(working);
+        try {
+            try (Connection conn = DatabaseManager.getReadConnection()) {
+                backupTo(conn, working.resolve(fileName(DatabaseManager.answerShardUrl(0, 0))));
+            }
+            if (DatabaseManager.answersSharded()) {
+                for (int shard = 0; shard < DatabaseManager.answerShardCount(); shard++) {
+                    try (Connection conn = DatabaseManager.getAnswerShardReadConnection(shard)) {
+                        backupTo(conn, working.resolve(fileName(
+                                DatabaseManager.answerShardUrl(DatabaseManager.answerShardCount(), shard))));
+                    }
+                }
+            }
+            Files.move(working, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (SQLException | IOException | RuntimeException e) {
+            deleteTree(working);
+            throw e;
+        }
+        MetricsRegistry.recordSince("maintenance.backup", start);
+        deleteOldBackups(dir, retain);
+        return target;
+    }
+
+    /**
+     * @return JDBC URL のファイル名（例: `jdbc:sqlite:data/quiz.db` → `quiz.db`）
+     */
+    private static String fileName(String url) {
+        String path = url.startsWith("jdbc:sqlite:") ? url.substring("jdbc:sqlite:".length()) : url;
+        int query = path.indexOf('?');
+        return Path.of(query >= 0 ? path.substring(0, query) : path).getFileName().toString();
+    }
+
+    private static void backupTo(Connection conn, Path file) throws SQLException {
+        int rc = conn.unwrap(SQLiteConnection.class).getDatabase()
+                .backup("main", file.toString(), null, BACKUP_SLEEP_MILLIS, BACKUP_RETRIES, -1);
+        if (rc != 0) {
+            throw new SQLException("バックアップに失敗しました（SQLite のエラーコード " + rc + "）: " + file);
+        }
+    }
+
+    private static void deleteOldBackups(Path dir, int retain) throws IOException {
+        List<Path> backups = new ArrayList<>();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+            for (Path entry : entries) {
+                String name = entry.getFileName().toString();
+                if (Files.isDirectory(entry) && !name.endsWith(".tmp")) {
+                    backups.add(entry);
+                }
+            }
+        }
+        backups.sort(null); // 名前が時刻のため、名前順が古い順
+        for (int i = 0; i < backups.size() - Math.max(retain, 1); i++) {
+            deleteTree(backups.get(i));
+        }
+    }
+
+    private static void deleteTree(Path dir) throws IOException {
+        if (!Files.exists(dir)) {
+            return;
+        }
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+            for (Path entry : entries) {
+                Files.delete(entry);
+            }
+        }
+        Files.delete(dir);
+    }
+
+    /**
+     * 1つの解答用データベースの古い解答を、rowid の範囲ごとに集約して消す。
+     *
+     * @return 消した行数
+     */
+    private static long rollUp(int shard, long cutoffMillis) throws SQLException {
+        long maxRowId;
+        try (Connection conn = DatabaseManager.getAnswerShardReadConnection(shard);
+                Statement stmt = conn.createStatement();
+                ResultSet rs = stmt.executeQuery("SELECT MAX(rowid) FROM user_answers")) {
+            maxRowId = rs.next() ? rs.getLong(1) : 0;
+        }
+        long removed = 0;
+        for (long from = 0; from < maxRowId; from += ROLLUP_BATCH) {
+            long to = Math.min(from + ROLLUP_BATCH, maxRowId);
+            try (Connection conn = DatabaseManager.getAnswerShardConnection(shard)) {
+                conn.setAutoCommit(false);
+                try {
+                    bindRange(DatabaseManager.prepareCached(conn, ROLLUP_QUESTION_STATS_SQL), from, to, cutoffMillis).executeUpdate();
+                    removed += bindRange(DatabaseManager.prepareCached(conn, ROLLUP_DELETE_SQL), from, to, cutoffMillis)
+                            .executeUpdate();
+                    conn.commit();
+                } catch (SQLException e) {
+                    try {
+                        conn.rollback();
+                    } catch (SQLException rollbackError) {
+                        LOGGER.log(Level.SEVERE, "ロールバックの実行に失敗しました", rollbackError);
+                    }
+                    throw e;
+                }
+            }
+        }
+        if (removed > 0) {
+            LOGGER.info("古い解答を集約しました: " + removed + " 行（解答用データベース " + shard + "）");
+        }
+        return removed;
+    }
+
+    private static PreparedStatement bindRange(PreparedStatement pstmt, long from, long to, long cutoffMillis)
+            throws SQLException {
+        pstmt.setLong(1, from);
+        pstmt.setLong(2, to);
+        pstmt.setLong(3, cutoffMillis);
+        return pstmt;
+    }
+
+    /**
+     * 空きページを `VACUUM_PAGES` ずつファイルから返す。1回ごとに書き込み用の接続を返すため、解答の記録と交互に進む。
+     *
+     * @param shard 解答用データベースの番号（-1 はカタログ）
+     * @return 返したページ数
+     */
+    private static long incrementalVacuum(int shard) throws SQLException {
+        long freed = 0;
+        while (true) {
+            try (Connection conn = shard < 0 ? DatabaseManager.getConnection() : DatabaseManager.getAnswerShardConnection(shard);
+                    Statement stmt = conn.createStatement()) {
+                if (pragma(stmt, "auto_vacuum") != AUTO_VACUUM_INCREMENTAL) {
+                    if (pragma(stmt, "freelist_count") > 0) {
+                        LOGGER.info("auto_vacuum が INCREMENTAL でないため空き領域を返せません。"
+                                + "アプリを止めて DatabaseMaintenance --enable-incremental-vacuum を一度実行してください。");
+                    }
+                    return freed;
+                }
+                long before = pragma(stmt, "freelist_count");
+                if (before == 0) {
+                    return freed;
+                }
+                stmt.execute("PRAGMA incremental_vacuum(" + VACUUM_PAGES + ")");
+                long after = pragma(stmt, "freelist_count");
+                freed += before - after;
+                if (after >= before) {
+                    return freed;
+                }
+            }
+        }
+    }
+
+    /**
+     * カタログと解答用データベースを `auto_vacuum = INCREMENTAL` に変換する（ファイル全体を書き直すため、アプリを止めて実行する）。
+     */
+    static void enableIncrementalVacuum() throws SQLException {
+        enableIncrementalVacuum(DatabaseManager.getConnection());
+        if (DatabaseManager.answersSharded()) {
+            for (int shard = 0; shard < DatabaseManager.answerShardCount(); shard++) {
+                enableIncrementalVacuum(DatabaseManager.getAnswerShardConnection(shard));
+            }
+        }
+    }
+
+    private static void enableIncrementalVacuum(Connection borrowed) throws SQLException {
+        try (Connection conn = borrowed; Statement stmt = conn.createStatement()) {
+            if (pragma(stmt, "auto_vacuum") != AUTO_VACUUM_INCREMENTAL) {
+                stmt.execute("PRAGMA auto_vacuum = INCREMENTAL");
+                stmt.execute("VACUUM");
+                LOGGER.info("auto_vacuum を INCREMENTAL に変換しました。");
+            }
+        }
+    }
+
+    private static long pragma(Statement stmt, String name) throws SQLException {
+        try (ResultSet rs = stmt.executeQuery("PRAGMA " + name)) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    static final class Options {
+        Path database;
+        Path backupDir = Path.of(System.getProperty("quiz.maintenance.backupDir",
+                DatabaseManager.sidecarPath(".backups").toString()));
+        int backupRetain = Integer.getInteger("quiz.maintenance.backupRetain", 7);
+        long retentionDays = Long.getLong("quiz.maintenance.retentionDays", 0);
+        boolean backup = true;
+        boolean enableIncrementalVacuum;
+
+        static Options defaults() {
+            return new Options();
+        }
+
+        static Options parse(String[] args) {
+            Options options = new Options();
+            boolean backupDirGiven = false;
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                String value = i + 1 < args.length ? args[i + 1] : null;
+                switch (arg) {
+                    case "--db" -> options.database = Path.of(require(arg, value));
+                    case "--backup-dir" -> {
+                        options.backupDir = Path.of(require(arg, value));
+                        backupDirGiven = true;
+                    }
+                    case "--retain" -> options.backupRetain = Math.max(1, Integer.parseInt(require(arg, value)));
+                    case "--retention-days" -> options.retentionDays = Math.max(0, Long.parseLong(require(arg, value)));
+                    case "--no-backup" -> {
+                        options.backup = false;
+                        continue;
+                    }
+                    case "--enable-incremental-vacuum" -> {
+                        options.enableIncrementalVacuum = true;
+                        continue;
+                    }
+                    default -> throw new IllegalArgumentException("不明なオプションです: " + arg);
+                }
+                i++;
+            }
+            if (options.database != null && !backupDirGiven) { // 指定したデータベースの横に置く
+                String base = options.database.toString();
+                options.backupDir = Path.of((base.endsWith(".db") ? base.substring(0, base.length() - 3) : base) + ".backups");
+            }
+            return options;
+        }
+
+        private static String require(String option, String value) {
+            if (value == null) {
+                throw new IllegalArgumentException(option + " に値を指定してください");
+            }
+            return value;
+        }
+    }
+}
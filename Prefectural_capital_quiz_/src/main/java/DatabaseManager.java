@@ -1,48 +1,394 @@
+import java.nio.file.Path;
 import java.sql.Connection;
-import java.sql.DriverManager;
+import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
  * データベース接続を管理するクラス。
- * - シングルトンパターンを使用して、データベース接続を1つだけ維持する。
+ * - データベースファイルごとに、書き込み用と読み取り用の2つの経路（`ConnectionPool`）を持つ。
+ *   - 書き込み用: 接続は1本だけ。書き込みはこの接続の順番待ちで直列化され、SQLite の書き込みロックを奪い合わない。
+ *   - 読み取り用: 読み取り専用で開いた接続のプール。WAL モードのため、書き込み中のトランザクションに妨げられない。
+ * - 接続は WAL モードで開き、書き込み用は IMMEDIATE トランザクションを使う。
+ * - 借りた接続は `close()` でプールへ返却される。経路ごとの待ち時間と使用時間は `getPoolStats()` で確認できる。
+ * - 書き込み用の経路を作成するときに `SchemaMigrator` で未適用のスキーマ移行を適用する。
+ * - システムプロパティ `quiz.db.answerShards` に N（1以上）を指定すると、解答と集計のテーブル
+ *   （`user_answers` などユーザー単位のもの）を user_id のハッシュで N 個のファイルに分ける。
+ *   ファイルごとに書き込みロックがあるため、解答の書き込みを N 並列で行える。
+ *   ユーザーと問題は元のデータベース（カタログ）に残る。N を変える場合は `AnswerShardRebalancer` で移す。
  */
 public class DatabaseManager {
-    private static final String DB_URL = "jdbc:sqlite:data/quiz.db"; // SQLite データベースのパス
-    private static Connection connection = null;
+    private static final String DEFAULT_DB_URL = "jdbc:sqlite:data/quiz.db"; // SQLite データベースのパス
+    private static final int DEFAULT_POOL_SIZE = 8;           // 読み取り用に同時に貸し出せる接続数の上限
+    private static final int DEFAULT_INITIAL_SIZE = 2;        // 起動時に開いておく読み取り用の接続数
+    private static final long DEFAULT_BORROW_TIMEOUT_MS = 10_000; // 接続の空きを待つ最大時間
+    private static final int BUSY_TIMEOUT_MS = 5_000;         // ロック解除を待つ最大時間
+    private static final int CACHE_SIZE_KB = Integer.getInteger("quiz.db.cacheSizeKb", 8 * 1024); // 接続ごとのページキャッシュ
+    private static final long MMAP_SIZE = Long.getLong("quiz.db.mmapSize", 256L << 20); // メモリマップで読む範囲（0 で使わない）
+    private static final String SQLITE_OPEN_READONLY = "1";   // sqlite3_open_v2 のフラグ
     private static final Logger LOGGER = Logger.getLogger(DatabaseManager.class.getName());
 
+    private static final int ANSWER_SHARDS = Integer.getInteger("quiz.db.answerShards", 0); // 0: 分割しない
+    private static final int DEFAULT_SHARD_POOL_SIZE = 4;     // 分割したファイルごとの読み取り用の接続数の上限
+
+    private static volatile Route catalog = null;
+    private static volatile Route[] shards = null;
+
     /**
-     * データベースへの接続を確立し、1つの `Connection` を維持する。
+     * カタログ（ユーザー・問題）のデータベースの書き込み用の接続を借りる。
      *
-     * @return `Connection` インスタンス（すでに開いている場合は同じものを返す）
+     * - 初回呼び出し時にドライバをロードし、プールを作成する。
+     * - 接続先や読み取り用のプールサイズはシステムプロパティ `quiz.db.url`、`quiz.db.poolSize` で変更できる。
+     * - 書き込み用の接続は1本だけのため、借りている間は他の書き込みが待たされる。読み取りだけなら `getReadConnection()` を使う。
+     *
+     * @return プールへ返却するラッパー接続（try-with-resources で閉じること）
+     * @throws SQLException 接続を取得できなかった場合
      */
-    public static Connection getConnection() {
-        try {
-            if (connection == null || connection.isClosed()) {
-                Class.forName("org.sqlite.JDBC"); // JDBC ドライバをロード
-                connection = DriverManager.getConnection(DB_URL);
+    public static Connection getConnection() throws SQLException {
+        return catalog().writer().borrow();
+    }
+
+    /**
+     * カタログのデータベースの読み取り専用の接続を借りる。
+     *
+     * @return プールへ返却するラッパー接続（try-with-resources で閉じること）
+     * @throws SQLException 接続を取得できなかった場合
+     */
+    public static Connection getReadConnection() throws SQLException {
+        return catalog().reader().borrow();
+    }
+
+    /**
+     * 借りている接続にキャッシュされた `PreparedStatement` を取得する。
+     *
+     * - 返されたステートメントはプールが管理するため、`close()` しないこと。
+     *
+     * @param conn `getConnection()` などで借りた接続
+     * @param sql  SQL 文
+     * @return キャッシュされた `PreparedStatement`
+     * @throws SQLException ステートメントの準備に失敗した場合
+     */
+    public static PreparedStatement prepareCached(Connection conn, String sql) throws SQLException {
+        return ConnectionPool.prepareCached(conn, sql);
+    }
+
+    /**
+     * ユーザーの解答と集計が置かれたデータベースの書き込み用の接続を借りる。
+     *
+     * - 分割していない場合は `getConnection()` と同じ。
+     *
+     * @param userId ユーザーID
+     * @return プールへ返却するラッパー接続（try-with-resources で閉じること）
+     * @throws SQLException 接続を取得できなかった場合
+     */
+    public static Connection getAnswerConnection(String userId) throws SQLException {
+        return getAnswerShardConnection(answerShardOf(userId));
+    }
+
+    /**
+     * ユーザーの解答と集計が置かれたデータベースの読み取り専用の接続を借りる。
+     *
+     * @param userId ユーザーID
+     * @return プールへ返却するラッパー接続（try-with-resources で閉じること）
+     * @throws SQLException 接続を取得できなかった場合
+     */
+    public static Connection getAnswerReadConnection(String userId) throws SQLException {
+        return getAnswerShardReadConnection(answerShardOf(userId));
+    }
+
+    /**
+     * 指定した番号の解答用データベースの書き込み用の接続を借りる。
+     *
+     * @param shard 0 以上 `answerShardCount()` 未満の番号
+     * @return プールへ返却するラッパー接続（try-with-resources で閉じること）
+     * @throws SQLException 接続を取得できなかった場合
+     */
+    public static Connection getAnswerShardConnection(int shard) throws SQLException {
+        return answerRoute(shard).writer().borrow();
+    }
+
+    /**
+     * 指定した番号の解答用データベースの読み取り専用の接続を借りる（全ユーザーを走査する処理用）。
+     *
+     * @param shard 0 以上 `answerShardCount()` 未満の番号
+     * @return プールへ返却するラッパー接続（try-with-resources で閉じること）
+     * @throws SQLException 接続を取得できなかった場合
+     */
+    public static Connection getAnswerShardReadConnection(int shard) throws SQLException {
+        return answerRoute(shard).reader().borrow();
+    }
+
+    /**
+     * @return 解答用データベースの数（分割していない場合は 1）
+     */
+    public static int answerShardCount() {
+        return Math.max(ANSWER_SHARDS, 1);
+    }
+
+    /**
+     * @return 解答用データベースをカタログと別のファイルに分けている場合は `true`（`quiz.db.answerShards` が 1 以上）
+     */
+    static boolean answersSharded() {
+        return ANSWER_SHARDS > 0;
+    }
+
+    /**
+     * @param userId ユーザーID
+     * @return ユーザーの解答が置かれたデータベースの番号
+     */
+    public static int answerShardOf(String userId) {
+        return shardOf(userId, answerShardCount());
+    }
+
+    /**
+     * 分割数を指定して、ユーザーの解答が置かれるデータベースの番号を求める。
+     */
+    static int shardOf(String userId, int shardCount) {
+        return shardCount <= 1 ? 0 : Math.floorMod(userId.hashCode(), shardCount);
+    }
+
+    /**
+     * 分割数ごとの解答用データベースの接続先。ファイル名に分割数を含めるため、分割数を変えても既存のファイルと重ならない。
+     *
+     * @param shardCount 分割数（0 の場合はカタログのデータベース）
+     * @param shard      番号
+     * @return JDBC URL（例: `jdbc:sqlite:data/quiz.answers-4-1.db`、カタログの URL のパラメータ `?...` はそのまま付ける）
+     */
+    static String answerShardUrl(int shardCount, int shard) {
+        String url = catalogUrl();
+        if (shardCount == 0) {
+            return url;
+        }
+        int query = url.indexOf('?');
+        String path = query >= 0 ? url.substring(0, query) : url;
+        String base = path.endsWith(".db") ? path.substring(0, path.length() - 3) : path;
+        return base + ".answers-" + shardCount + "-" + shard + ".db" + (query >= 0 ? url.substring(query) : "");
+    }
+
+    /**
+     * 経路ごとの接続プールの統計を取得する。
+     *
+     * @return 経路名（`catalog.write`、`catalog.read`、`shard0.write` など）→ 統計（未作成の経路は含まない）
+     */
+    public static Map<String, ConnectionPool.Stats> getPoolStats() {
+        Map<String, ConnectionPool.Stats> stats = new LinkedHashMap<>();
+        Route current = catalog;
+        if (current != null) {
+            current.putStats("catalog", stats);
+        }
+        Route[] currentShards = shards;
+        if (currentShards != null) {
+            for (int i = 0; i < currentShards.length; i++) {
+                currentShards[i].putStats("shard" + i, stats);
             }
-        } catch (ClassNotFoundException e) {
-            LOGGER.log(Level.SEVERE, "SQLite JDBC ドライバが見つかりません。", e);
+        }
+        return stats;
+    }
+
+    /**
+     * カタログの経路を取得する（未作成なら作成する）。
+     */
+    private static Route catalog() throws SQLException {
+        Route current = catalog;
+        if (current != null) {
+            return current;
+        }
+        synchronized (DatabaseManager.class) {
+            if (catalog == null) {
+                try {
+                    Class.forName("org.sqlite.JDBC"); // JDBC ドライバをロード
+                } catch (ClassNotFoundException e) {
+                    LOGGER.log(Level.SEVERE, "SQLite JDBC ドライバが見つかりません。", e);
+                    throw new SQLException("SQLite JDBC ドライバが見つかりません。", e);
+                }
+                catalog = openRoute(catalogUrl(), Integer.getInteger("quiz.db.poolSize", DEFAULT_POOL_SIZE), false);
+            }
+            return catalog;
+        }
+    }
+
+    private static Route answerRoute(int shard) throws SQLException {
+        if (ANSWER_SHARDS == 0) {
+            return catalog();
+        }
+        return shards()[shard];
+    }
+
+    /**
+     * 解答用データベースの経路を取得する（未作成なら作成し、解答と集計のテーブルを用意する）。
+     */
+    private static Route[] shards() throws SQLException {
+        Route[] current = shards;
+        if (current != null) {
+            return current;
+        }
+        catalog(); // ドライバのロードとカタログの移行を先に済ませる
+        synchronized (DatabaseManager.class) {
+            if (shards == null) {
+                int maxSize = Integer.getInteger("quiz.db.shardPoolSize", DEFAULT_SHARD_POOL_SIZE);
+                Route[] created = new Route[ANSWER_SHARDS];
+                try {
+                    for (int i = 0; i < created.length; i++) {
+                        created[i] = openRoute(answerShardUrl(ANSWER_SHARDS, i), maxSize, true);
+                    }
+                } catch (SQLException e) {
+                    for (Route route : created) {
+                        if (route != null) {
+                            route.close();
+                        }
+                    }
+                    throw e;
+                }
+                LOGGER.info("解答を " + ANSWER_SHARDS + " 個のデータベースに分けて保存します。");
+                shards = created;
+            }
+            return shards;
+        }
+    }
+
+    /**
+     * 書き込み用の接続を開いてスキーマを用意してから、読み取り用のプールを作る
+     * （読み取り専用の接続はファイルを作成できないため、この順で開く）。
+     */
+    private static Route openRoute(String url, int readerSize, boolean answerShard) throws SQLException {
+        ConnectionPool writer = new ConnectionPool(url, connectionProperties(), 1, 1, DEFAULT_BORROW_TIMEOUT_MS);
+        try (Connection conn = writer.borrow()) {
+            if (answerShard) {
+                SchemaMigrator.prepareAnswerShard(conn);
+            } else {
+                SchemaMigrator.migrate(conn);
+            }
+        } catch (SQLException e) {
+            writer.close();
+            LOGGER.log(Level.SEVERE, "スキーマの移行に失敗しました: " + url, e);
+            throw e;
+        }
+        try {
+            ConnectionPool reader = new ConnectionPool(url, readOnlyProperties(),
+                    Math.min(DEFAULT_INITIAL_SIZE, readerSize), readerSize, DEFAULT_BORROW_TIMEOUT_MS);
+            return new Route(writer, reader);
         } catch (SQLException e) {
-            LOGGER.log(Level.SEVERE, "データベース接続に失敗しました。", e);
+            writer.close();
+            throw e;
         }
-        return connection;
+    }
+
+    private static String catalogUrl() {
+        return System.getProperty("quiz.db.url", DEFAULT_DB_URL);
     }
 
     /**
-     * アプリ終了時にデータベース接続をクローズするメソッド。
+     * カタログのデータベースファイルの横に置くファイルのパス。
+     *
+     * @param suffix 拡張子 `.db` の代わりに付ける名前（例: `.answer-log`）
+     * @return パス（例: `data/quiz.answer-log`）
+     */
+    static Path sidecarPath(String suffix) {
+        String path = catalogUrl();
+        if (path.startsWith("jdbc:sqlite:")) {
+            path = path.substring("jdbc:sqlite:".length());
+        }
+        int query = path.indexOf('?');
+        if (query >= 0) {
+            path = path.substring(0, query);
+        }
+        String base = path.endsWith(".db") ? path.substring(0, path.length() - 3) : path;
+        return Path.of(base + suffix);
+    }
+
+    /**
+     * @return 接続に設定するメモリマップの範囲（バイト、0 は使わない）
+     */
+    static long mmapSize() {
+        return MMAP_SIZE;
+    }
+
+    /**
+     * @return カタログと解答用データベースのファイルのパス（分割していない場合はカタログだけ）
+     */
+    static List<Path> databaseFiles() {
+        List<Path> files = new ArrayList<>();
+        files.add(sidecarPath(".db"));
+        for (int i = 0; i < ANSWER_SHARDS; i++) {
+            files.add(sidecarPath(".answers-" + ANSWER_SHARDS + "-" + i + ".db"));
+        }
+        return files;
+    }
+
+    /**
+     * 書き込み用の接続に適用する SQLite の設定。
+     *
+     * - `journal_mode=WAL`: 書き込み中でも読み取りをブロックしない。
+     * - `transaction_mode=IMMEDIATE`: トランザクション開始時に書き込みロックを取り、途中での競合を防ぐ。
+     * - `busy_timeout`: ロック待ちで即座に失敗せず、一定時間リトライする。
+     * - `cache_size` / `mmap_size`: 接続ごとのページキャッシュ（`quiz.db.cacheSizeKb`、既定 8MB）と
+     *   メモリマップで読む範囲（`quiz.db.mmapSize`、既定 256MB）。メモリマップの範囲は OS のページキャッシュから直接読む。
+     */
+    static Properties connectionProperties() {
+        Properties properties = new Properties();
+        properties.setProperty("journal_mode", "WAL");
+        properties.setProperty("transaction_mode", "IMMEDIATE");
+        properties.setProperty("synchronous", "NORMAL");
+        properties.setProperty("busy_timeout", String.valueOf(BUSY_TIMEOUT_MS));
+        properties.setProperty("cache_size", String.valueOf(-CACHE_SIZE_KB)); // 負の値は KiB 単位
+        properties.setProperty("mmap_size", String.valueOf(MMAP_SIZE));
+        return properties;
+    }
+
+    /**
+     * 読み取り用の接続に適用する SQLite の設定。
+     *
+     * - 読み取り専用で開き、誤って書き込んだ場合はエラーにする。
+     * - WAL モードはファイルに記録されるため指定しない（書き込み用の接続が先に設定する）。
+     * - ページキャッシュとメモリマップは書き込み用と同じ。
+     */
+    private static Properties readOnlyProperties() {
+        Properties properties = new Properties();
+        properties.setProperty("open_mode", SQLITE_OPEN_READONLY);
+        properties.setProperty("busy_timeout", String.valueOf(BUSY_TIMEOUT_MS));
+        properties.setProperty("cache_size", String.valueOf(-CACHE_SIZE_KB));
+        properties.setProperty("mmap_size", String.valueOf(MMAP_SIZE));
+        return properties;
+    }
+
+    /**
+     * アプリ終了時に接続プールをクローズするメソッド。
      */
     public static void closeConnection() {
-        if (connection != null) {
-            try {
-                connection.close();
-                connection = null;
-            } catch (SQLException e) {
-                LOGGER.log(Level.SEVERE, "データベース接続のクローズに失敗しました。", e);
+        synchronized (DatabaseManager.class) {
+            if (shards != null) {
+                for (Route route : shards) {
+                    route.close();
+                }
+                shards = null;
             }
+            if (catalog != null) {
+                LOGGER.fine(() -> "接続プール統計: " + getPoolStats());
+                catalog.close();
+                catalog = null;
+            }
+        }
+    }
+
+    /**
+     * 1つのデータベースファイルへの経路（書き込み用の1本の接続と、読み取り専用の接続のプール）。
+     */
+    private record Route(ConnectionPool writer, ConnectionPool reader) {
+
+        void putStats(String name, Map<String, ConnectionPool.Stats> stats) {
+            stats.put(name + ".write", writer.stats());
+            stats.put(name + ".read", reader.stats());
+        }
+
+        void close() {
+            writer.close();
+            reader.close();
         }
     }
 }
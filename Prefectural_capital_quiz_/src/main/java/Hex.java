@@ -0,0 +1,50 @@
+/**
+ * バイト列と16進数文字列の相互変換。
+ *
+ * - 変換表を使い、`String.format` を使わずに1回の配列確保で変換する。
+ */
+public final class Hex {
+    private static final char[] DIGITS = "0123456789abcdef".toCharArray();
+
+    private Hex() {
+    }
+
+    /**
+     * バイト列を小文字の16進数文字列に変換する。
+     *
+     * @param bytes 変換するバイト列
+     * @return 16進数文字列
+     */
+    public static String encode(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            int b = bytes[i] & 0xff;
+            chars[i * 2] = DIGITS[b >>> 4];
+            chars[i * 2 + 1] = DIGITS[b & 0x0f];
+        }
+        return new String(chars);
+    }
+
+    /**
+     * 16進数文字列をバイト列に変換する。
+     *
+     * @param hex 16進数文字列（大文字・小文字どちらでもよい）
+     * @return バイト列
+     * @throws IllegalArgumentException 16進数文字列として不正な場合
+     */
+    public static byte[] decode(String hex) {
+        if (hex.length() % 2 != 0) {
+            throw new IllegalArgumentException("16進数文字列の長さが奇数です");
+        }
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            int high = Character.digit(hex.charAt(i * 2), 16);
+            int low = Character.digit(hex.charAt(i * 2 + 1), 16);
+            if (high < 0 || low < 0) {
+                throw new IllegalArgumentException("16進数以外の文字が含まれています: " + hex);
+            }
+            bytes[i] = (byte) (high << 4 | low);
+        }
+        return bytes;
+    }
+}
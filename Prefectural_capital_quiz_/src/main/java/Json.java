@@ -0,0 +1,330 @@
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * HTTP API 用の最小限の JSON 読み書きクラス。
+ *
+ * - 外部ライブラリに依存しないよう、必要な範囲だけを実装している。
+ * - 入れ子の深さは `MAX_DEPTH` までとする（深い入れ子でスタックを使い切らないため）。
+ * - 読み込み結果は `Map`（オブジェクト）、`List`（配列）、`String`、`Long`、`Double`、`Boolean`、`null` になる。
+ * - 書き込みは `Map`、`Iterable`、配列、`String`、`Number`、`Boolean`、`record`、`null` に対応する。
+ */
+public final class Json {
+
+    /** オブジェクトと配列の入れ子の最大の深さ */
+    static final int MAX_DEPTH = 64;
+
+    private Json() {
+    }
+
+    /**
+     * JSON 文字列を解析する。
+     *
+     * @param text JSON 文字列
+     * @return 解析結果
+     * @throws IllegalArgumentException JSON として不正な場合
+     */
+    public static Object parse(String text) {
+        Parser parser = new Parser(text);
+        parser.skipWhitespace();
+        Object value = parser.readValue();
+        parser.skipWhitespace();
+        if (parser.pos != text.length()) {
+            throw parser.error("余分な文字があります");
+        }
+        return value;
+    }
+
+    /**
+     * JSON オブジェクトを解析する。
+     *
+     * @param text JSON 文字列（空の場合は空のオブジェクトとみなす）
+     * @return キーと値のマップ
+     * @throws IllegalArgumentException JSON オブジェクトでない場合
+     */
+    @SuppressWarnings("unchecked")
+    public static Map<String, Object> parseObject(String text) {
+        if (text == null || text.isBlank()) {
+            return new LinkedHashMap<>();
+        }
+        Object value = parse(text);
+        if (!(value instanceof Map)) {
+            throw new IllegalArgumentException("JSON オブジェクトを指定してください");
+        }
+        return (Map<String, Object>) value;
+    }
+
+    /**
+     * 値を JSON 文字列に変換する。
+     *
+     * @param value 変換する値
+     * @return JSON 文字列
+     */
+    public static String write(Object value) {
+        StringBuilder out = new StringBuilder();
+        writeValue(out, value);
+        return out.toString();
+    }
+
+    private static void writeValue(StringBuilder out, Object value) {
+        if (value == null) {
+            out.append("null");
+        } else if (value instanceof String s) {
+            writeString(out, s);
+        } else if (value instanceof Number || value instanceof Boolean) {
+            out.append(value);
+        } else if (value instanceof Map<?, ?> map) {
+            out.append('{');
+            boolean first = true;
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                if (!first) {
+                    out.append(',');
+                }
+                first = false;
+                writeString(out, String.valueOf(entry.getKey()));
+                out.append(':');
+                writeValue(out, entry.getValue());
+            }
+            out.append('}');
+        } else if (value instanceof Iterable<?> iterable) {
+            out.append('[');
+            boolean first = true;
+            for (Object element : iterable) {
+                if (!first) {
+                    out.append(',');
+                }
+                first = false;
+                writeValue(out, element);
+            }
+            out.append(']');
+        } else if (value instanceof Object[] array) {
+            writeValue(out, List.of(array));
+        } else if (value instanceof Record record) {
+            Map<String, Object> fields = new LinkedHashMap<>();
+            for (var component : record.getClass().getRecordComponents()) {
+                try {
+                    fields.put(component.getName(), component.getAccessor().invoke(record));
+                } catch (ReflectiveOperationException e) {
+                    throw new IllegalStateException("record の読み取りに失敗しました: " + component, e);
+                }
+            }
+            writeValue(out, fields);
+        } else {
+            writeString(out, value.toString());
+        }
+    }
+
+    private static void writeString(StringBuilder out, String s) {
+        out.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"' -> out.append("\\\"");
+                case '\\' -> out.append("\\\\");
+                case '\n' -> out.append("\\n");
+                case '\r' -> out.append("\\r");
+                case '\t' -> out.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        out.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.append(c);
+                    }
+                }
+            }
+        }
+        out.append('"');
+    }
+
+    /**
+     * 再帰下降パーサー。
+     */
+    private static final class Parser {
+        private final String text;
+        private int pos = 0;
+        private int depth = 0; // 読んでいるオブジェクトと配列の入れ子の深さ
+
+        Parser(String text) {
+            this.text = text;
+        }
+
+        Object readValue() {
+            if (pos >= text.length()) {
+                throw error("値がありません");
+            }
+            char c = text.charAt(pos);
+            switch (c) {
+                case '{':
+                    enter();
+                    Map<String, Object> map = readObject();
+                    depth--;
+                    return map;
+                case '[':
+                    enter();
+                    List<Object> list = readArray();
+                    depth--;
+                    return list;
+                case '"':
+                    return readString();
+                case 't':
+                    expect("true");
+                    return Boolean.TRUE;
+                case 'f':
+                    expect("false");
+                    return Boolean.FALSE;
+                case 'n':
+                    expect("null");
+                    return null;
+                default:
+                    return readNumber();
+            }
+        }
+
+        private void enter() {
+            if (++depth > MAX_DEPTH) {
+                throw error("入れ子が深すぎます（最大 " + MAX_DEPTH + "）");
+            }
+        }
+
+        private Map<String, Object> readObject() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            pos++; // '{'
+            skipWhitespace();
+            if (peek() == '}') {
+                pos++;
+                return map;
+            }
+            while (true) {
+                skipWhitespace();
+                if (peek() != '"') {
+                    throw error("キーは文字列で指定してください");
+                }
+                String key = readString();
+                skipWhitespace();
+                if (peek() != ':') {
+                    throw error("':' がありません");
+                }
+                pos++;
+                skipWhitespace();
+                map.put(key, readValue());
+                skipWhitespace();
+                char c = next();
+                if (c == '}') {
+                    return map;
+                }
+                if (c != ',') {
+                    throw error("',' または '}' がありません");
+                }
+            }
+        }
+
+        private List<Object> readArray() {
+            List<Object> list = new ArrayList<>();
+            pos++; // '['
+            skipWhitespace();
+            if (peek() == ']') {
+                pos++;
+                return list;
+            }
+            while (true) {
+                skipWhitespace();
+                list.add(readValue());
+                skipWhitespace();
+                char c = next();
+                if (c == ']') {
+                    return list;
+                }
+                if (c != ',') {
+                    throw error("',' または ']' がありません");
+                }
+            }
+        }
+
+        private String readString() {
+            StringBuilder sb = new StringBuilder();
+            pos++; // '"'
+            while (true) {
+                char c = next();
+                if (c == '"') {
+                    return sb.toString();
+                }
+                if (c != '\\') {
+                    sb.append(c);
+                    continue;
+                }
+                char escaped = next();
+                switch (escaped) {
+                    case '"', '\\', '/' -> sb.append(escaped);
+                    case 'b' -> sb.append('\b');
+                    case 'f' -> sb.append('\f');
+                    case 'n' -> sb.append('\n');
+                    case 'r' -> sb.append('\r');
+                    case 't' -> sb.append('\t');
+                    case 'u' -> {
+                        if (pos + 4 > text.length()) {
+                            throw error("不正な \\u エスケープです");
+                        }
+                        try {
+                            sb.append((char) Integer.parseInt(text.substring(pos, pos + 4), 16));
+                        } catch (NumberFormatException e) {
+                            throw error("不正な \\u エスケープです");
+                        }
+                        pos += 4;
+                    }
+                    default -> throw error("不正なエスケープです: \\" + escaped);
+                }
+            }
+        }
+
+        private Object readNumber() {
+            int start = pos;
+            while (pos < text.length() && "+-0123456789.eE".indexOf(text.charAt(pos)) >= 0) {
+                pos++;
+            }
+            String number = text.substring(start, pos);
+            if (number.isEmpty()) {
+                throw error("不正な値です");
+            }
+            try {
+                if (number.indexOf('.') >= 0 || number.indexOf('e') >= 0 || number.indexOf('E') >= 0) {
+                    return Double.parseDouble(number);
+                }
+                return Long.parseLong(number);
+            } catch (NumberFormatException e) {
+                throw error("不正な数値です: " + number);
+            }
+        }
+
+        private void expect(String literal) {
+            if (!text.startsWith(literal, pos)) {
+                throw error("不正な値です");
+            }
+            pos += literal.length();
+        }
+
+        void skipWhitespace() {
+            while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+                pos++;
+            }
+        }
+
+        private char peek() {
+            if (pos >= text.length()) {
+                throw error("JSON が途中で終わっています");
+            }
+            return text.charAt(pos);
+        }
+
+        private char next() {
+            char c = peek();
+            pos++;
+            return c;
+        }
+
+        IllegalArgumentException error(String message) {
+            return new IllegalArgumentException("JSON の解析に失敗しました (" + pos + "文字目): " + message);
+        }
+    }
+}
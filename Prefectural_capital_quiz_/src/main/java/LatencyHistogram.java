@@ -0,0 +1,123 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * ロックを使わずに記録できる、レイテンシ（ナノ秒）のヒストグラム。
+ *
+ * - HDR Histogram と同じ対数・線形の階層バケットを使い、値の大きさによらず相対誤差を約6%に抑える。
+ * - 2の累乗ごとに16個の線形バケットを持ち、バケット数は固定（約1KB × 8バイト）。
+ * - `record()` はアトミックなカウンタの加算だけで、複数スレッドから同時に呼べる。
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;      // 16
+    private static final int LINEAR_LIMIT = SUB_BUCKETS * 2;           // 32 未満はそのままの値
+    private static final int BUCKET_COUNT = (63 - SUB_BUCKET_BITS) * SUB_BUCKETS + LINEAR_LIMIT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder totalCount = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    /**
+     * 1件のレイテンシを記録する。
+     *
+     * @param nanos 経過時間（ナノ秒、負の値は0として扱う）
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(indexOf(value));
+        totalCount.increment();
+        totalNanos.add(value);
+        if (value > maxNanos.get()) {
+            maxNanos.accumulateAndGet(value, Math::max);
+        }
+    }
+
+    /**
+     * 開始時刻から現在までの経過時間を記録する。
+     *
+     * @param startNanos `System.nanoTime()` で取得した開始時刻
+     */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * @return 記録件数
+     */
+    public long count() {
+        return totalCount.sum();
+    }
+
+    /**
+     * @return 平均値（ナノ秒）
+     */
+    public double meanNanos() {
+        long count = totalCount.sum();
+        return count == 0 ? 0.0 : (double) totalNanos.sum() / count;
+    }
+
+    /**
+     * @return 最大値（ナノ秒）
+     */
+    public long maxNanos() {
+        return maxNanos.get();
+    }
+
+    /**
+     * 指定したパーセンタイルの値を返す。
+     *
+     * @param percentile 0〜100 のパーセンタイル（例: 99.9）
+     * @return その値を含むバケットの上限（ナノ秒）。記録がない場合は0
+     */
+    public long percentileNanos(double percentile) {
+        long count = totalCount.sum();
+        if (count == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(count * percentile / 100.0));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts.get(i);
+            if (seen >= target) {
+                return Math.min(upperBoundOf(i), maxNanos.get());
+            }
+        }
+        return maxNanos.get();
+    }
+
+    /**
+     * 件数・平均・p50/p99/p99.9・最大をミリ秒で表した文字列を返す。
+     */
+    public String summary() {
+        return String.format("count=%d mean=%.3fms p50=%.3fms p99=%.3fms p999=%.3fms max=%.3fms",
+                count(), meanNanos() / 1e6, percentileNanos(50) / 1e6, percentileNanos(99) / 1e6,
+                percentileNanos(99.9) / 1e6, maxNanos() / 1e6);
+    }
+
+    /**
+     * 値が入るバケットの位置を計算する。
+     * 32 未満はそのまま、それ以上は上位5ビット（先頭の1 + 4ビット）で線形に分割する。
+     */
+    static int indexOf(long value) {
+        if (value < LINEAR_LIMIT) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return shift * SUB_BUCKETS + (int) (value >>> shift);
+    }
+
+    /**
+     * バケットに入る最大の値を返す。
+     */
+    static long upperBoundOf(int index) {
+        if (index < LINEAR_LIMIT) {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        long mantissa = index % SUB_BUCKETS + SUB_BUCKETS;
+        return ((mantissa + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,300 @@
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * 全ユーザーの通算の正解数によるランキング。
+ *
+ * - 正解数ごとの人数を Fenwick 木（Binary Indexed Tree）で持ち、あるユーザーの順位を O(log n) で求める。
+ *   順位は「自分より正解数の多い人数 + 1」で、正解数が同じユーザーは同じ順位になる。
+ * - 正解数ごとのユーザーの集合を正解数の多い順の `TreeMap` で持ち、上位 K 人を O(log n + K) で取り出す。
+ * - 解答がコミットされるたびに `AnswerManager` から更新後の通算（`RETURNING` で受け取った値）を受け取って差分更新する。
+ *   差分ではなく更新後の値を受け取り、解答数が増えたときだけ反映するため、作り直しと並行して解答が記録されても数え漏れや二重計上がない。
+ * - 起動時（または最初に参照したとき）に、集計テーブル（`user_stats` / `user_streaks`）を解答用データベースごとに1回ずつ
+ *   先頭から読んで作る。`user_answers` を集計し直すことはない。
+ */
+public class Leaderboard {
+    private static final Logger LOGGER = Logger.getLogger(Leaderboard.class.getName());
+
+    private static final String LOAD_SQL = "SELECT s.user_id, s.answered, s.correct, "
+            + "COALESCE(k.current_streak, 0), COALESCE(k.best_streak, 0) "
+            + "FROM user_stats s LEFT JOIN user_streaks k ON k.user_id = s.user_id";
+    private static final int FETCH_SIZE = 1000;
+
+    private static final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private static final Map<String, Standing> standings = new HashMap<>();
+    /** 正解数 → その正解数のユーザーID（正解数の多い順、同じ正解数の中ではユーザーID順） */
+    private static final TreeMap<Long, TreeSet<String>> buckets = new TreeMap<>(Comparator.reverseOrder());
+    private static final ScoreCounts counts = new ScoreCounts();
+    private static volatile boolean loaded;
+
+    /**
+     * 解答を記録した直後のユーザーの通算。
+     *
+     * @param userId        ユーザーID
+     * @param answered      通算の解答数
+     * @param correct       通算の正解数
+     * @param currentStreak 現在の連続正解数
+     * @param bestStreak    最長の連続正解数
+     */
+    record Totals(String userId, long answered, long correct, int currentStreak, int bestStreak) {
+    }
+
+    /**
+     * 上位のユーザーを順位の高い順に取得する。
+     *
+     * @param limit 最大件数
+     * @return ランキングの行のリスト
+     */
+    public static List<LeaderboardEntry> top(int limit) {
+        ensureLoaded();
+        List<LeaderboardEntry> entries = new ArrayList<>(Math.min(Math.max(limit, 0), 1024));
+        lock.readLock().lock();
+        try {
+            int ahead = 0; // これまでの正解数のグループの人数
+            for (TreeSet<String> bucket : buckets.values()) {
+                for (String userId : bucket) {
+                    if (entries.size() >= limit) {
+                        return entries;
+                    }
+                    entries.add(standings.get(userId).toEntry(ahead + 1));
+                }
+                ahead += bucket.size();
+            }
+            return entries;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * ユーザーの順位を取得する。
+     *
+     * @param userId ユーザーID
+     * @return ランキングの行（まだ解答がない場合は `null`）
+     */
+    public static LeaderboardEntry rankOf(String userId) {
+        ensureLoaded();
+        lock.readLock().lock();
+        try {
+            Standing standing = standings.get(userId);
+            return standing == null ? null : standing.toEntry(counts.countAbove(standing.correct) + 1);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return ランキングに載っている（1問以上解答した）ユーザー数
+     */
+    public static int size() {
+        ensureLoaded();
+        lock.readLock().lock();
+        try {
+            return standings.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 集計テーブルからランキングを作り直す。
+     *
+     * - 作り直している間の更新は、作り直しが終わるまで待ってから反映する。
+     */
+    public static void rebuild() {
+        lock.writeLock().lock();
+        try {
+            load();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * コミット済みの解答による通算の変化を反映する。
+     *
+     * - まだ作っていない場合は何もしない（作るときにデータベースから読むため）。
+     * - 反映済みの値より解答数が少ない（古い）通算は無視する。
+     *
+     * @param updates ユーザーごとの更新後の通算
+     */
+    static void apply(Collection<Totals> updates) {
+        if (updates.isEmpty()) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            if (!loaded) {
+                return;
+            }
+            for (Totals totals : updates) {
+                place(totals);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private static void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            if (!loaded) {
+                load();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 解答用データベースごとに `user_stats` を1回だけ先頭から読み、ランキングを作る（書き込みロックを持って呼ぶこと）。
+     */
+    private static void load() {
+        long start = System.nanoTime();
+        loaded = false;
+        standings.clear();
+        buckets.clear();
+        counts.clear();
+        try {
+            for (int shard = 0; shard < DatabaseManager.answerShardCount(); shard++) {
+                try (Connection conn = DatabaseManager.getAnswerShardReadConnection(shard);
+                        Statement stmt = conn.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                    stmt.setFetchSize(FETCH_SIZE);
+                    try (ResultSet rs = stmt.executeQuery(LOAD_SQL)) {
+                        while (rs.next()) {
+                            place(new Totals(rs.getString(1), rs.getLong(2), rs.getLong(3), rs.getInt(4), rs.getInt(5)));
+                        }
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            LOGGER.log(Level.SEVERE, "データベースエラー: ランキングの読み込みに失敗", e);
+            throw new RuntimeException("ランキングの読み込み中にエラーが発生しました", e);
+        }
+        loaded = true;
+        LOGGER.info(String.format("ランキングを作りました: %d 人 (%.1f ms)",
+                standings.size(), (System.nanoTime() - start) / 1e6));
+    }
+
+    /**
+     * ユーザーの通算を置き換え、正解数が変わった場合はグループと人数を付け替える（書き込みロックを持って呼ぶこと）。
+     */
+    private static void place(Totals totals) {
+        Standing standing = standings.get(totals.userId());
+        if (standing == null) {
+            standing = new Standing(totals.userId());
+            standings.put(totals.userId(), standing);
+        } else if (totals.answered() <= standing.answered) {
+            return;
+        } else if (totals.correct() != standing.correct) {
+            TreeSet<String> bucket = buckets.get(standing.correct);
+            bucket.remove(standing.userId);
+            if (bucket.isEmpty()) {
+                buckets.remove(standing.correct);
+            }
+            counts.add(standing.correct, -1);
+            standing.ranked = false;
+        }
+        standing.answered = totals.answered();
+        standing.correct = totals.correct();
+        standing.currentStreak = totals.currentStreak();
+        standing.bestStreak = totals.bestStreak();
+        if (!standing.ranked) {
+            buckets.computeIfAbsent(standing.correct, key -> new TreeSet<>()).add(standing.userId);
+            counts.add(standing.correct, 1);
+            standing.ranked = true;
+        }
+    }
+
+    /**
+     * ユーザーごとの通算（メモリ上で書き換える）。
+     */
+    private static final class Standing {
+        final String userId;
+        long answered;
+        long correct;
+        int currentStreak;
+        int bestStreak;
+        boolean ranked; // buckets と counts に登録済みか
+
+        Standing(String userId) {
+            this.userId = userId;
+        }
+
+        LeaderboardEntry toEntry(int rank) {
+            double accuracy = answered == 0 ? 0.0 : (double) correct / answered;
+            return new LeaderboardEntry(rank, userId, answered, correct, accuracy, currentStreak, bestStreak);
+        }
+    }
+
+    /**
+     * 正解数ごとの人数を数える Fenwick 木。
+     *
+     * - 正解数 s を添字 s + 1 に置き、添字 1〜i の合計（正解数 i - 1 以下の人数）を O(log n) で求める。
+     * - 大きさは2のべき乗で、足りなくなったら倍にする。倍にしたとき新しい後半で値を持つのは末尾（全体の合計）だけなので、
+     *   配列を伸ばして末尾に合計を入れれば作り直さずに済む。
+     */
+    private static final class ScoreCounts {
+        private static final int INITIAL_CAPACITY = 1024;
+        private static final int MAX_CAPACITY = 1 << 30;
+
+        private int[] tree = new int[INITIAL_CAPACITY + 1];
+        private int total;
+
+        void add(long score, int delta) {
+            ensureCapacity(score);
+            for (int i = (int) score + 1; i < tree.length; i += i & -i) {
+                tree[i] += delta;
+            }
+            total += delta;
+        }
+
+        /**
+         * @return 正解数が `score` より多い人数
+         */
+        int countAbove(long score) {
+            int atMost = 0;
+            for (int i = (int) Math.min(score + 1, tree.length - 1); i > 0; i -= i & -i) {
+                atMost += tree[i];
+            }
+            return total - atMost;
+        }
+
+        void clear() {
+            tree = new int[INITIAL_CAPACITY + 1];
+            total = 0;
+        }
+
+        private void ensureCapacity(long score) {
+            int capacity = tree.length - 1;
+            if (score < capacity) {
+                return;
+            }
+            if (score >= MAX_CAPACITY) {
+                throw new IllegalStateException("正解数が大きすぎます: " + score);
+            }
+            while (score >= capacity) {
+                capacity *= 2;
+                tree = Arrays.copyOf(tree, capacity + 1);
+                tree[capacity] = total;
+            }
+        }
+    }
+}
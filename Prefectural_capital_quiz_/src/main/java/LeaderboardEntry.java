@@ -0,0 +1,14 @@
+/**
+ * ランキングの1行。
+ *
+ * @param rank          順位（通算の正解数が同じユーザーは同じ順位）
+ * @param userId        ユーザーID
+ * @param answered      通算の解答数
+ * @param correct       通算の正解数
+ * @param accuracy      正答率（0.0〜1.0）
+ * @param currentStreak 現在の連続正解数
+ * @param bestStreak    最長の連続正解数
+ */
+public record LeaderboardEntry(int rank, String userId, long answered, long correct, double accuracy,
+        int currentStreak, int bestStreak) {
+}
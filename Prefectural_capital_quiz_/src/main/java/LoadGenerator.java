@@ -0,0 +1,471 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * 多数の学習者を模擬して負荷をかける、負荷試験・ソーク試験用のツール。
+ *
+ * - 指定した人数の仮想ユーザーが、登録 → ログインのあと、発行されたトークンでクイズの開始と解答を繰り返す。
+ * - 対象はプロセス内（`UserManager` / `QuizEngine` を直接呼ぶ）か、ローカルの HTTP サーバーを選べる。
+ * - 操作ごと（ログイン、問題の取得、解答の記録）のスループットと p50/p99/p99.9 のレイテンシ、
+ *   SQLite のロック競合エラー数を報告する。
+ * - 既定では一時ファイルのデータベースを作成して使うため、ネットワークや既存データに依存しない。
+ *
+ * 使い方:
+ * <pre>
+ * java LoadGenerator --users 200 --duration 60 --think-ms 200 --target inproc
+ * java LoadGenerator --users 200 --duration 600 --target http            (プロセス内でサーバーを起動)
+ * java LoadGenerator --users 200 --duration 600 --target http --url http://localhost:8080
+ * </pre>
+ */
+public class LoadGenerator {
+    private static final Logger LOGGER = Logger.getLogger(LoadGenerator.class.getName());
+    private static final String[] OPERATIONS = { "register", "login", "start", "question", "answer", "result" };
+
+    private final Options options;
+    private final Map<String, LatencyHistogram> latencies = new LinkedHashMap<>();
+    private final Map<String, LongAdder> errors = new ConcurrentHashMap<>();
+    private final LongAdder lockErrors = new LongAdder();
+    private final LongAdder completedQuizzes = new LongAdder();
+
+    private LoadGenerator(Options options) {
+        this.options = options;
+        for (String operation : OPERATIONS) {
+            latencies.put(operation, new LatencyHistogram());
+            errors.put(operation, new LongAdder());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = Options.parse(args);
+        Path database = prepareDatabase(options);
+        System.out.println("データベース: " + database);
+
+        QuizHttpServer server = null;
+        String url = options.url;
+        if (options.http && url == null) {
+            server = new QuizHttpServer(0);
+            server.start();
+            url = "http://localhost:" + server.port();
+        }
+
+        try {
+            StartupPipeline.run(false);
+            new LoadGenerator(options).run(url);
+        } finally {
+            if (server != null) {
+                server.stop();
+            } else {
+                QuestionDeck.stop();
+                AnswerRecorder.shutdown();
+                SpacedRepetitionScheduler.persistAll();
+                ProgressStore.close();
+                DatabaseManager.closeConnection();
+            }
+        }
+    }
+
+    /**
+     * 一時データベースを作成して `datebase_setup.sql` を適用し、`quiz.db.url` をそこへ向ける。
+     */
+    private static Path prepareDatabase(Options options) throws IOException, SQLException {
+        if (options.database != null) {
+            System.setProperty("quiz.db.url", "jdbc:sqlite:" + options.database);
+            return options.database;
+        }
+        Path directory = Files.createTempDirectory("quiz-load");
+        Path database = directory.resolve("quiz.db");
+        System.setProperty("quiz.db.url", "jdbc:sqlite:" + database);
+        try (Connection conn = DatabaseManager.getConnection()) {
+            SchemaMigrator.runScript(conn, options.setupScript);
+        }
+        return database;
+    }
+
+    private void run(String url) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(options.durationSeconds);
+        HttpClient httpClient = url == null ? null : HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1) // h2c へのアップグレードを試みない
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+        System.out.printf("開始: users=%d duration=%ds think=%dms target=%s%n",
+                options.users, options.durationSeconds, options.thinkMillis, url == null ? "inproc" : url);
+
+        long start = System.nanoTime();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < options.users; i++) {
+                String userId = String.format("lg%05d", i);
+                QuizClient client = httpClient == null ? new InProcessClient() : new HttpQuizClient(httpClient, url);
+                executor.submit(() -> simulate(client, userId, deadline));
+            }
+
+            // ソーク試験用に一定間隔で途中経過を表示する
+            long reportNanos = TimeUnit.SECONDS.toNanos(options.reportSeconds);
+            long nextReport = start + reportNanos;
+            while (System.nanoTime() < deadline) {
+                long sleep = Math.min(deadline, nextReport) - System.nanoTime();
+                if (sleep > 0) {
+                    TimeUnit.NANOSECONDS.sleep(sleep);
+                }
+                if (System.nanoTime() >= nextReport && System.nanoTime() < deadline) {
+                    report("途中経過", System.nanoTime() - start);
+                    nextReport += reportNanos;
+                }
+            }
+        }
+        report("結果", System.nanoTime() - start);
+    }
+
+    /**
+     * 1人の学習者の動きを模擬する。
+     */
+    private void simulate(QuizClient client, String userId, long deadline) {
+        String password = "pw" + userId.substring(2);
+        if (!timed("register", () -> client.register(userId, password))) {
+            return;
+        }
+        // ログインは最初の1回だけで、以降のクイズはトークンで開始する（ログインでも1つ目のクイズが始まる）
+        String[] token = new String[1];
+        String[] session = new String[1];
+        while (token[0] == null && System.nanoTime() < deadline) {
+            if (!timed("login", () -> {
+                Login login = client.login(userId, password, randomMode());
+                token[0] = login.token();
+                session[0] = login.sessionId();
+            })) {
+                think();
+            }
+        }
+        while (System.nanoTime() < deadline) {
+            if (session[0] == null && !timed("start", () -> session[0] = client.startQuiz(token[0], randomMode()))) {
+                think();
+                continue;
+            }
+
+            for (int q = 0; q < options.questionsPerQuiz && System.nanoTime() < deadline; q++) {
+                int[] optionCount = new int[1];
+                if (!timed("question", () -> optionCount[0] = client.nextQuestion(session[0]))) {
+                    break;
+                }
+                if (optionCount[0] == 0) {
+                    break; // すべて解答済み
+                }
+                think();
+                int choice = 1 + ThreadLocalRandom.current().nextInt(optionCount[0]);
+                timed("answer", () -> client.answer(session[0], choice));
+            }
+            if (timed("result", () -> client.result(session[0]))) {
+                completedQuizzes.increment();
+            }
+            session[0] = null;
+            think();
+        }
+    }
+
+    private static QuizMode randomMode() {
+        return ThreadLocalRandom.current().nextInt(4) == 0 ? QuizMode.WRONG_ONLY : QuizMode.ALL;
+    }
+
+    /**
+     * 操作を実行してレイテンシを記録する。失敗した場合はエラーとして数える。
+     *
+     * @return 成功した場合は `true`
+     */
+    private boolean timed(String operation, Step step) {
+        long start = System.nanoTime();
+        try {
+            step.run();
+            latencies.get(operation).recordSince(start);
+            return true;
+        } catch (Exception e) {
+            errors.get(operation).increment();
+            if (isLockContention(e)) {
+                lockErrors.increment();
+            } else {
+                LOGGER.log(Level.FINE, "操作に失敗しました: " + operation, e);
+            }
+            return false;
+        }
+    }
+
+    /**
+     * SQLite のロック競合（SQLITE_BUSY / SQLITE_LOCKED）による失敗かどうかを判定する。
+     */
+    static boolean isLockContention(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof SQLException sql && (sql.getErrorCode() == 5 || sql.getErrorCode() == 6)) {
+                return true;
+            }
+            String message = t.getMessage();
+            if (message != null && (message.contains("SQLITE_BUSY") || message.contains("SQLITE_LOCKED")
+                    || message.contains("database is locked"))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void think() {
+        if (options.thinkMillis <= 0) {
+            return;
+        }
+        // 考える時間は指定値の 50%〜150% でばらつかせる
+        long millis = options.thinkMillis / 2 + ThreadLocalRandom.current().nextLong(options.thinkMillis + 1);
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void report(String title, long elapsedNanos) {
+        double seconds = elapsedNanos / 1e9;
+        System.out.printf("%n=== %s (%.1f秒) ===%n", title, seconds);
+        System.out.printf("%-9s %10s %10s %10s %10s %10s %8s%n", "操作", "件数", "件/秒", "p50(ms)", "p99(ms)", "p999(ms)", "エラー");
+        for (Map.Entry<String, LatencyHistogram> entry : latencies.entrySet()) {
+            LatencyHistogram histogram = entry.getValue();
+            System.out.printf("%-9s %10d %10.1f %10.2f %10.2f %10.2f %8d%n",
+                    entry.getKey(), histogram.count(), histogram.count() / seconds,
+                    histogram.percentileNanos(50) / 1e6, histogram.percentileNanos(99) / 1e6,
+                    histogram.percentileNanos(99.9) / 1e6, errors.get(entry.getKey()).sum());
+        }
+        System.out.printf("完了したクイズ: %d / ロック競合エラー: %d%n", completedQuizzes.sum(), lockErrors.sum());
+        DatabaseManager.getPoolStats().forEach((route, stats) -> System.out.println("接続プール " + route + ": " + stats));
+        System.out.println("解答記録: " + AnswerRecorder.stats());
+        System.out.println("認証: " + CredentialService.stats());
+        System.out.println("トークン: " + SessionTokenStore.stats());
+        System.out.println("進捗: " + ProgressStore.stats());
+        System.out.println("山札: " + QuestionDeck.stats());
+        System.out.print("メトリクス:" + System.lineSeparator() + MetricsRegistry.report());
+        System.out.print("SQL 文ごとの統計（合計所要時間の上位）:" + System.lineSeparator() + StatementRegistry.report(8));
+    }
+
+    @FunctionalInterface
+    private interface Step {
+        void run() throws Exception;
+    }
+
+    /**
+     * ログインの結果。
+     *
+     * @param token     認証トークン
+     * @param sessionId ログインと同時に開始したセッションのID
+     */
+    private record Login(String token, String sessionId) {
+    }
+
+    /**
+     * 負荷をかける対象の操作。
+     */
+    private interface QuizClient {
+        void register(String userId, String password) throws Exception;
+
+        Login login(String userId, String password, QuizMode mode) throws Exception;
+
+        /** @return セッションID */
+        String startQuiz(String token, QuizMode mode) throws Exception;
+
+        /** @return 選択肢の数（すべて解答済みなら0） */
+        int nextQuestion(String sessionId) throws Exception;
+
+        void answer(String sessionId, int choice) throws Exception;
+
+        void result(String sessionId) throws Exception;
+    }
+
+    /**
+     * `UserManager` と `QuizEngine` を直接呼び出すクライアント。
+     */
+    private static final class InProcessClient implements QuizClient {
+        @Override
+        public void register(String userId, String password) {
+            UserManager.register(userId, password); // 既に存在する場合もそのまま続ける
+        }
+
+        @Override
+        public Login login(String userId, String password, QuizMode mode) {
+            if (!UserManager.authenticate(userId, password)) {
+                throw new IllegalStateException("ログインに失敗しました: " + userId);
+            }
+            return new Login(SessionTokenStore.issue(userId), QuizEngine.startSession(userId, mode).sessionId());
+        }
+
+        @Override
+        public String startQuiz(String token, QuizMode mode) {
+            String userId = SessionTokenStore.resolve(token);
+            if (userId == null) {
+                throw new IllegalStateException("トークンが無効です");
+            }
+            return QuizEngine.startSession(userId, mode).sessionId();
+        }
+
+        @Override
+        public int nextQuestion(String sessionId) {
+            QuizQuestion question = session(sessionId).nextQuestion();
+            return question == null ? 0 : question.options().size();
+        }
+
+        @Override
+        public void answer(String sessionId, int choice) {
+            session(sessionId).submitAnswer(choice - 1);
+        }
+
+        @Override
+        public void result(String sessionId) {
+            QuizEngine.endSession(sessionId);
+        }
+
+        private static QuizSession session(String sessionId) {
+            QuizSession session = QuizEngine.getSession(sessionId);
+            if (session == null) {
+                throw new IllegalStateException("セッションが見つかりません: " + sessionId);
+            }
+            return session;
+        }
+    }
+
+    /**
+     * HTTP API を呼び出すクライアント（キープアライブで接続を再利用する）。
+     */
+    private static final class HttpQuizClient implements QuizClient {
+        private final HttpClient client;
+        private final String baseUrl;
+        private String token; // ログイン後に発行されたトークン（仮想ユーザーごとに1つのクライアントを使う）
+
+        HttpQuizClient(HttpClient client, String baseUrl) {
+            this.client = client;
+            this.baseUrl = baseUrl;
+        }
+
+        @Override
+        public void register(String userId, String password) throws Exception {
+            int status = send("POST", "/api/register", Json.write(Map.of("userId", userId, "password", password))).statusCode();
+            if (status != 201 && status != 409) {
+                throw new IOException("登録に失敗しました: HTTP " + status);
+            }
+        }
+
+        @Override
+        public Login login(String userId, String password, QuizMode mode) throws Exception {
+            Map<String, Object> body = Json.parseObject(expectOk(send("POST", "/api/login",
+                    Json.write(Map.of("userId", userId, "password", password, "mode", mode.name()))), 200));
+            token = body.get("token").toString();
+            return new Login(token, body.get("sessionId").toString());
+        }
+
+        @Override
+        public String startQuiz(String token, QuizMode mode) throws Exception {
+            Map<String, Object> body = Json.parseObject(expectOk(send("POST", "/api/sessions",
+                    Json.write(Map.of("mode", mode.name()))), 201));
+            return body.get("sessionId").toString();
+        }
+
+        @Override
+        public int nextQuestion(String sessionId) throws Exception {
+            Map<String, Object> body = Json.parseObject(expectOk(send("GET", "/api/sessions/" + sessionId + "/question", null), 200));
+            Object options = body.get("options");
+            return options instanceof List<?> list ? list.size() : 0;
+        }
+
+        @Override
+        public void answer(String sessionId, int choice) throws Exception {
+            expectOk(send("POST", "/api/sessions/" + sessionId + "/answer", Json.write(Map.of("choice", choice))), 200);
+        }
+
+        @Override
+        public void result(String sessionId) throws Exception {
+            expectOk(send("GET", "/api/sessions/" + sessionId + "/result", null), 200);
+        }
+
+        private HttpResponse<String> send(String method, String path, String body) throws Exception {
+            HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(baseUrl + path))
+                    .timeout(Duration.ofSeconds(30))
+                    .header("Content-Type", "application/json");
+            if (token != null) {
+                builder.header("Authorization", "Bearer " + token);
+            }
+            builder.method(method, body == null
+                    ? HttpRequest.BodyPublishers.noBody()
+                    : HttpRequest.BodyPublishers.ofString(body));
+            return client.send(builder.build(), HttpResponse.BodyHandlers.ofString());
+        }
+
+        private static String expectOk(HttpResponse<String> response, int expectedStatus) throws IOException {
+            if (response.statusCode() != expectedStatus) {
+                throw new IOException("HTTP " + response.statusCode() + ": " + response.body());
+            }
+            return response.body();
+        }
+    }
+
+    /**
+     * コマンドライン引数。
+     */
+    private static final class Options {
+        int users = 50;
+        long durationSeconds = 30;
+        long thinkMillis = 100;
+        int questionsPerQuiz = 10;
+        long reportSeconds = 10;
+        boolean http = false;
+        String url = null;
+        Path database = null;
+        Path setupScript = Path.of("datebase_setup.sql");
+
+        static Options parse(String[] args) {
+            Options options = new Options();
+            List<String> list = new ArrayList<>(List.of(args));
+            for (int i = 0; i < list.size(); i++) {
+                String arg = list.get(i);
+                String value = i + 1 < list.size() ? list.get(i + 1) : null;
+                switch (arg) {
+                    case "--users" -> options.users = Integer.parseInt(require(arg, value));
+                    case "--duration" -> options.durationSeconds = Long.parseLong(require(arg, value));
+                    case "--think-ms" -> options.thinkMillis = Long.parseLong(require(arg, value));
+                    case "--questions" -> options.questionsPerQuiz = Integer.parseInt(require(arg, value));
+                    case "--report-every" -> options.reportSeconds = Math.max(1, Long.parseLong(require(arg, value)));
+                    case "--target" -> options.http = require(arg, value).toLowerCase(Locale.ROOT).equals("http");
+                    case "--url" -> {
+                        options.url = require(arg, value);
+                        options.http = true;
+                    }
+                    case "--db" -> options.database = Path.of(require(arg, value));
+                    case "--setup" -> options.setupScript = Path.of(require(arg, value));
+                    default -> throw new IllegalArgumentException("不明なオプションです: " + arg);
+                }
+                i++;
+            }
+            if (options.users < 1 || options.users > 99_999) {
+                throw new IllegalArgumentException("--users は 1〜99999 で指定してください");
+            }
+            return options;
+        }
+
+        private static String require(String option, String value) {
+            if (value == null) {
+                throw new IllegalArgumentException(option + " に値を指定してください");
+            }
+            return value;
+        }
+    }
+}
@@ -0,0 +1,127 @@
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+/**
+ * 名前付きのカウンタとレイテンシのヒストグラムを集める、アプリ全体のメトリクス。
+ *
+ * - カウンタは `LongAdder`、ヒストグラムは `LatencyHistogram` で、記録はロックを取らずに複数スレッドから同時に呼べる。
+ * - 名前から値への対応は初回だけ登録し、以降は `ConcurrentHashMap.get` だけで見つける。
+ * - `startPeriodicDump()` で一定間隔ごとに全メトリクスを INFO でログに出す（外部のサービスを使わない）。
+ *   HTTP サーバーでは `quiz.metrics.dumpSeconds`（既定 60 秒、0 で出さない）で間隔を決め、`GET /api/metrics` でも返す。
+ */
+public final class MetricsRegistry {
+    private static final Logger LOGGER = Logger.getLogger(MetricsRegistry.class.getName());
+
+    private static final ConcurrentHashMap<String, LongAdder> COUNTERS = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, LatencyHistogram> TIMERS = new ConcurrentHashMap<>();
+    private static ScheduledExecutorService dumper;
+
+    private MetricsRegistry() {
+    }
+
+    /**
+     * カウンタを1加算する。
+     *
+     * @param name カウンタの名前（例: `answers.recorded`）
+     */
+    public static void increment(String name) {
+        counter(name).increment();
+    }
+
+    /**
+     * カウンタに加算する。
+     *
+     * @param name  カウンタの名前
+     * @param delta 加算する値
+     */
+    public static void add(String name, long delta) {
+        counter(name).add(delta);
+    }
+
+    /**
+     * 開始時刻から現在までの経過時間をヒストグラムに記録する。
+     *
+     * @param name       ヒストグラムの名前（例: `login`）
+     * @param startNanos `System.nanoTime()` で取得した開始時刻
+     */
+    public static void recordSince(String name, long startNanos) {
+        timer(name).recordSince(startNanos);
+    }
+
+    /**
+     * @param name ヒストグラムの名前
+     * @return 名前に対応するヒストグラム（なければ作る）
+     */
+    public static LatencyHistogram timer(String name) {
+        LatencyHistogram timer = TIMERS.get(name);
+        return timer != null ? timer : TIMERS.computeIfAbsent(name, key -> new LatencyHistogram());
+    }
+
+    /**
+     * @return 名前順のカウンタの値と、ヒストグラムの要約（`LatencyHistogram.summary()`）
+     */
+    public static Map<String, Object> snapshot() {
+        Map<String, Object> counters = new TreeMap<>();
+        COUNTERS.forEach((name, counter) -> counters.put(name, counter.sum()));
+        Map<String, Object> timers = new TreeMap<>();
+        TIMERS.forEach((name, timer) -> timers.put(name, timer.summary()));
+        return Map.of("counters", counters, "timers", timers);
+    }
+
+    /**
+     * 全メトリクスを1項目1行の文字列にまとめる。
+     *
+     * @return メトリクスの文字列
+     */
+    public static String report() {
+        StringBuilder sb = new StringBuilder();
+        new TreeMap<>(COUNTERS).forEach((name, counter) ->
+                sb.append(name).append('=').append(counter.sum()).append(System.lineSeparator()));
+        new TreeMap<>(TIMERS).forEach((name, timer) ->
+                sb.append(name).append(' ').append(timer.summary()).append(System.lineSeparator()));
+        return sb.toString();
+    }
+
+    /**
+     * 一定間隔ごとに全メトリクスをログに出し始める。すでに出している場合は何もしない。
+     *
+     * @param periodSeconds 間隔（秒、0 以下の場合は何もしない）
+     */
+    public static synchronized void startPeriodicDump(long periodSeconds) {
+        if (periodSeconds <= 0 || dumper != null) {
+            return;
+        }
+        dumper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "quiz-metrics-dump");
+            thread.setDaemon(true);
+            return thread;
+        });
+        dumper.scheduleAtFixedRate(() -> {
+            String report = report();
+            if (!report.isEmpty()) {
+                LOGGER.info("メトリクス:" + System.lineSeparator() + report);
+            }
+        }, periodSeconds, periodSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 定期的な出力を止める。
+     */
+    public static synchronized void stopPeriodicDump() {
+        if (dumper != null) {
+            dumper.shutdownNow();
+            dumper = null;
+        }
+    }
+
+    private static LongAdder counter(String name) {
+        LongAdder counter = COUNTERS.get(name);
+        return counter != null ? counter : COUNTERS.computeIfAbsent(name, key -> new LongAdder());
+    }
+}
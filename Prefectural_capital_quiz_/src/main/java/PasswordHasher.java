@@ -0,0 +1,47 @@
+/**
+ * パスワードのハッシュ方式。
+ *
+ * - 新しいパスワードのハッシュ化と、保存済みのハッシュとの照合を行う。
+ * - 保存形式から自分の方式かどうかを判定できるため、方式を切り替えても既存のハッシュを照合できる。
+ * - 実装はスレッドセーフであること。
+ */
+public interface PasswordHasher {
+
+    /**
+     * @return 方式の名前（統計の表示用）
+     */
+    String name();
+
+    /**
+     * パスワードをハッシュ化する。
+     *
+     * @param password パスワード（平文）
+     * @return 保存用の文字列
+     */
+    String hash(String password);
+
+    /**
+     * パスワードが保存済みのハッシュと一致するかを、一定時間の比較で確認する。
+     *
+     * @param password パスワード（平文）
+     * @param stored   保存済みの文字列
+     * @return 一致する場合は `true`
+     */
+    boolean verify(String password, String stored);
+
+    /**
+     * @param stored 保存済みの文字列
+     * @return この方式で作られた文字列なら `true`
+     */
+    boolean supports(String stored);
+
+    /**
+     * 保存済みのハッシュを現在の設定で作り直すべきかを判定する。
+     *
+     * @param stored 保存済みの文字列
+     * @return 別の方式、または別のコストで作られている場合は `true`
+     */
+    default boolean needsRehash(String stored) {
+        return !supports(stored);
+    }
+}
@@ -0,0 +1,90 @@
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.security.spec.InvalidKeySpecException;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+/**
+ * PBKDF2（HMAC-SHA256）によるハッシュ方式。
+ *
+ * - 保存形式は `pbkdf2$<反復回数>$<ソルト16進>$<ハッシュ16進>` で、照合時は保存された反復回数を使う。
+ * - 反復回数（コスト）を上げるほど、1回のハッシュ化に時間がかかる。
+ * - `SecretKeyFactory` はスレッドセーフではないため、スレッドごとに1つ作って使い回す。
+ */
+public final class Pbkdf2PasswordHasher implements PasswordHasher {
+    private static final String PREFIX = "pbkdf2$";
+    private static final int SALT_BYTES = 16;
+    private static final int KEY_BITS = 256;
+    private static final SecureRandom RANDOM = new SecureRandom();
+    private static final ThreadLocal<SecretKeyFactory> FACTORY = ThreadLocal.withInitial(() -> {
+        try {
+            return SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256");
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("PBKDF2WithHmacSHA256 が利用できません", e);
+        }
+    });
+
+    private final int iterations;
+
+    /**
+     * @param iterations 反復回数（1以上）
+     */
+    public Pbkdf2PasswordHasher(int iterations) {
+        if (iterations < 1) {
+            throw new IllegalArgumentException("反復回数は1以上を指定してください: " + iterations);
+        }
+        this.iterations = iterations;
+    }
+
+    @Override
+    public String name() {
+        return "pbkdf2(" + iterations + ")";
+    }
+
+    @Override
+    public String hash(String password) {
+        byte[] salt = new byte[SALT_BYTES];
+        RANDOM.nextBytes(salt);
+        byte[] key = derive(password, salt, iterations);
+        return PREFIX + iterations + "$" + Hex.encode(salt) + "$" + Hex.encode(key);
+    }
+
+    @Override
+    public boolean verify(String password, String stored) {
+        String[] parts = stored.split("\\$");
+        if (parts.length != 4 || !supports(stored)) {
+            return false;
+        }
+        try {
+            int storedIterations = Integer.parseInt(parts[1]);
+            byte[] salt = Hex.decode(parts[2]);
+            byte[] expected = Hex.decode(parts[3]);
+            return MessageDigest.isEqual(derive(password, salt, storedIterations), expected);
+        } catch (IllegalArgumentException e) {
+            return false; // 壊れた保存形式は一致しないものとして扱う
+        }
+    }
+
+    @Override
+    public boolean supports(String stored) {
+        return stored.startsWith(PREFIX);
+    }
+
+    @Override
+    public boolean needsRehash(String stored) {
+        return !stored.startsWith(PREFIX + iterations + "$");
+    }
+
+    private static byte[] derive(String password, byte[] salt, int iterations) {
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, KEY_BITS);
+        try {
+            return FACTORY.get().generateSecret(spec).getEncoded();
+        } catch (InvalidKeySpecException e) {
+            throw new IllegalStateException("PBKDF2 の計算に失敗しました", e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+}
@@ -0,0 +1,17 @@
+/**
+ * ユーザーの都道府県（問題）ごとの正答率。
+ *
+ * @param questionId 問題ID
+ * @param prefecture 都道府県名
+ * @param answered   この問題の解答数
+ * @param correct    この問題の正解数
+ */
+public record PrefectureAccuracy(int questionId, String prefecture, long answered, long correct) {
+
+    /**
+     * @return 正答率（0.0〜1.0、解答がない場合は0）
+     */
+    public double accuracy() {
+        return answered == 0 ? 0.0 : (double) correct / answered;
+    }
+}
@@ -0,0 +1,19 @@
+import java.util.List;
+
+/**
+ * 選択肢を並べ終えた1問（不変で、セッションをまたいで共有してよい）。
+ *
+ * @param questionId   問題ID
+ * @param prompt       問題文（県名）
+ * @param options      選択肢（変更不可）
+ * @param correctIndex 正解の選択肢の位置（0始まり）
+ */
+public record PreparedQuestion(int questionId, String prompt, List<String> options, int correctIndex) {
+
+    /**
+     * @return 正解（県庁所在地）
+     */
+    public String correctAnswer() {
+        return options.get(correctIndex);
+    }
+}
@@ -0,0 +1,518 @@
+import java.io.IOException;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * ユーザーごとの「解答した」「正解したことがある」「最後の解答が不正解」の問題を、ビット集合で持つ進捗ストア。
+ *
+ * - 問題は問題カタログ上のインデックスをビットの位置にする。47問なら1つの集合が `long` 1個に収まる。
+ * - ユーザーIDは半角英数字記号8文字以下のため、1文字1バイトで `long` 1個に詰めてキーにする。
+ *   キーと3つの集合を1つの `long` 配列に並べたオープンアドレス法（線形探索）の表に置き、ユーザーごとのオブジェクトを作らない。
+ *   47問なら1ユーザー32バイト（表の使用率 3/4 まで）で、100万人でも数十MB に収まる。
+ * - 間違えた問題のみのモードは、集合の `long` を `numberOfTrailingZeros` で走査するだけで、データベースを検索しない。
+ * - 解答がコミットされるたびに `AnswerManager` から結果を受け取ってビットを更新する。
+ *   データベースが正で、最初に使うとき（または問題カタログが変わったとき）に集計テーブルを1回読んで作る。
+ * - システムプロパティ `quiz.progress.file` を指定すると、表をそのファイルにメモリマップして置く。
+ *   正常に終了（`close()`）したファイルは、次の起動時に問題カタログが同じならそのまま使い、データベースを読まない。
+ *   異常終了したファイル（ヘッダーの終了済みフラグが立っていない）は作り直す。1つのファイルを複数のプロセスで使わないこと。
+ * - キーに詰められないユーザーID（9文字以上など）は、これまでどおりデータベースから取得する。
+ */
+public final class ProgressStore {
+    private static final Logger LOGGER = Logger.getLogger(ProgressStore.class.getName());
+
+    private static final String FILE = System.getProperty("quiz.progress.file");
+    private static final String COUNT_SQL = "SELECT COUNT(*) FROM user_stats";
+    private static final String LOAD_SQL = "SELECT s.user_id, s.question_id, s.correct > 0, w.question_id IS NOT NULL "
+            + "FROM user_question_stats s LEFT JOIN user_wrong_set w "
+            + "ON w.user_id = s.user_id AND w.question_id = s.question_id";
+    private static final int FETCH_SIZE = 1000;
+
+    /** 集合の種類（1ユーザーの領域内での並び順） */
+    private static final int SEEN = 0;
+    private static final int CORRECT = 1;
+    private static final int WRONG = 2;
+    private static final int SET_COUNT = 3;
+
+    private static final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private static volatile Table table;
+
+    private ProgressStore() {
+    }
+
+    /**
+     * 最後の解答が不正解だった問題のIDを取得する。
+     *
+     * @param userId ユーザーID
+     * @return 問題ID順のリスト
+     */
+    public static List<Integer> wrongQuestionIds(String userId) {
+        long key = pack(userId);
+        if (key == 0) {
+            return UserStatsManager.getWrongQuestionIds(userId);
+        }
+        Table ensured = table();
+        List<Integer> questionIds = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            Table current = table != null ? table : ensured; // 大きくした後の表を読む
+            int slot = current.find(key);
+            if (slot < 0) {
+                return questionIds;
+            }
+            int base = current.setOffset(slot, WRONG);
+            for (int w = 0; w < current.words; w++) {
+                long bits = current.data.get(base + w);
+                while (bits != 0) {
+                    int index = w * 64 + Long.numberOfTrailingZeros(bits);
+                    questionIds.add(current.catalog.questionId(index));
+                    bits &= bits - 1;
+                }
+            }
+            return questionIds;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * ユーザーの進捗（解答した問題・正解したことがある問題・最後の解答が不正解の問題の数）を取得する。
+     *
+     * @param userId ユーザーID
+     * @return `{解答した数, 正解したことがある数, 最後の解答が不正解の数}`（キーに詰められないユーザーは `null`）
+     */
+    public static int[] counts(String userId) {
+        long key = pack(userId);
+        if (key == 0) {
+            return null;
+        }
+        Table ensured = table();
+        int[] counts = new int[SET_COUNT];
+        lock.readLock().lock();
+        try {
+            Table current = table != null ? table : ensured;
+            int slot = current.find(key);
+            if (slot >= 0) {
+                for (int set = 0; set < SET_COUNT; set++) {
+                    int base = current.setOffset(slot, set);
+                    for (int w = 0; w < current.words; w++) {
+                        counts[set] += Long.bitCount(current.data.get(base + w));
+                    }
+                }
+            }
+            return counts;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * コミットされた解答の結果をビット集合に反映する。
+     *
+     * - まだ作っていない場合は先に作る。前回のファイルを開いた場合、その後にコミットされた解答はファイルにないため。
+     * - 同じ解答を二度反映しても結果は変わらないため、データベースから作った直後に反映しても二重にはならない。
+     * - 解答の記録自体は済んでいるため、ここでの失敗は記録に影響させず、警告だけを残す（次に使うときに作り直す）。
+     *
+     * @param answers コミット済みの解答
+     */
+    public static void recordOutcomes(List<AnswerRecord> answers) {
+        lock.writeLock().lock();
+        try {
+            Table current = table();
+            for (AnswerRecord answer : answers) {
+                long key = pack(answer.userId());
+                int index = current.catalog.indexOf(answer.questionId());
+                if (key != 0 && index >= 0) {
+                    current = apply(current, key, index, answer.isCorrect());
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            LOGGER.log(Level.WARNING, "進捗の更新に失敗しました。次に使うときに作り直します。", e);
+            table = null;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * ファイルに置いている場合は書き出し、正常に終了したことを記録する。アプリ終了時に呼ぶ。
+     */
+    public static void close() {
+        lock.writeLock().lock();
+        try {
+            if (table != null) {
+                table.close();
+                table = null;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return ユーザー数・表の大きさ・置き場所を表す文字列
+     */
+    public static String stats() {
+        Table current = table;
+        if (current == null) {
+            return "loaded=false";
+        }
+        lock.readLock().lock();
+        try {
+            return String.format("users=%d capacity=%d questions=%d bytes=%d file=%s",
+                    current.size, current.capacity, current.catalog.size(),
+                    (long) current.data.capacity() * Long.BYTES, current.file == null ? "-" : current.file);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * ユーザーIDを1文字1バイトで `long` に詰める。
+     *
+     * @return キー（空、9文字以上、または半角英数字記号以外を含む場合は 0）
+     */
+    static long pack(String userId) {
+        int length = userId == null ? 0 : userId.length();
+        if (length == 0 || length > Long.BYTES) {
+            return 0;
+        }
+        long key = 0;
+        for (int i = 0; i < length; i++) {
+            char c = userId.charAt(i);
+            if (c <= ' ' || c > '~') {
+                return 0;
+            }
+            key = key << 8 | c; // 0 のバイトを含まないため、長さの異なるIDが同じキーにならない
+        }
+        return key;
+    }
+
+    /**
+     * 1件の解答をビット集合に反映する（書き込みロックを持って呼ぶこと）。
+     *
+     * @return 反映後の表（大きくした場合は新しい表）
+     */
+    private static Table apply(Table current, long key, int index, boolean correct) throws IOException {
+        int slot = current.find(key);
+        if (slot < 0) {
+            if (current.needsGrow()) {
+                current = current.grow();
+                table = current;
+            }
+            slot = current.insert(key);
+        }
+        int word = index >>> 6;
+        long bit = 1L << index;
+        current.setBit(current.setOffset(slot, SEEN) + word, bit, true);
+        if (correct) {
+            current.setBit(current.setOffset(slot, CORRECT) + word, bit, true);
+        }
+        current.setBit(current.setOffset(slot, WRONG) + word, bit, !correct);
+        return current;
+    }
+
+    /**
+     * 現在の問題カタログに合った表を返す。ない場合は作る。
+     */
+    private static Table table() {
+        Table current = table;
+        QuestionCatalog catalog = QuestionCatalog.get();
+        if (current != null && current.catalog == catalog) {
+            return current;
+        }
+        lock.writeLock().lock();
+        try {
+            current = table;
+            if (current != null && current.catalog == catalog) {
+                return current;
+            }
+            Path file = FILE == null ? null : Path.of(FILE);
+            Table opened = current == null && file != null ? Table.open(file, catalog) : null;
+            table = null; // 作り直しに失敗した場合に古い表を使わない
+            if (opened != null) {
+                LOGGER.info("進捗を前回のファイルから読み込みました: " + opened.size + " 人");
+            } else {
+                opened = build(catalog, file);
+            }
+            opened.markRunning();
+            table = opened;
+            return opened;
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "進捗ファイルの作成に失敗しました: " + FILE, e);
+            throw new RuntimeException("進捗の読み込み中にエラーが発生しました", e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 解答用データベースごとに集計テーブルを1回だけ先頭から読み、表を作る。
+     */
+    private static Table build(QuestionCatalog catalog, Path file) throws IOException {
+        long start = System.nanoTime();
+        try {
+            long users = 0;
+            for (int shard = 0; shard < DatabaseManager.answerShardCount(); shard++) {
+                try (Connection conn = DatabaseManager.getAnswerShardReadConnection(shard);
+                        Statement stmt = conn.createStatement();
+                        ResultSet rs = stmt.executeQuery(COUNT_SQL)) {
+                    users += rs.next() ? rs.getLong(1) : 0;
+                }
+            }
+            Table built = Table.create(catalog, Table.capacityFor(users), file);
+            for (int shard = 0; shard < DatabaseManager.answerShardCount(); shard++) {
+                try (Connection conn = DatabaseManager.getAnswerShardReadConnection(shard);
+                        Statement stmt = conn.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                    stmt.setFetchSize(FETCH_SIZE);
+                    try (ResultSet rs = stmt.executeQuery(LOAD_SQL)) {
+                        while (rs.next()) {
+                            long key = pack(rs.getString(1));
+                            int index = catalog.indexOf(rs.getInt(2));
+                            if (key == 0 || index < 0) {
+                                continue;
+                            }
+                            int slot = built.find(key);
+                            if (slot < 0) {
+                                if (built.needsGrow()) {
+                                    built = built.grow();
+                                }
+                                slot = built.insert(key);
+                            }
+                            int word = index >>> 6;
+                            long bit = 1L << index;
+                            built.setBit(built.setOffset(slot, SEEN) + word, bit, true);
+                            built.setBit(built.setOffset(slot, CORRECT) + word, bit, rs.getBoolean(3));
+                            built.setBit(built.setOffset(slot, WRONG) + word, bit, rs.getBoolean(4));
+                        }
+                    }
+                }
+            }
+            LOGGER.info(String.format("進捗を作りました: %d 人 (%.1f ms)", built.size, (System.nanoTime() - start) / 1e6));
+            return built;
+        } catch (SQLException e) {
+            LOGGER.log(Level.SEVERE, "データベースエラー: 進捗の読み込みに失敗", e);
+            throw new RuntimeException("進捗の読み込み中にエラーが発生しました", e);
+        }
+    }
+
+    /**
+     * キーと3つのビット集合を並べたオープンアドレス法の表。
+     *
+     * - 先頭の `HEADER_LONGS` 個はヘッダー（ファイルに置くときの検証用）、以降は1ユーザー `stride` 個の `long`。
+     *   各ユーザーの領域は「キー、解答した集合、正解したことがある集合、最後の解答が不正解の集合」の順。
+     * - キー 0 は空きを表す（`pack()` は 0 を返さない）。削除はしないため、線形探索は空きで止めればよい。
+     */
+    private static final class Table {
+        private static final long MAGIC = 0x515A_5052_4F47_0001L; // "QZPROG" + 形式のバージョン
+        private static final int HEADER_LONGS = 8;
+        private static final int H_MAGIC = 0;
+        private static final int H_WORDS = 1;
+        private static final int H_FINGERPRINT = 2;
+        private static final int H_CAPACITY = 3;
+        private static final int H_SIZE = 4;
+        private static final int H_CLOSED = 5;
+        private static final int MIN_CAPACITY = 1024;
+        private static final long MAX_LONGS = Integer.MAX_VALUE / Long.BYTES; // 1つのメモリマップの上限
+
+        final QuestionCatalog catalog;
+        final int words;
+        final int stride;
+        final int capacity;
+        final LongBuffer data;
+        final Path file;
+        final MappedByteBuffer mapped;
+        int size;
+
+        private Table(QuestionCatalog catalog, int capacity, LongBuffer data, Path file, MappedByteBuffer mapped) {
+            this.catalog = catalog;
+            this.words = wordsFor(catalog);
+            this.stride = 1 + SET_COUNT * words;
+            this.capacity = capacity;
+            this.data = data;
+            this.file = file;
+            this.mapped = mapped;
+        }
+
+        static int wordsFor(QuestionCatalog catalog) {
+            return Math.max(1, (catalog.size() + 63) >>> 6);
+        }
+
+        /**
+         * @return `users` 人を使用率 3/4 以下で入れられる2のべき乗の大きさ
+         */
+        static int capacityFor(long users) {
+            long capacity = MIN_CAPACITY;
+            while (capacity * 3 < users * 4) {
+                capacity <<= 1;
+            }
+            return (int) Math.min(capacity, 1 << 30);
+        }
+
+        /**
+         * 空の表を作る（`file` が `null` ならヒープ上、そうでなければファイルを作り直してメモリマップする）。
+         */
+        static Table create(QuestionCatalog catalog, int capacity, Path file) throws IOException {
+            long longs = HEADER_LONGS + (long) capacity * (1 + SET_COUNT * wordsFor(catalog));
+            if (longs > MAX_LONGS) {
+                throw new IllegalStateException("進捗の表が大きすぎます: " + capacity + " 人分");
+            }
+            Table created;
+            if (file == null) {
+                created = new Table(catalog, capacity, LongBuffer.wrap(new long[(int) longs]), null, null);
+            } else {
+                MappedByteBuffer mapped;
+                try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                    mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, longs * Long.BYTES); // 新しい領域は 0 で埋まっている
+                }
+                created = new Table(catalog, capacity, mapped.asLongBuffer(), file, mapped);
+            }
+            created.data.put(H_MAGIC, MAGIC);
+            created.data.put(H_WORDS, created.words);
+            created.data.put(H_FINGERPRINT, fingerprint(catalog));
+            created.data.put(H_CAPACITY, capacity);
+            return created;
+        }
+
+        /**
+         * 前回正常に終了したファイルを開く。
+         *
+         * @return 表（ファイルがない、形式や問題カタログが違う、または正常に終了していない場合は `null`）
+         */
+        static Table open(Path file, QuestionCatalog catalog) throws IOException {
+            if (!Files.isRegularFile(file) || Files.size(file) < HEADER_LONGS * Long.BYTES) {
+                return null;
+            }
+            MappedByteBuffer mapped;
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+            }
+            LongBuffer data = mapped.asLongBuffer();
+            long capacity = data.get(H_CAPACITY);
+            if (data.get(H_MAGIC) != MAGIC || data.get(H_WORDS) != wordsFor(catalog)
+                    || data.get(H_FINGERPRINT) != fingerprint(catalog) || data.get(H_CLOSED) != 1
+                    || capacity < MIN_CAPACITY || Long.bitCount(capacity) != 1
+                    || data.capacity() != HEADER_LONGS + capacity * (1 + SET_COUNT * wordsFor(catalog))) {
+                LOGGER.info("進捗ファイルを使えないため作り直します（問題の変更、または前回の異常終了）: " + file);
+                return null;
+            }
+            Table opened = new Table(catalog, (int) capacity, data, file, mapped);
+            opened.size = (int) data.get(H_SIZE);
+            return opened;
+        }
+
+        /**
+         * 問題IDの並びのハッシュ（FNV-1a）。問題の追加や削除でインデックスが変わったファイルを使わないために記録する。
+         */
+        static long fingerprint(QuestionCatalog catalog) {
+            long hash = 0xcbf29ce484222325L;
+            for (int i = 0; i < catalog.size(); i++) {
+                hash = (hash ^ catalog.questionId(i)) * 0x100000001b3L;
+            }
+            return hash;
+        }
+
+        int find(long key) {
+            int mask = capacity - 1;
+            for (int slot = hash(key) & mask;; slot = (slot + 1) & mask) {
+                long stored = data.get(HEADER_LONGS + slot * stride);
+                if (stored == key) {
+                    return slot;
+                }
+                if (stored == 0) {
+                    return -1;
+                }
+            }
+        }
+
+        /**
+         * 表にないキーを追加する（`needsGrow()` が `false` であること）。
+         */
+        int insert(long key) {
+            int mask = capacity - 1;
+            int slot = hash(key) & mask;
+            while (data.get(HEADER_LONGS + slot * stride) != 0) {
+                slot = (slot + 1) & mask;
+            }
+            data.put(HEADER_LONGS + slot * stride, key);
+            data.put(H_SIZE, ++size);
+            return slot;
+        }
+
+        boolean needsGrow() {
+            return (long) (size + 1) * 4 > (long) capacity * 3;
+        }
+
+        /**
+         * 2倍の大きさの表に入れ直す。ファイルの場合は一時ファイルに作ってから置き換える。
+         */
+        Table grow() throws IOException {
+            Path target = file == null ? null : file.resolveSibling(file.getFileName() + ".tmp");
+            Table grown = create(catalog, capacity * 2, target);
+            for (int slot = 0; slot < capacity; slot++) {
+                int from = HEADER_LONGS + slot * stride;
+                long key = data.get(from);
+                if (key != 0) {
+                    int to = HEADER_LONGS + grown.insert(key) * stride;
+                    for (int i = 1; i < stride; i++) {
+                        grown.data.put(to + i, data.get(from + i));
+                    }
+                }
+            }
+            if (file == null) {
+                return grown;
+            }
+            grown.mapped.force();
+            Files.move(target, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            Table moved = new Table(catalog, grown.capacity, grown.data, file, grown.mapped); // マップはそのまま使える
+            moved.size = grown.size;
+            return moved;
+        }
+
+        int setOffset(int slot, int set) {
+            return HEADER_LONGS + slot * stride + 1 + set * words;
+        }
+
+        void setBit(int offset, long bit, boolean value) {
+            long word = data.get(offset);
+            data.put(offset, value ? word | bit : word & ~bit);
+        }
+
+        /**
+         * 使用中（終了していない）と記録する。異常終了した場合、次の起動時にファイルを使わない。
+         */
+        void markRunning() {
+            data.put(H_CLOSED, 0);
+            if (mapped != null) {
+                mapped.force();
+            }
+        }
+
+        void close() {
+            if (mapped != null) {
+                mapped.force();
+                data.put(H_CLOSED, 1);
+                mapped.force();
+            }
+        }
+
+        private static int hash(long key) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+}
@@ -0,0 +1,272 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * 問題テーブルをメモリ上に保持する不変のカタログ。
+ *
+ * - 起動時に `questions` テーブルを1回だけ読み込み、以降の出題ではデータベースにアクセスしない。
+ * - 問題は連番のインデックスで管理し、県名・正解を配列で保持する。
+ * - 誤答の選択肢は重複のない解答プールから部分的な Fisher–Yates シャッフルで選ぶ（1選択肢あたり O(1)）。
+ * - `refresh()` で再読み込みでき、読み込み中も古いスナップショットはそのまま使える。
+ */
+public final class QuestionCatalog {
+    private static final Logger LOGGER = Logger.getLogger(QuestionCatalog.class.getName());
+    private static volatile QuestionCatalog current = null;
+
+    private final int[] questionIds;   // インデックス -> 問題ID
+    private final String[] prefectures; // インデックス -> 県名(問題文)
+    private final int[] answerIndexes;  // インデックス -> 解答プール内の位置
+    private final String[] answers;     // 重複を除いた解答プール
+    private final int[] indexById;      // 問題ID -> インデックス（存在しない場合は -1）
+
+    private QuestionCatalog(int[] questionIds, String[] prefectures, int[] answerIndexes, String[] answers) {
+        this.questionIds = questionIds;
+        this.prefectures = prefectures;
+        this.answerIndexes = answerIndexes;
+        this.answers = answers;
+
+        int maxId = 0;
+        for (int id : questionIds) {
+            maxId = Math.max(maxId, id);
+        }
+        this.indexById = new int[maxId + 1];
+        Arrays.fill(indexById, -1);
+        for (int i = 0; i < questionIds.length; i++) {
+            indexById[questionIds[i]] = i;
+        }
+    }
+
+    /**
+     * 現在のカタログを取得する。未読み込みの場合はデータベースから読み込む。
+     *
+     * @return 問題カタログ
+     */
+    public static QuestionCatalog get() {
+        QuestionCatalog catalog = current;
+        if (catalog != null) {
+            return catalog;
+        }
+        synchronized (QuestionCatalog.class) {
+            if (current == null) {
+                current = loadFromDatabase();
+            }
+            return current;
+        }
+    }
+
+    /**
+     * データベースから問題を読み直し、カタログを差し替える。
+     *
+     * @return 新しいカタログ
+     */
+    public static QuestionCatalog refresh() {
+        QuestionCatalog catalog = loadFromDatabase();
+        synchronized (QuestionCatalog.class) {
+            current = catalog;
+        }
+        return catalog;
+    }
+
+    private static QuestionCatalog loadFromDatabase() {
+        try (Connection conn = DatabaseManager.getReadConnection()) {
+            QuestionCatalog catalog = load(conn);
+            LOGGER.info("問題カタログを読み込みました: " + catalog.size() + " 問");
+            return catalog;
+        } catch (SQLException e) {
+            LOGGER.log(Level.SEVERE, "データベースエラー: 問題カタログの読み込みに失敗", e);
+            throw new RuntimeException("問題カタログの読み込み中にエラーが発生しました", e);
+        }
+    }
+
+    /**
+     * 指定した接続から問題テーブルを読み込み、カタログを作成する。
+     *
+     * @param conn データベース接続
+     * @return 新しいカタログ
+     * @throws SQLException 読み込みに失敗した場合
+     */
+    static QuestionCatalog load(Connection conn) throws SQLException {
+        List<Integer> ids = new ArrayList<>();
+        List<String> prefectureList = new ArrayList<>();
+        List<Integer> answerIndexList = new ArrayList<>();
+        List<String> answerPool = new ArrayList<>();
+        Map<String, Integer> answerPositions = new HashMap<>();
+
+        String sql = "SELECT question_id, prefecture, correct_answer FROM questions ORDER BY question_id";
+        try (PreparedStatement pstmt = conn.prepareStatement(sql);
+                ResultSet rs = pstmt.executeQuery()) {
+            while (rs.next()) {
+                String answer = rs.getString("correct_answer").trim();
+                Integer position = answerPositions.get(answer);
+                if (position == null) {
+                    position = answerPool.size();
+                    answerPositions.put(answer, position);
+                    answerPool.add(answer);
+                }
+                ids.add(rs.getInt("question_id"));
+                prefectureList.add(rs.getString("prefecture"));
+                answerIndexList.add(position);
+            }
+        }
+
+        int size = ids.size();
+        int[] questionIds = new int[size];
+        int[] answerIndexes = new int[size];
+        for (int i = 0; i < size; i++) {
+            questionIds[i] = ids.get(i);
+            answerIndexes[i] = answerIndexList.get(i);
+        }
+        return new QuestionCatalog(questionIds, prefectureList.toArray(new String[0]),
+                answerIndexes, answerPool.toArray(new String[0]));
+    }
+
+    /**
+     * @return 問題数
+     */
+    public int size() {
+        return questionIds.length;
+    }
+
+    /**
+     * 問題IDからインデックスを取得する。
+     *
+     * @param questionId 問題ID
+     * @return インデックス（存在しない場合は -1）
+     */
+    public int indexOf(int questionId) {
+        return questionId >= 0 && questionId < indexById.length ? indexById[questionId] : -1;
+    }
+
+    /**
+     * @param index 問題のインデックス
+     * @return 問題ID
+     */
+    public int questionId(int index) {
+        return questionIds[index];
+    }
+
+    /**
+     * @param index 問題のインデックス
+     * @return 問題文（県名）
+     */
+    public String prefecture(int index) {
+        return prefectures[index];
+    }
+
+    /**
+     * @param index 問題のインデックス
+     * @return 正解（県庁所在地）
+     */
+    public String correctAnswer(int index) {
+        return answers[answerIndexes[index]];
+    }
+
+    /**
+     * @return 全問題IDのリスト（ID順）
+     */
+    public List<Integer> questionIds() {
+        List<Integer> list = new ArrayList<>(questionIds.length);
+        for (int id : questionIds) {
+            list.add(id);
+        }
+        return list;
+    }
+
+    /**
+     * 正解1つと誤答 `distractorCount` 個をランダムな順序で並べた選択肢を作成する。
+     *
+     * @param index           問題のインデックス
+     * @param distractorCount 誤答の数（解答プールが足りない場合は少なくなる）
+     * @return 選択肢の配列
+     */
+    public String[] options(int index, int distractorCount) {
+        return options(index, distractorCount, ThreadLocalRandom.current());
+    }
+
+    /**
+     * 正解1つと誤答 `distractorCount` 個をランダムな順序で並べた選択肢を作成する。
+     *
+     * - 正解を除いた解答プールを仮想的な配列とみなし、部分的な Fisher–Yates シャッフルで先頭 k 個を選ぶ。
+     * - 入れ替えた位置だけを小さな配列に記録するため、プール全体をコピーしない。
+     * - 最後に正解をランダムな位置へ差し込む。
+     *
+     * @param index           問題のインデックス
+     * @param distractorCount 誤答の数（解答プールが足りない場合は少なくなる）
+     * @param random          乱数生成器
+     * @return 選択肢の配列
+     */
+    public String[] options(int index, int distractorCount, Random random) {
+        int correct = answerIndexes[index];
+        int candidates = answers.length - 1; // 正解を除いた解答の数
+        int k = Math.max(0, Math.min(distractorCount, candidates));
+
+        String[] options = new String[k + 1];
+        int[] swappedPositions = new int[k];
+        int[] swappedValues = new int[k];
+        int swaps = 0;
+
+        for (int i = 0; i < k; i++) {
+            int j = i + random.nextInt(candidates - i);
+            int valueAtJ = lookup(swappedPositions, swappedValues, swaps, j);
+            int valueAtI = lookup(swappedPositions, swappedValues, swaps, i);
+            swaps = store(swappedPositions, swappedValues, swaps, j, valueAtI);
+            // 仮想配列の位置を、正解を飛ばした解答プールの位置に変換
+            options[i] = answers[valueAtJ < correct ? valueAtJ : valueAtJ + 1];
+        }
+
+        int correctPosition = random.nextInt(k + 1);
+        options[k] = options[correctPosition];
+        options[correctPosition] = answers[correct];
+        return options;
+    }
+
+    /**
+     * 選択肢を作成し、正解の位置とあわせて不変の問題にする。
+     *
+     * @param index           問題のインデックス
+     * @param distractorCount 誤答の数（解答プールが足りない場合は少なくなる）
+     * @param random          乱数生成器
+     * @return 選択肢を並べ終えた問題
+     */
+    public PreparedQuestion prepare(int index, int distractorCount, Random random) {
+        String[] options = options(index, distractorCount, random);
+        String correct = answers[answerIndexes[index]];
+        int correctIndex = 0;
+        while (options[correctIndex] != correct) { // 解答プールは重複がないため、同じインスタンスを探せばよい
+            correctIndex++;
+        }
+        return new PreparedQuestion(questionIds[index], prefectures[index], List.of(options), correctIndex);
+    }
+
+    private static int lookup(int[] positions, int[] values, int count, int position) {
+        for (int i = 0; i < count; i++) {
+            if (positions[i] == position) {
+                return values[i];
+            }
+        }
+        return position;
+    }
+
+    private static int store(int[] positions, int[] values, int count, int position, int value) {
+        for (int i = 0; i < count; i++) {
+            if (positions[i] == position) {
+                values[i] = value;
+                return count;
+            }
+        }
+        positions[count] = position;
+        values[count] = value;
+        return count + 1;
+    }
+}
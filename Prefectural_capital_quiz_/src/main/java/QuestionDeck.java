@@ -0,0 +1,325 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * 選択肢を並べ終えた問題を、問題ごとのリングバッファに先に用意しておく山札。
+ *
+ * - バックグラウンドのスレッド1本（生産者）が、問題ごとのリングバッファに不変の `PreparedQuestion` を詰めておき、
+ *   出題（`take()`）はリングバッファから1つ取り出すだけにする（選択肢の抽選が出題の待ち時間に入らない）。
+ * - リングバッファは生産者1・消費者多数のロックを使わないキューで、取り出しは読み取り位置の CAS だけでメモリを確保しない。
+ * - リングバッファを持つ問題の数は `quiz.deck.maxRings`（既定 1024）までに抑える（一括取り込みした大きな問題集でも
+ *   用意しておく問題の数は 容量 × 上限 を超えない）。起動時はカタログの先頭から上限まで作り、
+ *   リングバッファのない問題が出題されると、最も長く出題されていないリングバッファと入れ替える。
+ * - 取り出しで残りが半分以下になったリングバッファは補充待ちの列に入り、生産者は列に入ったものだけを満杯まで詰める
+ *   （カタログ全体を見回らない）。列が空になると生産者は止まり（背圧）、列に入れた消費者が起こす。
+ * - リングバッファがない・空の場合、起動していない場合、古いカタログのセッションの場合は、その場で組み立てる（従来どおり）。
+ * - カタログが差し替えられた場合は、新しいカタログのセッションが最初に取り出したときに山札を作り直す。
+ * - 容量は `quiz.deck.capacity`（問題ごと、既定 8、2のべき乗に切り上げ）。
+ */
+public final class QuestionDeck {
+    private static final Logger LOGGER = Logger.getLogger(QuestionDeck.class.getName());
+
+    private static final int DISTRACTOR_COUNT = 3; // 誤答の選択肢の数
+    private static final int CAPACITY = Integer.highestOneBit(Math.max(2, Integer.getInteger("quiz.deck.capacity", 8) * 2 - 1));
+    private static final int LOW_WATERMARK = CAPACITY / 2;
+    private static final int MAX_RINGS = Math.max(1, Integer.getInteger("quiz.deck.maxRings", 1024));
+    private static final int MAX_PENDING_ADMISSIONS = 64; // 入れ替え待ちの問題の上限（あふれた分は諦めてその場で組み立てる）
+    private static final long IDLE_PARK_NANOS = TimeUnit.SECONDS.toNanos(1); // 起こし忘れに備えた見回りの間隔
+
+    private static volatile Deck deck;
+    private static volatile Thread producer;
+    private static final AtomicBoolean producerParked = new AtomicBoolean();
+
+    private QuestionDeck() {
+    }
+
+    /**
+     * 生産者のスレッドを起動し、現在のカタログの山札を詰め始める。すでに起動している場合は何もしない。
+     */
+    public static synchronized void start() {
+        if (producer != null) {
+            return;
+        }
+        deck = new Deck(QuestionCatalog.get());
+        Thread thread = new Thread(QuestionDeck::produce, "quiz-question-deck");
+        thread.setDaemon(true);
+        producer = thread;
+        thread.start();
+    }
+
+    /**
+     * 生産者のスレッドを止める。以降の `take()` はその場で組み立てる。
+     */
+    public static synchronized void stop() {
+        Thread thread = producer;
+        if (thread == null) {
+            return;
+        }
+        producer = null;
+        deck = null;
+        LockSupport.unpark(thread);
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 問題を1つ取り出す。
+     *
+     * @param catalog セッションのカタログ
+     * @param index   問題のインデックス
+     * @return 選択肢を並べ終えた問題
+     */
+    public static PreparedQuestion take(QuestionCatalog catalog, int index) {
+        Deck current = deck;
+        if (current != null && current.catalog != catalog && catalog == QuestionCatalog.get()) {
+            current = replace(current, catalog);
+        }
+        if (current != null && current.catalog == catalog) {
+            Ring ring = current.rings.get(index);
+            if (ring != null) {
+                ring.lastTakenNanos = System.nanoTime();
+                PreparedQuestion question = ring.poll();
+                if (question != null) {
+                    MetricsRegistry.increment("deck.hits");
+                    if (ring.size() <= LOW_WATERMARK) {
+                        current.requestRefill(ring);
+                    }
+                    return question;
+                }
+                current.requestRefill(ring);
+            } else {
+                current.requestRing(index);
+            }
+            MetricsRegistry.increment("deck.misses");
+        }
+        return catalog.prepare(index, DISTRACTOR_COUNT, ThreadLocalRandom.current());
+    }
+
+    /**
+     * @return 山札の状態（問題数、容量、用意済みの問題数）
+     */
+    public static String stats() {
+        Deck current = deck;
+        if (current == null) {
+            return "started=false";
+        }
+        long buffered = 0;
+        for (Ring ring : current.rings.values()) {
+            buffered += ring.size();
+        }
+        return String.format("questions=%d rings=%d/%d capacity=%d buffered=%d",
+                current.catalog.size(), current.rings.size(), MAX_RINGS, CAPACITY, buffered);
+    }
+
+    private static synchronized Deck replace(Deck old, QuestionCatalog catalog) {
+        if (deck == old && producer != null) {
+            deck = new Deck(catalog);
+            LOGGER.info("問題カタログが変わったため、山札を作り直します: " + catalog.size() + " 問");
+            wakeProducer();
+        }
+        return deck;
+    }
+
+    private static void wakeProducer() {
+        if (producerParked.get() && producerParked.compareAndSet(true, false)) {
+            Thread thread = producer;
+            if (thread != null) {
+                LockSupport.unpark(thread);
+            }
+        }
+    }
+
+    /**
+     * 生産者のスレッドの本体。補充待ちのリングバッファを詰め、列が空なら起こされるまで止まる。
+     */
+    private static void produce() {
+        Random random = ThreadLocalRandom.current();
+        while (producer == Thread.currentThread()) {
+            Deck current = deck;
+            try {
+                if (current != null && current.work(random) > 0) {
+                    continue;
+                }
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.SEVERE, "山札の問題を用意できませんでした。", e);
+            }
+            // 止まる前に印を付けてから見直す（見直した後の取り出しは印を見て起こす）
+            producerParked.set(true);
+            if (current == null || current != deck || current.isIdle()) {
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            }
+            producerParked.set(false);
+        }
+    }
+
+    /**
+     * 1つのカタログに対する、問題ごとのリングバッファ（上限 `MAX_RINGS` 個）。
+     *
+     * - リングバッファの追加と入れ替えは生産者だけが行い、消費者は補充や入れ替えを列に入れて頼むだけにする。
+     */
+    private static final class Deck {
+        final QuestionCatalog catalog;
+        final ConcurrentHashMap<Integer, Ring> rings = new ConcurrentHashMap<>();
+        private final Queue<Ring> refills = new ConcurrentLinkedQueue<>();
+        private final BlockingQueue<Integer> admissions = new ArrayBlockingQueue<>(MAX_PENDING_ADMISSIONS);
+
+        Deck(QuestionCatalog catalog) {
+            this.catalog = catalog;
+            for (int i = 0; i < Math.min(catalog.size(), MAX_RINGS); i++) {
+                Ring ring = new Ring(i);
+                rings.put(i, ring);
+                requestRefill(ring);
+            }
+        }
+
+        /**
+         * 残りが少ないリングバッファの補充を頼む（列に入っていなければ入れて、生産者を起こす）。
+         */
+        void requestRefill(Ring ring) {
+            if (!ring.queued.get() && ring.queued.compareAndSet(false, true)) {
+                refills.offer(ring);
+                wakeProducer();
+            }
+        }
+
+        /**
+         * リングバッファのない問題に、リングバッファを作るよう頼む（列が満杯なら諦める）。
+         */
+        void requestRing(int index) {
+            if (admissions.offer(index)) {
+                wakeProducer();
+            }
+        }
+
+        /**
+         * 頼まれたリングバッファを作ってから、補充待ちのリングバッファを満杯まで詰める。生産者だけが呼ぶ。
+         *
+         * @return 作ったリングバッファと詰めた問題の数
+         */
+        int work(Random random) {
+            int done = 0;
+            Integer index;
+            while ((index = admissions.poll()) != null) {
+                if (!rings.containsKey(index)) {
+                    if (rings.size() >= MAX_RINGS) {
+                        evictColdest();
+                    }
+                    Ring ring = new Ring(index);
+                    rings.put(index, ring);
+                    requestRefill(ring);
+                    done++;
+                }
+            }
+            Ring ring;
+            while ((ring = refills.poll()) != null) {
+                ring.queued.set(false); // 詰めている間に取り出されたら、もう一度列に入れてもらう
+                if (rings.get(ring.index) != ring) {
+                    continue; // 入れ替えで外されたもの
+                }
+                while (!ring.isFull()) {
+                    ring.offer(catalog.prepare(ring.index, DISTRACTOR_COUNT, random));
+                    done++;
+                }
+            }
+            return done;
+        }
+
+        /**
+         * 最も長く出題されていないリングバッファを外す（上限までの走査で、カタログの大きさによらない）。
+         */
+        private void evictColdest() {
+            Ring coldest = null;
+            for (Ring ring : rings.values()) {
+                if (coldest == null || ring.lastTakenNanos - coldest.lastTakenNanos < 0) {
+                    coldest = ring;
+                }
+            }
+            if (coldest != null) {
+                rings.remove(coldest.index, coldest);
+            }
+        }
+
+        boolean isIdle() {
+            return refills.isEmpty() && admissions.isEmpty();
+        }
+    }
+
+    /**
+     * 生産者1・消費者多数の固定長のリングバッファ。
+     *
+     * - 書き込み位置 `tail` は生産者だけが進め、読み取り位置 `head` は消費者が CAS で進める。
+     * - 消費者は要素を読んでから `head` を進めるため、CAS に成功した時点で読んだ要素は上書きされていない
+     *   （生産者がその枠を上書きできるのは `head` が進んだ後だけ）。
+     * - 取り出した枠は空にしない（要素は不変で、次に詰めるときに上書きされる）。
+     */
+    private static final class Ring {
+        private static final VarHandle HEAD;
+        private static final int MASK = CAPACITY - 1;
+
+        static {
+            try {
+                HEAD = MethodHandles.lookup().findVarHandle(Ring.class, "head", long.class);
+            } catch (ReflectiveOperationException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+
+        final int index;                                      // 問題のインデックス
+        final AtomicBoolean queued = new AtomicBoolean();     // 補充待ちの列に入っている
+        volatile long lastTakenNanos = System.nanoTime();     // 最後に取り出そうとした時刻（入れ替えの目安）
+
+        private final PreparedQuestion[] slots = new PreparedQuestion[CAPACITY];
+        private volatile long head; // 次に取り出す位置
+        private volatile long tail; // 次に詰める位置（生産者だけが書く）
+
+        Ring(int index) {
+            this.index = index;
+        }
+
+        /**
+         * 生産者だけが呼ぶ。満杯でないことを確かめてから呼ぶこと。
+         */
+        void offer(PreparedQuestion question) {
+            long t = tail;
+            slots[(int) t & MASK] = question;
+            tail = t + 1; // volatile 書き込みで要素を公開する
+        }
+
+        PreparedQuestion poll() {
+            while (true) {
+                long h = head;
+                if (h >= tail) {
+                    return null;
+                }
+                PreparedQuestion question = slots[(int) h & MASK];
+                if (HEAD.compareAndSet(this, h, h + 1)) {
+                    return question;
+                }
+            }
+        }
+
+        boolean isFull() {
+            return tail - head >= CAPACITY;
+        }
+
+        int size() {
+            long h = head;
+            return (int) (tail - h);
+        }
+    }
+}
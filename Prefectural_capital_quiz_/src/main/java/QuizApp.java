@@ -5,37 +5,42 @@ import java.util.Scanner;
  * 
  * - ユーザーのログインまたは新規登録を管理。
  * - クイズの出題メニューを表示し、ユーザーの入力を受け付ける。
+ * - 出題と正誤判定は `QuizEngine` に任せ、このクラスはコンソールへの表示と入力だけを行う。
  * - ユーザー入力時のバリデーションを強化し、エラー処理を適切に行う。
  * - `Scanner` のリソース管理を適切に行い、リソースリークを防ぐ。
  */
 public class QuizApp {
-    private static String userId; // 現在ログインしているユーザーのIDを保存する変数
 
     public static void main(String[] args) {
         System.out.println("クイズアプリへようこそ！");
 
         // `try-with-resources` を使用し、Scannerのリソースリークを防ぐ
         try (Scanner scanner = new Scanner(System.in)) {
-            userId = UserManager.loginOrRegister(); // ユーザーのログインまたは新規登録処理
+            StartupPipeline.run(false); // 問題カタログの読み込み、解答ログの反映などを並行に行う
+            String userId = UserManager.loginOrRegister(scanner); // ユーザーのログインまたは新規登録処理
 
             while (true) {
                 // メニュー表示
                 System.out.println("\nメニュー:");
                 System.out.println("1. 全問解答");
                 System.out.println("2. 間違えた問題のみ解答");
-                System.out.println("3. 終了");
+                System.out.println("3. 復習（間隔反復）");
+                System.out.println("4. 終了");
                 System.out.print("選択肢を入力してください: ");
 
                 int choice = getValidMenuChoice(scanner); // 入力チェックを行い、選択肢を取得
 
                 switch (choice) {
                     case 1:
-                        QuestionManager.takeQuiz(userId, true, scanner);
+                        takeQuiz(userId, QuizMode.ALL, scanner);
                         break;
                     case 2:
-                        QuestionManager.takeQuiz(userId, false, scanner);
+                        takeQuiz(userId, QuizMode.WRONG_ONLY, scanner);
                         break;
                     case 3:
+                        takeQuiz(userId, QuizMode.SPACED_REPETITION, scanner);
+                        break;
+                    case 4:
                         System.out.println("アプリを終了します。");
                         return; // ループを抜け、`try-with-resources` により `scanner` が自動でクローズされる
                     default:
@@ -43,19 +48,92 @@ public class QuizApp {
                 }
             }
         } finally {
+            QuestionDeck.stop();
+            AnswerRecorder.shutdown(); // 未書き込みの解答をすべてコミットしてから
+            SpacedRepetitionScheduler.persistAll(); // 復習スケジュールを保存し
+            ProgressStore.close(); // 進捗のファイルを書き出し
             DatabaseManager.closeConnection(); // プログラム終了時にデータベースを閉じる
         }
     }
 
+    /**
+     * クイズを実施するメソッド。
+     * 
+     * - `QuizEngine` でセッションを開始し、問題を1問ずつ表示する。
+     * - ユーザーの入力を受け付け、セッションに解答を渡す（正誤判定と記録はセッションが行う）。
+     * 
+     * @param userId  ユーザーID
+     * @param mode    出題モード
+     * @param scanner ユーザー入力を受け付ける `Scanner` オブジェクト
+     */
+    private static void takeQuiz(String userId, QuizMode mode, Scanner scanner) {
+        System.out.println("現在のモード: " + mode.label());
+        QuizSession session = QuizEngine.startSession(userId, mode);
+
+        try {
+            if (session.totalQuestions() == 0) {
+                System.out.println("出題する問題がありません。メニューに戻ります");
+                return;
+            }
+
+            QuizQuestion question;
+            while ((question = session.nextQuestion()) != null) {
+                System.out.println("\n(残り " + question.remaining() + " 問)");
+                System.out.println("\n" + question.prompt());
+                for (int j = 0; j < question.options().size(); j++) {
+                    System.out.println((j + 1) + ". " + question.options().get(j));
+                }
+
+                // ユーザー入力の取得とバリデーション
+                System.out.print("番号を入力してください：");
+                int userChoice;
+                while (true) {
+                    if (scanner.hasNextInt()) {
+                        userChoice = scanner.nextInt();
+                        scanner.nextLine(); // 改行をクリア
+                        if (userChoice >= 1 && userChoice <= question.options().size()) {
+                            break;
+                        }
+                    } else {
+                        scanner.nextLine(); // 無効な入力をクリア
+                    }
+                    System.out.println("無効な選択です。もう一度入力してください。");
+                }
+
+                AnswerResult result = session.submitAnswer(userChoice - 1);
+                System.out.println(result.correct() ? "正解です！" : "不正解です...");
+            }
+
+            // クイズ結果の表示
+            QuizSummary summary = session.summary();
+            System.out.println("\n=== クイズ結果 ===");
+            System.out.println("総問題数: " + summary.totalQuestions());
+            System.out.println("正解数: " + summary.correctCount());
+            System.out.println("不正解数: " + summary.incorrectCount());
+
+            AnswerRecorder.flush(); // 今回の解答を集計に反映させてから通算成績を表示する
+            UserStats stats = UserStatsManager.getTotals(userId);
+            System.out.printf("通算成績: %d 問中 %d 問正解（正答率 %.1f%%）%n",
+                    stats.answered(), stats.correct(), stats.accuracy() * 100);
+            LeaderboardEntry rank = Leaderboard.rankOf(userId);
+            if (rank != null) {
+                System.out.printf("ランキング: %d 位 / %d 人（連続正解 %d 問、最長 %d 問）%n",
+                        rank.rank(), Leaderboard.size(), rank.currentStreak(), rank.bestStreak());
+            }
+        } finally {
+            QuizEngine.endSession(session.sessionId());
+        }
+    }
+
     /**
      * メニューの選択肢を安全に取得するメソッド。
      * 
      * - 数値以外の入力がされた場合、再入力を求める。
      * - `nextInt()` の後に `nextLine()` を呼び、バッファをクリアすることで予期しない入力バグを防ぐ。
-     * - 1〜3 以外の数値が入力された場合も再入力を促す。
+     * - 1〜4 以外の数値が入力された場合も再入力を促す。
      *
      * @param scanner ユーザー入力を受け付ける `Scanner` オブジェクト
-     * @return ユーザーが選択したメニュー番号（1〜3）
+     * @return ユーザーが選択したメニュー番号（1〜4）
      */
     private static int getValidMenuChoice(Scanner scanner) {
         int choice;
@@ -64,14 +142,14 @@ public class QuizApp {
                 choice = scanner.nextInt();
                 scanner.nextLine(); // バッファをクリア（nextInt() だけだと改行が残るため）
 
-                // 有効な選択肢（1〜3）の場合のみループを抜ける
-                if (choice >= 1 && choice <= 3) {
+                // 有効な選択肢（1〜4）の場合のみループを抜ける
+                if (choice >= 1 && choice <= 4) {
                     break;
                 }
             } else {
                 scanner.nextLine(); // 無効な入力をクリア
             }
-            System.out.print("無効な入力です。1、2、3の数字を入力してください: ");
+            System.out.print("無効な入力です。1、2、3、4の数字を入力してください: ");
         }
         return choice;
     }
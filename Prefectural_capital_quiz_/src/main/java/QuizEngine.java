@@ -0,0 +1,156 @@
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * 入出力に依存しないクイズの実行エンジン。
+ *
+ * - セッションの開始、次の問題の取得、解答、結果の集計を API として提供する。
+ * - 各ユーザーの状態は `QuizSession` に持ち、共有の static 変数には置かない。
+ * - 実行中のセッションはスレッドセーフなマップで管理し、多数のセッションを同時に扱える。
+ * - オフラインで解いた1回分の解答は、セッションを使わずに `submitAttempt()` でまとめて採点・記録できる。
+ */
+public class QuizEngine {
+    private static final Logger LOGGER = Logger.getLogger(QuizEngine.class.getName());
+    private static final Map<String, QuizSession> sessions = new ConcurrentHashMap<>();
+    private static final int REVIEW_SESSION_SIZE = Integer.getInteger("quiz.srs.sessionSize", 10); // 復習モードの1回の問題数
+    private static final int MAX_ATTEMPT_ANSWERS = Integer.getInteger("quiz.attempt.maxAnswers", 1000); // 1回に提出できる解答数
+    private static final int PARALLEL_GRADING_THRESHOLD = Integer.getInteger("quiz.attempt.parallelThreshold", 256); // 並列で採点する解答数
+
+    /**
+     * 新しいクイズセッションを開始する。
+     *
+     * @param userId ユーザーID
+     * @param mode   出題モード
+     * @return 開始したセッション（出題する問題がない場合も返し、`totalQuestions()` が 0 になる）
+     */
+    public static QuizSession startSession(String userId, QuizMode mode) {
+        List<Integer> questionIds = mode == QuizMode.SPACED_REPETITION
+                ? SpacedRepetitionScheduler.dueQuestionIds(userId, REVIEW_SESSION_SIZE)
+                : QuestionManager.getQuestionsToAsk(userId, mode == QuizMode.ALL);
+        QuestionCatalog catalog = QuestionCatalog.get();
+
+        // カタログにない問題（削除済みなど）は出題しない
+        int[] indexes = new int[questionIds.size()];
+        int count = 0;
+        for (int questionId : questionIds) {
+            int index = catalog.indexOf(questionId);
+            if (index >= 0) {
+                indexes[count++] = index;
+            } else {
+                LOGGER.warning("問題ID " + questionId + " のデータが見つかりませんでした。");
+            }
+        }
+
+        QuizSession session = new QuizSession(UUID.randomUUID().toString(), userId, mode, catalog,
+                count == indexes.length ? indexes : Arrays.copyOf(indexes, count));
+        sessions.put(session.sessionId(), session);
+        return session;
+    }
+
+    /**
+     * 1回分の解答をまとめて採点し、1つのトランザクションで記録する。
+     *
+     * - 正解は問題カタログと照合する（大文字・小文字と前後の空白は区別しない）。
+     * - 採点は解答ごとに独立しているため、解答数が `quiz.attempt.parallelThreshold`（既定 256）以上の場合は並列に行う。
+     *   それより少ない場合は、並列化の手間の方が大きいため呼び出したスレッドで行う。
+     * - 存在しない問題や空の解答が1つでもあれば、何も記録せずに例外を投げる。
+     *
+     * @param userId  ユーザーID
+     * @param answers 解答した順の解答
+     * @return 採点結果
+     * @throws IllegalArgumentException 解答がない、多すぎる、または不正な解答を含む場合
+     */
+    public static AttemptResult submitAttempt(String userId, List<AttemptAnswer> answers) {
+        if (answers.isEmpty() || answers.size() > MAX_ATTEMPT_ANSWERS) {
+            throw new IllegalArgumentException("解答は 1〜" + MAX_ATTEMPT_ANSWERS + " 件で提出してください");
+        }
+        long start = System.nanoTime();
+        QuestionCatalog catalog = QuestionCatalog.get();
+        IntStream positions = IntStream.range(0, answers.size());
+        if (answers.size() >= PARALLEL_GRADING_THRESHOLD) {
+            positions = positions.parallel();
+        }
+        AnswerResult[] results = new AnswerResult[answers.size()];
+        positions.forEach(i -> results[i] = grade(catalog, answers.get(i)));
+
+        AnswerRecord[] records = new AnswerRecord[results.length];
+        int correctCount = 0;
+        for (int i = 0; i < results.length; i++) {
+            AnswerResult result = results[i];
+            records[i] = new AnswerRecord(userId, result.questionId(), result.selectedAnswer(), result.correct());
+            correctCount += result.correct() ? 1 : 0;
+        }
+        AnswerRecorder.recordAttempt(userId, List.of(records));
+        MetricsRegistry.recordSince("attempt.submit", start);
+        return new AttemptResult(new QuizSummary(results.length, correctCount, results.length - correctCount),
+                List.of(results));
+    }
+
+    private static AnswerResult grade(QuestionCatalog catalog, AttemptAnswer answer) {
+        int index = catalog.indexOf(answer.questionId());
+        if (index < 0) {
+            throw new IllegalArgumentException("問題ID " + answer.questionId() + " のデータが見つかりませんでした。");
+        }
+        if (answer.answer() == null || answer.answer().isBlank()) {
+            throw new IllegalArgumentException("問題ID " + answer.questionId() + " の解答が空です。");
+        }
+        String selected = answer.answer().strip();
+        String correctAnswer = catalog.correctAnswer(index);
+        return new AnswerResult(answer.questionId(), selected, correctAnswer, selected.equalsIgnoreCase(correctAnswer));
+    }
+
+    /**
+     * 実行中のセッションを取得する。
+     *
+     * @param sessionId セッションID
+     * @return セッション（存在しない場合は `null`）
+     */
+    public static QuizSession getSession(String sessionId) {
+        return sessions.get(sessionId);
+    }
+
+    /**
+     * セッションを終了し、結果を返す。
+     *
+     * @param sessionId セッションID
+     * @return 結果の集計（存在しない場合は `null`）
+     */
+    public static QuizSummary endSession(String sessionId) {
+        QuizSession session = sessions.remove(sessionId);
+        if (session == null) {
+            return null;
+        }
+        try {
+            SpacedRepetitionScheduler.persist(session.userId()); // このセッションでの復習スケジュールの変更を保存する
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "復習スケジュールを保存できませんでした。終了時に再び保存します。", e);
+        }
+        return session.summary();
+    }
+
+    /**
+     * 一定時間操作のないセッションを破棄する。
+     *
+     * @param maxIdleMillis 破棄するまでの無操作時間（ミリ秒）
+     * @return 破棄したセッション数
+     */
+    public static int evictIdleSessions(long maxIdleMillis) {
+        long threshold = System.currentTimeMillis() - maxIdleMillis;
+        int before = sessions.size();
+        sessions.values().removeIf(session -> session.lastAccessMillis() < threshold);
+        return before - sessions.size();
+    }
+
+    /**
+     * @return 実行中のセッション数
+     */
+    public static int activeSessionCount() {
+        return sessions.size();
+    }
+}
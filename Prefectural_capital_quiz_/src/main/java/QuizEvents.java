@@ -0,0 +1,90 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * クイズの操作を JDK Flight Recorder（JFR）に記録するイベント。
+ *
+ * - 記録していないとき（JFR を起動していないとき）は `begin()` / `commit()` がほぼ何もしないため、常に呼んでよい。
+ * - `java -XX:StartFlightRecording=filename=quiz.jfr,settings=profile ...` のように起動すると記録され、
+ *   `jfr print --categories Quiz quiz.jfr` や JDK Mission Control で所要時間と項目を確認できる。
+ * - 呼び出し元のスタックトレースは取らない（件数が多く、場所は名前から分かるため）。
+ */
+final class QuizEvents {
+
+    private QuizEvents() {
+    }
+
+    @Name("quiz.QuestionServed")
+    @Label("出題")
+    @Category("Quiz")
+    @Description("セッションが次の問題を用意した")
+    @StackTrace(false)
+    static final class QuestionServed extends Event {
+        @Label("ユーザーID")
+        String userId;
+
+        @Label("セッションID")
+        String sessionId;
+
+        @Label("出題モード")
+        String mode;
+
+        @Label("問題ID")
+        int questionId;
+
+        @Label("残りの問題数")
+        int remaining;
+    }
+
+    @Name("quiz.AnswerRecorded")
+    @Label("解答の記録")
+    @Category("Quiz")
+    @Description("解答を記録し、集計テーブルを更新した（1件ずつの記録ではコミット前、1回分のまとめての記録ではコミット後）")
+    @StackTrace(false)
+    static final class AnswerRecorded extends Event {
+        @Label("ユーザーID")
+        String userId;
+
+        @Label("問題ID")
+        int questionId;
+
+        @Label("正解")
+        boolean correct;
+
+        @Label("解答用データベース")
+        int shard;
+    }
+
+    @Name("quiz.LoginAttempt")
+    @Label("ログイン")
+    @Category("Quiz")
+    @Description("パスワードによるログインの試行")
+    @StackTrace(false)
+    static final class LoginAttempt extends Event {
+        @Label("ユーザーID")
+        String userId;
+
+        @Label("成功")
+        boolean success;
+    }
+
+    @Name("quiz.DbQuery")
+    @Label("SQL の実行")
+    @Category({ "Quiz", "Database" })
+    @Description("キャッシュ済みステートメントの実行（問い合わせは ResultSet を読み終えるまで）")
+    @StackTrace(false)
+    static final class DbQuery extends Event {
+        @Label("SQL")
+        String sql;
+
+        @Label("行数")
+        long rows;
+
+        @Label("失敗")
+        boolean failed;
+    }
+}
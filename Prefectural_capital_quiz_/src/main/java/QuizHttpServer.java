@@ -0,0 +1,415 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * クイズアプリの HTTP/JSON サーバー。
+ *
+ * - JDK 標準の `com.sun.net.httpserver` を使い、1リクエストごとに仮想スレッドで処理する。
+ * - ログイン・登録、次の問題の取得、解答、結果の API を提供し、処理は `UserManager` と `QuizEngine` に任せる。
+ * - 応答には必ず Content-Length を付け、キープアライブで接続を再利用できるようにする。
+ * - エンドポイントごとのレイテンシをヒストグラムに記録し、SQL 文ごとの統計とあわせて `GET /api/metrics` で返す。
+ *   `MetricsRegistry` のメトリクスは `quiz.metrics.dumpSeconds`（既定 60 秒、0 で出さない）ごとにログにも出す。
+ * - 起動時の準備は `StartupPipeline` で並行に進め、段階ごとの所要時間を `GET /api/metrics` の `startup` でも返す。
+ * - `quiz.maintenance.intervalMinutes`（既定 1440 分、0 で行わない）ごとに `DatabaseMaintenance` でバックアップなどを行う。
+ *
+ * - ログイン・登録時に認証トークンを発行し、以降のリクエストは `Authorization: Bearer <token>` で
+ *   認証する（`SessionTokenStore` のメモリ上で確認するため、データベースにはアクセスしない）。
+ *
+ * API:
+ * - `POST /api/register` `{"userId", "password", "mode"}` → 登録してトークンを発行し、セッションを開始
+ * - `POST /api/login` `{"userId", "password", "mode"}` → ログインしてトークンを発行し、セッションを開始
+ * - `POST /api/logout` → トークンを無効にする
+ * - `POST /api/sessions` `{"mode"}` → ログイン中のユーザーで新しいセッションを開始
+ * - `GET /api/sessions/{sessionId}/question` → 次の問題（すべて解答済みなら `finished: true`）
+ * - `POST /api/sessions/{sessionId}/answer` `{"choice": 1〜4}` → 正誤判定の結果
+ * - `GET /api/sessions/{sessionId}/result` → 結果の集計（セッションは終了する）
+ * - `GET /api/leaderboard?limit=10` → 通算の正解数の上位（ログイン中なら自分の順位 `me` も返す）
+ * - `POST /api/attempts` `{"answers": [{"questionId", "answer"}, ...]}` → オフラインで解いた1回分の解答をまとめて採点・記録し、
+ *   結果の集計と1問ごとの結果を返す
+ */
+public class QuizHttpServer {
+    private static final Logger LOGGER = Logger.getLogger(QuizHttpServer.class.getName());
+    private static final int DEFAULT_PORT = 8080;
+    private static final long SESSION_IDLE_MILLIS = TimeUnit.MINUTES.toMillis(30); // 無操作のセッションを破棄するまでの時間
+    private static final int MAX_BODY_BYTES = 64 * 1024;
+    private static final int DEFAULT_LEADERBOARD_LIMIT = 10;
+    private static final int MAX_LEADERBOARD_LIMIT = 100;
+    private static final Response UNAUTHORIZED = Response.error(401, "ログインしてください（Authorization: Bearer <token>）");
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final ScheduledExecutorService housekeeping;
+    private final Map<String, LatencyHistogram> latencies = new ConcurrentHashMap<>();
+
+    /**
+     * サーバーを作成する（`start()` を呼ぶまで待ち受けない）。
+     *
+     * @param port 待ち受けるポート（0 の場合は空いているポート）
+     * @throws IOException ポートを開けなかった場合
+     */
+    public QuizHttpServer(int port) throws IOException {
+        // キープアライブの設定（HttpServer の作成前に設定する必要がある）
+        setDefaultProperty("sun.net.httpserver.idleInterval", "30");        // 無通信の接続を閉じるまでの秒数
+        setDefaultProperty("sun.net.httpserver.maxIdleConnections", "1000"); // 保持するアイドル接続の上限
+        setDefaultProperty("sun.net.httpserver.nodelay", "true");            // Nagle と遅延 ACK による約40msの待ちを避ける
+
+        server = HttpServer.create(new InetSocketAddress(port), 0);
+        executor = Executors.newVirtualThreadPerTaskExecutor();
+        server.setExecutor(executor);
+        server.createContext("/api/", this::handle);
+
+        housekeeping = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "quiz-http-housekeeping");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : Integer.getInteger("quiz.http.port", DEFAULT_PORT);
+        StartupPipeline.run(true); // スキーマの確認、解答ログの反映、ランキング、問題カタログを並行に用意する
+        MetricsRegistry.startPeriodicDump(Long.getLong("quiz.metrics.dumpSeconds", 60));
+        DatabaseMaintenance.startScheduled(Long.getLong("quiz.maintenance.intervalMinutes", 1440));
+
+        QuizHttpServer server = new QuizHttpServer(port);
+        Runtime.getRuntime().addShutdownHook(new Thread(server::stop, "quiz-http-shutdown"));
+        server.start();
+        LOGGER.info("クイズサーバーを起動しました: http://localhost:" + server.port() + "/api/");
+    }
+
+    /**
+     * 待ち受けを開始する。
+     */
+    public void start() {
+        housekeeping.scheduleAtFixedRate(() -> {
+            int evicted = QuizEngine.evictIdleSessions(SESSION_IDLE_MILLIS);
+            if (evicted > 0) {
+                LOGGER.info("無操作のセッションを破棄しました: " + evicted + " 件");
+            }
+            SpacedRepetitionScheduler.evictIdle(SESSION_IDLE_MILLIS);
+        }, 1, 1, TimeUnit.MINUTES);
+        server.start();
+    }
+
+    /**
+     * 待ち受けを停止し、未書き込みの解答をコミットしてから接続プールを閉じる。
+     */
+    public void stop() {
+        server.stop(1);
+        housekeeping.shutdownNow();
+        MetricsRegistry.stopPeriodicDump();
+        DatabaseMaintenance.stopScheduled(); // 実行中のメンテナンスが終わってから接続を閉じる
+        executor.close();
+        QuestionDeck.stop();
+        AnswerRecorder.shutdown();
+        SpacedRepetitionScheduler.persistAll();
+        ProgressStore.close();
+        DatabaseManager.closeConnection();
+    }
+
+    /**
+     * @return 実際に待ち受けているポート
+     */
+    public int port() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * すべての API リクエストの入口。パスに応じて処理を振り分け、レイテンシを記録する。
+     */
+    private void handle(HttpExchange exchange) throws IOException {
+        long start = System.nanoTime();
+        String method = exchange.getRequestMethod().toUpperCase(Locale.ROOT);
+        String[] path = exchange.getRequestURI().getPath().split("/"); // ["", "api", ...]
+        String route = "unknown";
+        try {
+            Response response;
+            if (path.length == 3 && path[2].equals("register") && method.equals("POST")) {
+                route = "register";
+                response = register(readBody(exchange));
+            } else if (path.length == 3 && path[2].equals("login") && method.equals("POST")) {
+                route = "login";
+                response = login(readBody(exchange));
+            } else if (path.length == 3 && path[2].equals("logout") && method.equals("POST")) {
+                route = "logout";
+                response = logout(exchange);
+            } else if (path.length == 3 && path[2].equals("metrics") && method.equals("GET")) {
+                route = "metrics";
+                response = metrics();
+            } else if (path.length == 3 && path[2].equals("leaderboard") && method.equals("GET")) {
+                route = "leaderboard";
+                response = leaderboard(exchange);
+            } else if (path.length == 3 && path[2].equals("attempts") && method.equals("POST")) {
+                route = "attempt";
+                String userId = authenticatedUser(exchange);
+                response = userId == null ? UNAUTHORIZED : submitAttempt(userId, readBody(exchange));
+            } else if (path.length == 3 && path[2].equals("sessions") && method.equals("POST")) {
+                route = "start";
+                String userId = authenticatedUser(exchange);
+                response = userId == null ? UNAUTHORIZED : startSession(201, userId, null, readBody(exchange));
+            } else if (path.length == 5 && path[2].equals("sessions")) {
+                String userId = authenticatedUser(exchange);
+                QuizSession session = userId == null ? null : QuizEngine.getSession(path[3]);
+                if (userId == null) {
+                    route = "unauthorized";
+                    response = UNAUTHORIZED;
+                } else if (session == null || !session.userId().equals(userId)) { // 他人のセッションは存在しないものとして扱う
+                    route = "session-not-found";
+                    response = Response.error(404, "セッションが見つかりません");
+                } else if (path[4].equals("question") && method.equals("GET")) {
+                    route = "question";
+                    response = nextQuestion(session);
+                } else if (path[4].equals("answer") && method.equals("POST")) {
+                    route = "answer";
+                    response = answer(session, readBody(exchange));
+                } else if (path[4].equals("result") && method.equals("GET")) {
+                    route = "result";
+                    response = result(session);
+                } else {
+                    response = Response.error(404, "見つかりません");
+                }
+            } else {
+                response = Response.error(404, "見つかりません");
+            }
+            send(exchange, response);
+        } catch (RejectedExecutionException e) {
+            exchange.getResponseHeaders().set("Retry-After", "1");
+            send(exchange, Response.error(503, e.getMessage()));
+        } catch (IllegalArgumentException e) {
+            send(exchange, Response.error(400, e.getMessage()));
+        } catch (IllegalStateException e) {
+            send(exchange, Response.error(409, e.getMessage()));
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.SEVERE, "リクエストの処理に失敗しました: " + method + " " + exchange.getRequestURI(), e);
+            send(exchange, Response.error(500, "サーバーエラーが発生しました"));
+        } finally {
+            latencies.computeIfAbsent(route, key -> new LatencyHistogram()).recordSince(start);
+        }
+    }
+
+    private Response register(Map<String, Object> body) {
+        String userId = stringField(body, "userId");
+        UserManager.RegistrationResult result = UserManager.register(userId, stringField(body, "password"));
+        switch (result) {
+            case INVALID_INPUT:
+                return Response.error(400, "ユーザーIDとパスワードは半角英数字と記号のみ、8文字以下で入力してください。");
+            case ALREADY_EXISTS:
+                return Response.error(409, "このユーザーIDは既に存在します。");
+            default:
+                return startSession(201, userId, SessionTokenStore.issue(userId), body);
+        }
+    }
+
+    private Response login(Map<String, Object> body) {
+        String userId = stringField(body, "userId");
+        if (!UserManager.authenticate(userId, stringField(body, "password"))) {
+            return Response.error(401, "ユーザーIDまたはパスワードが違います。");
+        }
+        return startSession(200, userId, SessionTokenStore.issue(userId), body);
+    }
+
+    private Response logout(HttpExchange exchange) {
+        if (!SessionTokenStore.revoke(bearerToken(exchange))) {
+            return UNAUTHORIZED;
+        }
+        return new Response(200, Map.of("loggedOut", true));
+    }
+
+    /**
+     * @param token 新しく発行したトークン（発行していない場合は `null`）
+     */
+    private Response startSession(int status, String userId, String token, Map<String, Object> body) {
+        QuizMode mode = parseMode(body.get("mode"));
+        QuizSession session = QuizEngine.startSession(userId, mode);
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("userId", userId);
+        if (token != null) {
+            json.put("token", token);
+        }
+        json.put("sessionId", session.sessionId());
+        json.put("mode", mode.name());
+        json.put("totalQuestions", session.totalQuestions());
+        return new Response(status, json);
+    }
+
+    private Response nextQuestion(QuizSession session) {
+        QuizQuestion question = session.nextQuestion();
+        if (question == null) {
+            return new Response(200, Map.of("finished", true));
+        }
+        return new Response(200, question);
+    }
+
+    private Response answer(QuizSession session, Map<String, Object> body) {
+        Object choice = body.get("choice");
+        if (!(choice instanceof Number number)) {
+            throw new IllegalArgumentException("choice（1始まりの選択肢番号）を指定してください");
+        }
+        return new Response(200, session.submitAnswer(number.intValue() - 1));
+    }
+
+    private Response result(QuizSession session) {
+        QuizSummary summary = QuizEngine.endSession(session.sessionId());
+        return new Response(200, summary == null ? session.summary() : summary);
+    }
+
+    private Response submitAttempt(String userId, Map<String, Object> body) {
+        if (!(body.get("answers") instanceof List<?> items)) {
+            throw new IllegalArgumentException("answers（問題IDと解答の配列）を指定してください");
+        }
+        List<AttemptAnswer> answers = new ArrayList<>(items.size());
+        for (Object item : items) {
+            if (!(item instanceof Map<?, ?> answer) || !(answer.get("questionId") instanceof Number questionId)) {
+                throw new IllegalArgumentException("answers の各要素には questionId と answer を指定してください");
+            }
+            Object text = answer.get("answer");
+            answers.add(new AttemptAnswer(questionId.intValue(), text == null ? null : text.toString()));
+        }
+        return new Response(200, QuizEngine.submitAttempt(userId, answers));
+    }
+
+    private Response leaderboard(HttpExchange exchange) {
+        int limit = DEFAULT_LEADERBOARD_LIMIT;
+        String query = exchange.getRequestURI().getQuery();
+        if (query != null) {
+            for (String pair : query.split("&")) {
+                if (pair.startsWith("limit=")) {
+                    try {
+                        limit = Integer.parseInt(pair.substring(6));
+                    } catch (NumberFormatException e) {
+                        throw new IllegalArgumentException("limit には数値を指定してください");
+                    }
+                }
+            }
+        }
+        if (limit < 1 || limit > MAX_LEADERBOARD_LIMIT) {
+            throw new IllegalArgumentException("limit は 1〜" + MAX_LEADERBOARD_LIMIT + " で指定してください");
+        }
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("totalUsers", Leaderboard.size());
+        json.put("entries", Leaderboard.top(limit));
+        String userId = authenticatedUser(exchange);
+        if (userId != null) {
+            json.put("me", Leaderboard.rankOf(userId));
+        }
+        return new Response(200, json);
+    }
+
+    private Response metrics() {
+        Map<String, Object> json = new LinkedHashMap<>();
+        Map<String, Object> routes = new LinkedHashMap<>();
+        latencies.forEach((route, histogram) -> {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("count", histogram.count());
+            stats.put("meanMillis", histogram.meanNanos() / 1e6);
+            stats.put("p50Millis", histogram.percentileNanos(50) / 1e6);
+            stats.put("p99Millis", histogram.percentileNanos(99) / 1e6);
+            stats.put("p999Millis", histogram.percentileNanos(99.9) / 1e6);
+            stats.put("maxMillis", histogram.maxNanos() / 1e6);
+            routes.put(route, stats);
+        });
+        json.put("latency", routes);
+        json.put("activeSessions", QuizEngine.activeSessionCount());
+        Map<String, Object> pools = new LinkedHashMap<>();
+        DatabaseManager.getPoolStats().forEach((route, stats) -> pools.put(route, stats.toString()));
+        json.put("connectionPools", pools); // 経路（書き込み用・読み取り用）ごとの待ち時間と使用時間
+        json.put("answerRecorder", AnswerRecorder.stats());
+        json.put("credentials", CredentialService.stats());
+        json.put("tokens", SessionTokenStore.stats());
+        json.put("progress", ProgressStore.stats());
+        json.put("deck", QuestionDeck.stats());
+        StartupPipeline.Report startup = StartupPipeline.lastReport();
+        if (startup != null) {
+            json.put("startup", startup.format());
+        }
+        json.put("metrics", MetricsRegistry.snapshot()); // 操作ごとの件数と所要時間
+        json.put("statements", StatementRegistry.snapshot()); // SQL 文ごとの統計（合計所要時間の長い順）
+        return new Response(200, json);
+    }
+
+    /**
+     * `Authorization: Bearer <token>` からログイン中のユーザーIDを取得する。
+     *
+     * @return ユーザーID（トークンがない、または無効な場合は `null`）
+     */
+    private static String authenticatedUser(HttpExchange exchange) {
+        return SessionTokenStore.resolve(bearerToken(exchange));
+    }
+
+    private static String bearerToken(HttpExchange exchange) {
+        String header = exchange.getRequestHeaders().getFirst("Authorization");
+        if (header == null || !header.regionMatches(true, 0, "Bearer ", 0, 7)) {
+            return null;
+        }
+        return header.substring(7).trim();
+    }
+
+    private static QuizMode parseMode(Object mode) {
+        if (mode == null) {
+            return QuizMode.ALL;
+        }
+        try {
+            return QuizMode.valueOf(mode.toString().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("不明なモードです: " + mode);
+        }
+    }
+
+    private static String stringField(Map<String, Object> body, String name) {
+        Object value = body.get(name);
+        return value == null ? null : value.toString();
+    }
+
+    private static Map<String, Object> readBody(HttpExchange exchange) throws IOException {
+        try (InputStream in = exchange.getRequestBody()) {
+            byte[] bytes = in.readNBytes(MAX_BODY_BYTES + 1);
+            if (bytes.length > MAX_BODY_BYTES) {
+                throw new IllegalArgumentException("リクエストが大きすぎます");
+            }
+            return Json.parseObject(new String(bytes, StandardCharsets.UTF_8));
+        }
+    }
+
+    private static void send(HttpExchange exchange, Response response) throws IOException {
+        byte[] bytes = Json.write(response.body()).getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(response.status(), bytes.length); // 長さを明示してキープアライブを維持
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static void setDefaultProperty(String key, String value) {
+        if (System.getProperty(key) == null) {
+            System.setProperty(key, value);
+        }
+    }
+
+    /**
+     * HTTP ステータスと JSON に変換する本文。
+     */
+    private record Response(int status, Object body) {
+        static Response error(int status, String message) {
+            return new Response(status, Map.of("error", message));
+        }
+    }
+}
@@ -0,0 +1,24 @@
+/**
+ * クイズの出題モード。
+ */
+public enum QuizMode {
+    /** 全問題を出題する */
+    ALL("全問解答"),
+    /** 間違えた問題のみ出題する */
+    WRONG_ONLY("間違えた問題のみ"),
+    /** 間隔反復で、出題時刻を過ぎた問題から出題する */
+    SPACED_REPETITION("復習（間隔反復）");
+
+    private final String label;
+
+    QuizMode(String label) {
+        this.label = label;
+    }
+
+    /**
+     * @return 画面に表示するモード名
+     */
+    public String label() {
+        return label;
+    }
+}
@@ -0,0 +1,13 @@
+import java.util.List;
+
+/**
+ * セッションで出題中の1問。
+ *
+ * @param questionId 問題ID
+ * @param prompt     問題文（県名）
+ * @param options    選択肢（変更不可）
+ * @param number     何問目か（1始まり）
+ * @param remaining  この問題を含めた残りの問題数
+ */
+public record QuizQuestion(int questionId, String prompt, List<String> options, int number, int remaining) {
+}
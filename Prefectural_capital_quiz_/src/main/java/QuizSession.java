@@ -0,0 +1,170 @@
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 1人のユーザーが受けている1回分のクイズ。
+ *
+ * - 出題する問題ID、現在の位置、正解数・不正解数などの状態をすべてこのインスタンスに持つ。
+ * - コンソールや画面の入出力は行わない（表示は呼び出し側の責務）。
+ * - 選択肢は `QuestionDeck` が先に用意した問題を取り出して使う。
+ * - 同じセッションへの同時呼び出しに備えて、状態を読み書きするメソッドはロックを持って実行する。
+ *   解答の記録はコミットを待つため、仮想スレッドをキャリアに固定しない `ReentrantLock` を使う（`synchronized` は使わない）。
+ */
+public class QuizSession {
+    private final String sessionId;
+    private final String userId;
+    private final QuizMode mode;
+    private final QuestionCatalog catalog;
+    private final int[] questionIndexes; // カタログ上のインデックス
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private int position = 0;             // 次に出題する問題の位置
+    private QuizQuestion current = null;  // 出題中で未解答の問題
+    private int currentCorrectIndex = -1; // 出題中の問題の正解の選択肢の位置
+    private int correctCount = 0;
+    private int incorrectCount = 0;
+    private volatile long lastAccessMillis = System.currentTimeMillis();
+
+    QuizSession(String sessionId, String userId, QuizMode mode, QuestionCatalog catalog, int[] questionIndexes) {
+        this.sessionId = sessionId;
+        this.userId = userId;
+        this.mode = mode;
+        this.catalog = catalog;
+        this.questionIndexes = questionIndexes;
+    }
+
+    /**
+     * 次の問題を取得する。
+     *
+     * - 前の問題に未解答の場合は同じ問題を返す。
+     * - すべて出題済みの場合は `null` を返す。
+     *
+     * @return 出題する問題、または `null`
+     */
+    public QuizQuestion nextQuestion() {
+        lock.lock();
+        try {
+            touch();
+            if (current != null) {
+                return current;
+            }
+            if (position >= questionIndexes.length) {
+                return null;
+            }
+
+            long start = System.nanoTime();
+            QuizEvents.QuestionServed event = new QuizEvents.QuestionServed();
+            event.begin();
+            int index = questionIndexes[position];
+            PreparedQuestion prepared = QuestionDeck.take(catalog, index);
+            current = new QuizQuestion(prepared.questionId(), prepared.prompt(), prepared.options(),
+                    position + 1, questionIndexes.length - position);
+            currentCorrectIndex = prepared.correctIndex();
+
+            event.end();
+            if (event.shouldCommit()) {
+                event.userId = userId;
+                event.sessionId = sessionId;
+                event.mode = mode.name();
+                event.questionId = current.questionId();
+                event.remaining = current.remaining();
+                event.commit();
+            }
+            MetricsRegistry.recordSince("question.serve", start);
+            return current;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 出題中の問題に解答する。
+     *
+     * - 正誤を判定し、解答を記録してから次の問題へ進む。
+     *
+     * @param choiceIndex 選んだ選択肢の位置（0始まり）
+     * @return 解答結果
+     * @throws IllegalStateException    出題中の問題がない場合
+     * @throws IllegalArgumentException 選択肢の位置が範囲外の場合
+     */
+    public AnswerResult submitAnswer(int choiceIndex) {
+        lock.lock();
+        try {
+            touch();
+            if (current == null) {
+                throw new IllegalStateException("出題中の問題がありません。");
+            }
+            if (choiceIndex < 0 || choiceIndex >= current.options().size()) {
+                throw new IllegalArgumentException("無効な選択です: " + (choiceIndex + 1));
+            }
+
+            String selectedAnswer = current.options().get(choiceIndex);
+            String correctAnswer = current.options().get(currentCorrectIndex);
+            boolean isCorrect = choiceIndex == currentCorrectIndex; // 解答プールに重複はないため、位置で判定できる
+            AnswerRecorder.record(userId, current.questionId(), selectedAnswer, isCorrect); // 他の解答とまとめてコミット
+
+            if (isCorrect) {
+                correctCount++;
+            } else {
+                incorrectCount++;
+            }
+            AnswerResult result = new AnswerResult(current.questionId(), selectedAnswer, correctAnswer, isCorrect);
+            current = null;
+            currentCorrectIndex = -1;
+            position++;
+            return result;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return すべての問題に解答済みなら `true`
+     */
+    public boolean isFinished() {
+        lock.lock();
+        try {
+            return position >= questionIndexes.length;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return 現時点の結果の集計
+     */
+    public QuizSummary summary() {
+        lock.lock();
+        try {
+            return new QuizSummary(questionIndexes.length, correctCount, incorrectCount);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public String sessionId() {
+        return sessionId;
+    }
+
+    public String userId() {
+        return userId;
+    }
+
+    public QuizMode mode() {
+        return mode;
+    }
+
+    /**
+     * @return 出題する問題の数
+     */
+    public int totalQuestions() {
+        return questionIndexes.length;
+    }
+
+    long lastAccessMillis() {
+        return lastAccessMillis;
+    }
+
+    private void touch() {
+        lastAccessMillis = System.currentTimeMillis();
+    }
+}
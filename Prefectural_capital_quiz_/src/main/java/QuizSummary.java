@@ -0,0 +1,9 @@
+/**
+ * クイズ結果の集計。
+ *
+ * @param totalQuestions 総問題数
+ * @param correctCount   正解数
+ * @param incorrectCount 不正解数
+ */
+public record QuizSummary(int totalQuestions, int correctCount, int incorrectCount) {
+}
@@ -0,0 +1,248 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.logging.Logger;
+
+/**
+ * データベースのスキーマ移行を行うクラス。
+ *
+ * - `datebase_setup.sql` で作成済みのデータベースに、後から追加したインデックスなどを適用する。
+ * - 適用済みのバージョンは `PRAGMA user_version` に記録し、同じ移行を二度実行しない。
+ * - 各移行は1つのトランザクションで実行し、途中で失敗した場合はロールバックする。
+ * - 空のデータベース（ベンチマークやテスト用の一時ファイルなど）に `datebase_setup.sql` を適用する機能も持つ。
+ * - 新しく作るデータベースは `auto_vacuum = INCREMENTAL` にし、`DatabaseMaintenance` が空き領域を少しずつ返せるようにする。
+ */
+public class SchemaMigrator {
+    private static final Logger LOGGER = Logger.getLogger(SchemaMigrator.class.getName());
+
+    /**
+     * 移行の一覧。配列の位置 + 1 がスキーマのバージョンになる。
+     */
+    private static final String[][] MIGRATIONS = {
+        // 1: user_answers の (user_id, question_id) を一意にし、UPSERT とインデックス検索を可能にする
+        {
+            "DELETE FROM user_answers WHERE rowid NOT IN ("
+                    + "SELECT MAX(rowid) FROM user_answers GROUP BY user_id, question_id)",
+            "CREATE UNIQUE INDEX IF NOT EXISTS idx_user_answers_user_question "
+                    + "ON user_answers(user_id, question_id)",
+        },
+        // 2: 解答のたびに差分更新する集計テーブル（ユーザーごとの通算、問題ごとの正答率、間違えた問題の集合）
+        {
+            "CREATE TABLE IF NOT EXISTS user_stats ("
+                    + "user_id TEXT PRIMARY KEY, answered INTEGER NOT NULL DEFAULT 0, correct INTEGER NOT NULL DEFAULT 0)",
+            "CREATE TABLE IF NOT EXISTS user_question_stats ("
+                    + "user_id TEXT NOT NULL, question_id INTEGER NOT NULL, "
+                    + "answered INTEGER NOT NULL DEFAULT 0, correct INTEGER NOT NULL DEFAULT 0, "
+                    + "PRIMARY KEY (user_id, question_id)) WITHOUT ROWID",
+            "CREATE TABLE IF NOT EXISTS user_wrong_set ("
+                    + "user_id TEXT NOT NULL, question_id INTEGER NOT NULL, "
+                    + "PRIMARY KEY (user_id, question_id)) WITHOUT ROWID",
+            // 既存の解答から作り直す（user_answers には最新の解答しか残っていないため、1問1回として数える）
+            "DELETE FROM user_stats",
+            "DELETE FROM user_question_stats",
+            "DELETE FROM user_wrong_set",
+            "INSERT INTO user_stats (user_id, answered, correct) "
+                    + "SELECT user_id, COUNT(*), SUM(is_correct) FROM user_answers GROUP BY user_id",
+            "INSERT INTO user_question_stats (user_id, question_id, answered, correct) "
+                    + "SELECT user_id, question_id, 1, is_correct FROM user_answers",
+            "INSERT INTO user_wrong_set (user_id, question_id) "
+                    + "SELECT user_id, question_id FROM user_answers WHERE is_correct = 0",
+        },
+        // 3: 間隔反復の復習スケジュール（ユーザーごとに1つの BLOB）
+        {
+            "CREATE TABLE IF NOT EXISTS user_review_schedule ("
+                    + "user_id TEXT PRIMARY KEY, schedule BLOB NOT NULL, updated_at INTEGER NOT NULL)",
+        },
+        // 4: ランキング用の連続正解数（既存の解答は順序が分からないため 0 から数え始める）
+        {
+            "CREATE TABLE IF NOT EXISTS user_streaks ("
+                    + "user_id TEXT PRIMARY KEY, current_streak INTEGER NOT NULL DEFAULT 0, "
+                    + "best_streak INTEGER NOT NULL DEFAULT 0)",
+        },
+        // 5: 解答ログ（AnswerEventLog）をどこまで反映したか。集計の更新と同じトランザクションで進める
+        {
+            "CREATE TABLE IF NOT EXISTS answer_log_checkpoint ("
+                    + "id INTEGER PRIMARY KEY CHECK (id = 0), seq INTEGER NOT NULL)",
+        },
+        // 6: 解答の保存期間（DatabaseMaintenance）。既存の解答は移行した時刻に解答したものとして数え始める
+        {
+            "ALTER TABLE user_answers ADD COLUMN answered_at INTEGER",
+            "UPDATE user_answers SET answered_at = CAST(strftime('%s', 'now') AS INTEGER) * 1000",
+            "CREATE TABLE IF NOT EXISTS user_answer_rollup ("
+                    + "user_id TEXT PRIMARY KEY, answered INTEGER NOT NULL DEFAULT 0, "
+                    + "correct INTEGER NOT NULL DEFAULT 0, last_answered_at INTEGER NOT NULL)",
+        },
+        // 7: 6 で作った user_answer_rollup を消す（消した行は問題ごとの最後の解答で、通算は user_stats に残っているため使わない）
+        {
+            "DROP TABLE IF EXISTS user_answer_rollup",
+        },
+    };
+
+    /**
+     * 解答用データベース（`quiz.db.answerShards` で分けたもの）の基本のテーブル。
+     * ユーザーと問題は別のデータベースにあるため、外部キーは付けない。
+     */
+    private static final String ANSWER_SHARD_BASE_SQL = "CREATE TABLE IF NOT EXISTS user_answers ("
+            + "user_id TEXT, question_id INTEGER, selected_answer TEXT NOT NULL, "
+            + "is_correct INTEGER NOT NULL CHECK(is_correct IN (0,1)))";
+
+    /**
+     * @return このアプリが必要とするスキーマのバージョン
+     */
+    public static int latestVersion() {
+        return MIGRATIONS.length;
+    }
+
+    /**
+     * 未適用の移行をすべて適用する。
+     *
+     * - 基本のテーブルが存在しない（`datebase_setup.sql` 未適用の）場合は何もしない。
+     *
+     * @param conn データベース接続
+     * @throws SQLException 移行に失敗した場合
+     */
+    public static void migrate(Connection conn) throws SQLException {
+        if (!tableExists(conn, "user_answers")) {
+            LOGGER.warning("user_answers テーブルがありません。datebase_setup.sql を適用してください。");
+            return;
+        }
+
+        int version = currentVersion(conn);
+        if (version >= MIGRATIONS.length) {
+            return;
+        }
+
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        try (Statement stmt = conn.createStatement()) {
+            for (int v = version; v < MIGRATIONS.length; v++) {
+                for (String sql : MIGRATIONS[v]) {
+                    stmt.executeUpdate(sql);
+                }
+                stmt.executeUpdate("PRAGMA user_version = " + (v + 1));
+                LOGGER.info("スキーマをバージョン " + (v + 1) + " に移行しました。");
+            }
+            conn.commit();
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+    }
+
+    /**
+     * 解答用データベースに基本のテーブルを作り、未適用の移行を適用する。
+     *
+     * - 移行はユーザー単位のテーブル（解答と集計）だけを扱うため、カタログと同じ移行をそのまま適用できる。
+     *
+     * @param conn 解答用データベースの接続
+     * @throws SQLException 作成または移行に失敗した場合
+     */
+    public static void prepareAnswerShard(Connection conn) throws SQLException {
+        enableIncrementalVacuumIfEmpty(conn);
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate(ANSWER_SHARD_BASE_SQL);
+        }
+        migrate(conn);
+    }
+
+    /**
+     * スキーマが `datebase_setup.sql` の適用済みで、最新のバージョンまで移行されていることを確かめる。
+     *
+     * @param conn         データベース接続
+     * @param answerShard  解答用データベース（ユーザーと問題のテーブルを持たない）の場合は `true`
+     * @throws SQLException          確認に失敗した場合
+     * @throws IllegalStateException テーブルがない、またはバージョンが古い場合
+     */
+    public static void verify(Connection conn, boolean answerShard) throws SQLException {
+        String[] required = answerShard
+                ? new String[] { "user_answers", "user_stats", "user_question_stats" }
+                : new String[] { "users", "questions", "user_answers" };
+        for (String table : required) {
+            if (!tableExists(conn, table)) {
+                throw new IllegalStateException(table + " テーブルがありません。datebase_setup.sql を適用してください。");
+            }
+        }
+        int version = currentVersion(conn);
+        if (version < MIGRATIONS.length) {
+            throw new IllegalStateException("スキーマのバージョンが古いままです: " + version + "（必要なバージョン " + MIGRATIONS.length + "）");
+        }
+    }
+
+    /**
+     * 現在のスキーマのバージョンを取得する。
+     *
+     * @param conn データベース接続
+     * @return `PRAGMA user_version` の値
+     * @throws SQLException 取得に失敗した場合
+     */
+    public static int currentVersion(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+                ResultSet rs = stmt.executeQuery("PRAGMA user_version")) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    /**
+     * `datebase_setup.sql` のような SQL スクリプトを実行する。
+     *
+     * - `--` から行末まではコメントとして無視し、`;` で文を区切って順に実行する。
+     * - 確認用の `SELECT` 文は実行しない。
+     * - 実行後に未適用のスキーマ移行も適用する。
+     *
+     * @param conn   データベース接続
+     * @param script SQL スクリプトのパス
+     * @throws IOException  スクリプトを読み込めなかった場合
+     * @throws SQLException SQL の実行に失敗した場合
+     */
+    public static void runScript(Connection conn, Path script) throws IOException, SQLException {
+        String sql = Files.readString(script, StandardCharsets.UTF_8).replaceAll("--[^\\n]*", "");
+        enableIncrementalVacuumIfEmpty(conn);
+        try (Statement stmt = conn.createStatement()) {
+            for (String statement : sql.split(";")) {
+                String trimmed = statement.trim();
+                if (trimmed.isEmpty() || trimmed.regionMatches(true, 0, "SELECT", 0, 6)) {
+                    continue;
+                }
+                stmt.execute(trimmed);
+            }
+        }
+        migrate(conn);
+    }
+
+    /**
+     * テーブルがまだない新しいデータベースを `auto_vacuum = INCREMENTAL` にする。
+     *
+     * - WAL モードで開いた時点でファイルのヘッダーが書かれ、`PRAGMA auto_vacuum` だけでは変わらないため、
+     *   空のうちに VACUUM で作り直す（空なので一瞬で終わる）。
+     */
+    private static void enableIncrementalVacuumIfEmpty(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+                ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM sqlite_master")) {
+            if (rs.next() && rs.getInt(1) > 0) {
+                return;
+            }
+        }
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("PRAGMA auto_vacuum = INCREMENTAL");
+            stmt.execute("VACUUM");
+        }
+    }
+
+    private static boolean tableExists(Connection conn, String table) throws SQLException {
+        String sql = "SELECT 1 FROM sqlite_master WHERE type = 'table' AND name = ?";
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, table);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+}
@@ -0,0 +1,201 @@
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+/**
+ * ログイン済みのユーザーを覚えておく、メモリ上の認証トークンの保管場所。
+ *
+ * - ログインに成功したら推測できないトークンを発行し、以降のリクエストはトークンだけで認証する（データベースにはアクセスしない）。
+ * - トークンは最後に使われてから `quiz.auth.tokenTtlMinutes`（既定 30分）で失効する（使うたびに延長される）。
+ * - 保持する件数は `quiz.auth.maxTokens`（既定 100000）まで。あふれた場合は失効済みのものを消し、
+ *   それでも足りなければ無作為に選んだ数件のうち最も長く使われていないものから捨てる。
+ * - 失効したトークンはバックグラウンドのスレッドが定期的に消す。
+ */
+public final class SessionTokenStore {
+    private static final Logger LOGGER = Logger.getLogger(SessionTokenStore.class.getName());
+
+    private static final long TTL_NANOS = TimeUnit.MINUTES.toNanos(Long.getLong("quiz.auth.tokenTtlMinutes", 30L));
+    private static final int MAX_TOKENS = Integer.getInteger("quiz.auth.maxTokens", 100_000);
+    private static final long SWEEP_SECONDS = 60;
+    private static final int EVICTION_SAMPLES = 16; // 追い出す候補として調べる件数
+    private static final int TOKEN_BYTES = 32;
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+    private static final Map<String, Entry> tokens = new ConcurrentHashMap<>();
+
+    private static final LongAdder issued = new LongAdder();
+    private static final LongAdder hits = new LongAdder();
+    private static final LongAdder misses = new LongAdder();
+    private static final LongAdder expired = new LongAdder();
+    private static final LongAdder evicted = new LongAdder();
+
+    private static volatile ScheduledExecutorService sweeper = null;
+
+    private SessionTokenStore() {
+    }
+
+    /**
+     * ユーザーのトークンを発行する。
+     *
+     * @param userId 認証済みのユーザーID
+     * @return URL に使える Base64 のトークン
+     */
+    public static String issue(String userId) {
+        if (sweeper == null) {
+            startSweeper();
+        }
+        if (tokens.size() >= MAX_TOKENS) {
+            makeRoom();
+        }
+        byte[] bytes = new byte[TOKEN_BYTES];
+        RANDOM.nextBytes(bytes);
+        String token = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+        tokens.put(token, new Entry(userId, System.nanoTime()));
+        issued.increment();
+        return token;
+    }
+
+    /**
+     * トークンからユーザーIDを取得し、有効期限を延長する。
+     *
+     * @param token トークン
+     * @return ユーザーID（トークンが不明または失効している場合は `null`）
+     */
+    public static String resolve(String token) {
+        if (token == null) {
+            misses.increment();
+            return null;
+        }
+        Entry entry = tokens.get(token);
+        long now = System.nanoTime();
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        if (entry.isExpired(now)) {
+            if (tokens.remove(token, entry)) {
+                expired.increment();
+            }
+            misses.increment();
+            return null;
+        }
+        entry.lastAccessNanos = now;
+        hits.increment();
+        return entry.userId;
+    }
+
+    /**
+     * トークンを無効にする（ログアウト）。
+     *
+     * @param token トークン
+     * @return 有効なトークンを無効にした場合は `true`
+     */
+    public static boolean revoke(String token) {
+        return token != null && tokens.remove(token) != null;
+    }
+
+    /**
+     * @return 保持しているトークンの数（失効済みで未削除のものを含む）
+     */
+    public static int size() {
+        return tokens.size();
+    }
+
+    /**
+     * @return 発行数、認証の成功・失敗数、失効・追い出しの件数
+     */
+    public static String stats() {
+        return "tokens=" + tokens.size() + " issued=" + issued.sum() + " hits=" + hits.sum()
+                + " misses=" + misses.sum() + " expired=" + expired.sum() + " evicted=" + evicted.sum();
+    }
+
+    /**
+     * 失効したトークンをすべて消す。
+     *
+     * @return 消した件数
+     */
+    static int sweep() {
+        long now = System.nanoTime();
+        int removed = 0;
+        for (Iterator<Entry> it = tokens.values().iterator(); it.hasNext();) {
+            if (it.next().isExpired(now)) {
+                it.remove();
+                removed++;
+            }
+        }
+        expired.add(removed);
+        return removed;
+    }
+
+    /**
+     * 上限に達したときに空きを作る。
+     */
+    private static void makeRoom() {
+        if (sweep() > 0 && tokens.size() < MAX_TOKENS) {
+            return;
+        }
+        // 全件を並べ替える代わりに、数件のうち最も古いものを捨てる（近似 LRU）。
+        // トークンは乱数のため、マップの先頭から数件取り出すだけで無作為な標本になる。
+        while (tokens.size() >= MAX_TOKENS) {
+            String oldestToken = null;
+            long oldestAccess = Long.MAX_VALUE;
+            int seen = 0;
+            for (Map.Entry<String, Entry> candidate : tokens.entrySet()) {
+                if (candidate.getValue().lastAccessNanos < oldestAccess) {
+                    oldestAccess = candidate.getValue().lastAccessNanos;
+                    oldestToken = candidate.getKey();
+                }
+                if (++seen >= EVICTION_SAMPLES) {
+                    break;
+                }
+            }
+            if (oldestToken == null) {
+                return;
+            }
+            if (tokens.remove(oldestToken) != null) {
+                evicted.increment();
+            }
+        }
+    }
+
+    private static synchronized void startSweeper() {
+        if (sweeper != null) {
+            return;
+        }
+        sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "session-token-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sweeper.scheduleWithFixedDelay(() -> {
+            int removed = sweep();
+            if (removed > 0) {
+                LOGGER.fine("失効したトークンを削除しました: " + removed + " 件");
+            }
+        }, SWEEP_SECONDS, SWEEP_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * トークン1件の内容。
+     */
+    private static final class Entry {
+        private final String userId;
+        private volatile long lastAccessNanos;
+
+        Entry(String userId, long lastAccessNanos) {
+            this.userId = userId;
+            this.lastAccessNanos = lastAccessNanos;
+        }
+
+        boolean isExpired(long now) {
+            return now - lastAccessNanos > TTL_NANOS;
+        }
+    }
+}
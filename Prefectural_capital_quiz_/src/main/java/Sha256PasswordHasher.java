@@ -0,0 +1,50 @@
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * ソルトなしの SHA-256 によるハッシュ方式（これまでの保存形式: 64桁の16進数）。
+ *
+ * - `MessageDigest` はスレッドごとに1つだけ作って使い回す。
+ */
+public final class Sha256PasswordHasher implements PasswordHasher {
+    private static final ThreadLocal<MessageDigest> DIGEST = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 が利用できません", e);
+        }
+    });
+
+    @Override
+    public String name() {
+        return "sha256";
+    }
+
+    @Override
+    public String hash(String password) {
+        MessageDigest md = DIGEST.get();
+        md.reset();
+        return Hex.encode(md.digest(password.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Override
+    public boolean verify(String password, String stored) {
+        return MessageDigest.isEqual(
+                hash(password).getBytes(StandardCharsets.US_ASCII),
+                stored.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    @Override
+    public boolean supports(String stored) {
+        if (stored.length() != 64) {
+            return false;
+        }
+        for (int i = 0; i < stored.length(); i++) {
+            if (Character.digit(stored.charAt(i), 16) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
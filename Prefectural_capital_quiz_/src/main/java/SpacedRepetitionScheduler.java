@@ -0,0 +1,375 @@
+import java.nio.ByteBuffer;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * 間隔反復（SM-2 方式を簡略化したもの）で復習する問題を選ぶクラス。
+ *
+ * - ユーザーごとに、解答したことのある問題の次回出題時刻と易しさ（ease）をメモリ上の順序付き集合（次回出題時刻順）で持つ。
+ *   出題時刻を過ぎた問題は集合の先頭から O(log n) で取り出せ、解答履歴を検索しない。
+ *   未解答の問題は持たず、出題時刻を過ぎた問題が足りないときに問題カタログから補う。
+ * - スケジュールは復習モードで出題するときに読み込む。
+ * - 解答がコミットされるたびに `AnswerManager` から結果を受け取り、読み込み済みのスケジュールの次回出題時刻を差分更新する。
+ *   読み込んでいないユーザーの解答は反映しない（データベースの I/O を解答の書き込みスレッドで行わないため）。
+ *   - 正解: 間隔を 1日 → 3日 → 前回の間隔 × ease と延ばし、ease を少し上げる。
+ *   - 不正解: 間隔を最初に戻して10分後に出題し、ease を下げる。
+ * - スケジュールはユーザーごとに1つの BLOB（1問19バイト）として `user_review_schedule` に保存する。
+ *   保存はセッション終了時、長時間使われなかったとき、アプリ終了時にまとめて行う。
+ * - 初めて使うユーザーは、集計テーブルから「間違えた問題（すぐ） → 正解した問題（1日後）」として作る。
+ */
+public class SpacedRepetitionScheduler {
+    private static final Logger LOGGER = Logger.getLogger(SpacedRepetitionScheduler.class.getName());
+
+    private static final long DAY_MILLIS = TimeUnit.DAYS.toMillis(1);
+    private static final long RELEARN_MILLIS = TimeUnit.MINUTES.toMillis(10); // 間違えた問題を再び出すまでの時間
+    private static final int INITIAL_EASE = 250;  // ease × 100
+    private static final int MIN_EASE = 130;
+    private static final int MAX_EASE = 300;
+    private static final byte FORMAT_VERSION = 1;
+    private static final int CARD_BYTES = 4 + 8 + 2 + 4 + 1;
+
+    private static final String LOAD_SQL = "SELECT schedule FROM user_review_schedule WHERE user_id = ?";
+    private static final String SEED_SQL = "SELECT s.question_id, w.question_id IS NOT NULL AS wrong "
+            + "FROM user_question_stats s LEFT JOIN user_wrong_set w "
+            + "ON w.user_id = s.user_id AND w.question_id = s.question_id WHERE s.user_id = ?";
+    private static final String SAVE_SQL = "INSERT INTO user_review_schedule (user_id, schedule, updated_at) VALUES (?, ?, ?) "
+            + "ON CONFLICT(user_id) DO UPDATE SET schedule = excluded.schedule, updated_at = excluded.updated_at";
+
+    private static final Map<String, ReviewSchedule> schedules = new ConcurrentHashMap<>();
+
+    /**
+     * 出題時刻を過ぎた問題を、出題時刻の早い順に取得する。足りない場合は未解答の問題をカタログの順で加える。
+     *
+     * @param userId ユーザーID
+     * @param limit  最大件数
+     * @return 問題IDのリスト
+     */
+    public static List<Integer> dueQuestionIds(String userId, int limit) {
+        while (true) {
+            List<Integer> due = schedule(userId).due(System.currentTimeMillis(), limit, QuestionCatalog.get());
+            if (due != null) {
+                return due;
+            }
+            // 取得した直後にメモリから外されたため、読み込み直す
+        }
+    }
+
+    /**
+     * コミットされた解答の結果をスケジュールに反映する。
+     *
+     * - 解答の記録自体は済んでいるため、ここでの失敗は記録に影響させず、警告だけを残す。
+     * - メモリにないスケジュールは読み込まない（メモリから外した直後の場合も反映しない）。
+     *
+     * @param answers コミット済みの解答
+     */
+    public static void recordOutcomes(List<AnswerRecord> answers) {
+        long now = System.currentTimeMillis();
+        for (AnswerRecord answer : answers) {
+            ReviewSchedule schedule = schedules.get(answer.userId());
+            if (schedule == null) {
+                continue;
+            }
+            try {
+                schedule.update(answer.questionId(), answer.isCorrect(), now);
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "復習スケジュールの更新に失敗しました: " + answer.userId(), e);
+            }
+        }
+    }
+
+    /**
+     * ユーザーのスケジュールに未保存の変更があれば保存する。
+     *
+     * @param userId ユーザーID
+     */
+    public static void persist(String userId) {
+        ReviewSchedule schedule = schedules.get(userId);
+        if (schedule != null) {
+            save(schedule);
+        }
+    }
+
+    /**
+     * 未保存の変更があるすべてのスケジュールを保存する。アプリ終了時に呼ぶ。
+     */
+    public static void persistAll() {
+        for (ReviewSchedule schedule : schedules.values()) {
+            save(schedule);
+        }
+    }
+
+    /**
+     * 一定時間使われていないスケジュールを保存してメモリから外す。
+     *
+     * - 保存している間に解答が反映された場合は外さない（次の機会に保存し直す）。
+     *
+     * @param maxIdleMillis 外すまでの時間（ミリ秒）
+     * @return 外した件数
+     */
+    public static int evictIdle(long maxIdleMillis) {
+        long threshold = System.currentTimeMillis() - maxIdleMillis;
+        int evicted = 0;
+        for (ReviewSchedule schedule : schedules.values()) {
+            if (schedule.lastAccessMillis < threshold) {
+                try {
+                    save(schedule);
+                } catch (RuntimeException e) {
+                    continue; // 保存できなかったものはメモリに残し、次の機会に保存し直す
+                }
+                if (schedule.evictIfIdle(threshold)) {
+                    evicted++;
+                }
+            }
+        }
+        return evicted;
+    }
+
+    /**
+     * メモリにあるスケジュールを返す。ない場合は読み込む。
+     *
+     * - 読み込みは `computeIfAbsent` の外で行い、マップのロックを持ったままデータベースを待たない。
+     *   同時に読み込んだ場合は先に登録した方を使う。
+     */
+    private static ReviewSchedule schedule(String userId) {
+        ReviewSchedule schedule = schedules.get(userId);
+        if (schedule == null) {
+            ReviewSchedule loaded = load(userId);
+            schedule = schedules.putIfAbsent(userId, loaded);
+            if (schedule == null) {
+                schedule = loaded;
+            }
+        }
+        schedule.lastAccessMillis = System.currentTimeMillis();
+        return schedule;
+    }
+
+    /**
+     * 保存済みのスケジュールを読み込む。ない場合は集計テーブルから作る。
+     */
+    private static ReviewSchedule load(String userId) {
+        ReviewSchedule schedule = new ReviewSchedule(userId);
+        long now = System.currentTimeMillis();
+        try (Connection conn = DatabaseManager.getAnswerReadConnection(userId)) {
+            PreparedStatement pstmt = DatabaseManager.prepareCached(conn, LOAD_SQL); // キャッシュ済みのため close しない
+            pstmt.setString(1, userId);
+            byte[] blob = null;
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (rs.next()) {
+                    blob = rs.getBytes("schedule");
+                }
+            }
+            if (blob != null) {
+                schedule.decode(blob);
+            } else {
+                seed(conn, schedule, now);
+            }
+        } catch (SQLException e) {
+            LOGGER.log(Level.SEVERE, "データベースエラー: 復習スケジュールの読み込みに失敗", e);
+            throw new RuntimeException("復習スケジュールの読み込み中にエラーが発生しました", e);
+        }
+        return schedule;
+    }
+
+    private static void seed(Connection conn, ReviewSchedule schedule, long now) throws SQLException {
+        PreparedStatement pstmt = DatabaseManager.prepareCached(conn, SEED_SQL); // キャッシュ済みのため close しない
+        pstmt.setString(1, schedule.userId);
+        try (ResultSet rs = pstmt.executeQuery()) {
+            while (rs.next()) {
+                int questionId = rs.getInt("question_id");
+                if (rs.getBoolean("wrong")) {
+                    schedule.addIfAbsent(new Card(questionId, 0, INITIAL_EASE - 20, 0, 0)); // すぐに出す
+                } else {
+                    schedule.addIfAbsent(new Card(questionId, now + DAY_MILLIS, INITIAL_EASE, 1, 1));
+                }
+            }
+        }
+        schedule.markDirty();
+    }
+
+    private static void save(ReviewSchedule schedule) {
+        byte[] blob = schedule.encodeIfDirty();
+        if (blob == null) {
+            return;
+        }
+        try (Connection conn = DatabaseManager.getAnswerConnection(schedule.userId)) {
+            PreparedStatement pstmt = DatabaseManager.prepareCached(conn, SAVE_SQL); // キャッシュ済みのため close しない
+            pstmt.setString(1, schedule.userId);
+            pstmt.setBytes(2, blob);
+            pstmt.setLong(3, System.currentTimeMillis());
+            pstmt.executeUpdate();
+        } catch (SQLException e) {
+            schedule.markDirty(); // 次の機会に保存し直す
+            LOGGER.log(Level.SEVERE, "データベースエラー: 復習スケジュールの保存に失敗", e);
+            throw new RuntimeException("復習スケジュールの保存中にエラーが発生しました", e);
+        }
+    }
+
+    /**
+     * 1問分の復習状態。順序付き集合に入っている間は `dueMillis` を変更しないこと。
+     */
+    private static final class Card {
+        private final int questionId;
+        private long dueMillis;
+        private int ease;         // ease × 100
+        private int intervalDays;
+        private int repetitions;  // 連続正解数
+
+        Card(int questionId, long dueMillis, int ease, int intervalDays, int repetitions) {
+            this.questionId = questionId;
+            this.dueMillis = dueMillis;
+            this.ease = ease;
+            this.intervalDays = intervalDays;
+            this.repetitions = repetitions;
+        }
+    }
+
+    /**
+     * 1ユーザー分のスケジュール。
+     */
+    private static final class ReviewSchedule {
+        private static final Comparator<Card> BY_DUE =
+                Comparator.<Card>comparingLong(card -> card.dueMillis).thenComparingInt(card -> card.questionId);
+
+        private final String userId;
+        private final TreeSet<Card> queue = new TreeSet<>(BY_DUE);
+        private final Map<Integer, Card> cards = new HashMap<>();
+        private boolean dirty = false;
+        private boolean evicted = false; // メモリから外した後は変更を受け付けない（呼び出し側が読み込み直す）
+        private volatile long lastAccessMillis = System.currentTimeMillis();
+
+        ReviewSchedule(String userId) {
+            this.userId = userId;
+        }
+
+        /**
+         * @param catalog 未解答の問題を補うための問題カタログ
+         * @return 出題時刻を過ぎた問題ID（メモリから外した後の場合は `null`）
+         */
+        synchronized List<Integer> due(long now, int limit, QuestionCatalog catalog) {
+            if (evicted) {
+                return null;
+            }
+            List<Integer> result = new ArrayList<>();
+            for (Card card : queue) {
+                if (card.dueMillis > now || result.size() >= limit) {
+                    break;
+                }
+                result.add(card.questionId);
+            }
+            for (int index = 0; index < catalog.size() && result.size() < limit; index++) {
+                int questionId = catalog.questionId(index);
+                if (!cards.containsKey(questionId)) {
+                    result.add(questionId); // 未解答の問題
+                }
+            }
+            return result;
+        }
+
+        /**
+         * @return 反映した場合は `true`、メモリから外した後の場合は `false`
+         */
+        synchronized boolean update(int questionId, boolean correct, long now) {
+            if (evicted) {
+                return false;
+            }
+            Card card = cards.get(questionId);
+            if (card == null) {
+                card = new Card(questionId, now, INITIAL_EASE, 0, 0);
+                cards.put(questionId, card);
+            } else {
+                queue.remove(card);
+            }
+
+            if (correct) {
+                card.repetitions++;
+                card.intervalDays = switch (card.repetitions) {
+                    case 1 -> 1;
+                    case 2 -> 3;
+                    default -> Math.max(card.intervalDays + 1, Math.round(card.intervalDays * card.ease / 100f));
+                };
+                card.ease = Math.min(MAX_EASE, card.ease + 10);
+                card.dueMillis = now + card.intervalDays * DAY_MILLIS;
+            } else {
+                card.repetitions = 0;
+                card.intervalDays = 0;
+                card.ease = Math.max(MIN_EASE, card.ease - 20);
+                card.dueMillis = now + RELEARN_MILLIS;
+            }
+            queue.add(card);
+            dirty = true;
+            return true;
+        }
+
+        /**
+         * 保存済みで、しきい値より後に使われていない場合だけメモリから外す。
+         *
+         * @return 外した場合は `true`
+         */
+        synchronized boolean evictIfIdle(long threshold) {
+            if (dirty || lastAccessMillis >= threshold) {
+                return false;
+            }
+            evicted = true;
+            schedules.remove(userId, this);
+            return true;
+        }
+
+        synchronized void markDirty() {
+            dirty = true;
+        }
+
+        synchronized void addIfAbsent(Card card) {
+            if (cards.putIfAbsent(card.questionId, card) == null) {
+                queue.add(card);
+            }
+        }
+
+        /**
+         * @return 未保存の変更がある場合は保存用のバイト列、ない場合は `null`
+         */
+        synchronized byte[] encodeIfDirty() {
+            if (!dirty) {
+                return null;
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(1 + 4 + cards.size() * CARD_BYTES);
+            buffer.put(FORMAT_VERSION).putInt(cards.size());
+            for (Card card : queue) {
+                buffer.putInt(card.questionId)
+                        .putLong(card.dueMillis)
+                        .putShort((short) card.ease)
+                        .putInt(card.intervalDays)
+                        .put((byte) Math.min(card.repetitions, Byte.MAX_VALUE));
+            }
+            dirty = false;
+            return buffer.array();
+        }
+
+        synchronized void decode(byte[] blob) {
+            ByteBuffer buffer = ByteBuffer.wrap(blob);
+            byte version = buffer.get();
+            if (version != FORMAT_VERSION) {
+                throw new IllegalStateException("未対応の復習スケジュールの形式です: " + version);
+            }
+            int count = buffer.getInt();
+            for (int i = 0; i < count; i++) {
+                Card card = new Card(buffer.getInt(), buffer.getLong(), buffer.getShort(), buffer.getInt(), buffer.get());
+                if (card.dueMillis == 1 && card.repetitions == 0) {
+                    continue; // 以前は未解答の問題も保存していた（今はカタログから補うため持たない）
+                }
+                addIfAbsent(card);
+            }
+        }
+    }
+}
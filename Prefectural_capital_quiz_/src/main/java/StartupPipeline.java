@@ -0,0 +1,341 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * 起動時の準備を並行に進め、段階ごとの所要時間を記録する。
+ *
+ * - 最初にカタログのデータベースを開く（ドライバのロード、スキーマの移行、接続プールの作成）。
+ *   以降の段階はすべてこの接続を使うため、ここだけは順に行う。
+ * - 続けて次の段階を仮想スレッドで同時に進め、すべて終わるまで待つ。
+ *   - `schema`: 必要なテーブルがあり、最新のバージョンまで移行されていることを確かめる（解答用データベースも開く）
+ *   - `pragma`: WAL、ページキャッシュ、メモリマップの設定が効いていることを確かめ、`PRAGMA optimize` で統計を更新する
+ *   - `answers`: 前回反映されなかった解答ログを反映し、HTTP サーバーではランキングを作る
+ *   - `questions`: 問題カタログを読み込み、山札を詰め始める
+ *   - `page-cache`: データベースのファイルを先頭から読み、OS のページキャッシュに載せる
+ *     （`quiz.startup.warmCacheMb`、既定 256MB まで、0 で行わない）
+ * - どれかの段階が失敗したら残りを中断し、すべてのスレッドが終わってから最初の失敗を投げる（起動を途中で止める）。
+ * - 段階ごとの開始時刻と所要時間をログに出し、`startup.<段階>` のヒストグラムにも記録する。
+ *
+ * AppCDS のアーカイブを作るときの練習用の起動としても使う（`build-cds-archive.sh`）。
+ *
+ * 使い方:
+ * <pre>
+ * java StartupPipeline --db /tmp/quiz.db            (起動だけ行い、所要時間を出して終了する)
+ * java StartupPipeline --db /tmp/quiz.db --server   (HTTP サーバーの起動と停止まで行う)
+ * </pre>
+ */
+public final class StartupPipeline {
+    private static final Logger LOGGER = Logger.getLogger(StartupPipeline.class.getName());
+
+    private static final long WARM_CACHE_BYTES = Long.getLong("quiz.startup.warmCacheMb", 256) << 20;
+    private static final int WARM_CHUNK_BYTES = 1 << 20;
+    private static final int ANALYSIS_LIMIT = 400; // PRAGMA optimize で1つの索引あたりに調べる行数の目安
+
+    private static volatile Report lastReport;
+
+    private StartupPipeline() {
+    }
+
+    /**
+     * 1つの段階の所要時間。
+     *
+     * @param name        段階の名前
+     * @param startMillis 起動の開始から段階の開始までの時間（ミリ秒）
+     * @param millis      所要時間（ミリ秒）
+     */
+    public record Phase(String name, long startMillis, long millis) {
+    }
+
+    /**
+     * 起動全体の所要時間。
+     *
+     * @param phases      開始順の段階
+     * @param totalMillis 全体の所要時間（ミリ秒）
+     */
+    public record Report(List<Phase> phases, long totalMillis) {
+
+        /**
+         * @return 1段階1行の内訳（例: `  questions   +12ms    35ms`）
+         */
+        public String format() {
+            StringBuilder sb = new StringBuilder();
+            for (Phase phase : phases) {
+                sb.append(String.format(Locale.ROOT, "  %-10s +%5dms %6dms%n", phase.name(), phase.startMillis(), phase.millis()));
+            }
+            sb.append(String.format(Locale.ROOT, "  %-10s        %6dms", "total", totalMillis));
+            return sb.toString();
+        }
+    }
+
+    @FunctionalInterface
+    private interface Step {
+        void run() throws Exception;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = Options.parse(args);
+        if (options.database != null) {
+            System.setProperty("quiz.db.url", "jdbc:sqlite:" + options.database);
+        }
+        QuizHttpServer server = null;
+        try {
+            Report report = run(options.server);
+            System.out.println("起動の内訳:" + System.lineSeparator() + report.format());
+            if (options.server) {
+                server = new QuizHttpServer(0);
+                server.start();
+                System.out.println("HTTP サーバーを起動しました: ポート " + server.port());
+            }
+        } finally {
+            if (server != null) {
+                server.stop();
+            } else {
+                QuestionDeck.stop();
+                AnswerRecorder.shutdown();
+                ProgressStore.close();
+                DatabaseManager.closeConnection();
+            }
+        }
+    }
+
+    /**
+     * 起動時の準備をすべて行う。
+     *
+     * @param server HTTP サーバーの起動の場合は `true`（ランキングも作る）
+     * @return 段階ごとの所要時間
+     * @throws IllegalStateException スキーマが古いなど、起動を続けられない場合
+     * @throws RuntimeException      データベースの準備に失敗した場合
+     */
+    public static Report run(boolean server) {
+        long start = System.nanoTime();
+        List<Phase> phases = Collections.synchronizedList(new ArrayList<>());
+        runPhase("database", start, phases, () -> {
+            try (Connection conn = DatabaseManager.getConnection()) {
+                // 書き込み用の接続を借りた時点で移行まで済んでいる
+                LOGGER.fine("スキーマのバージョン: " + SchemaMigrator.currentVersion(conn));
+            }
+        });
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            CompletionService<Void> completion = new ExecutorCompletionService<>(executor);
+            List<Future<Void>> futures = new ArrayList<>();
+            futures.add(submit(completion, "schema", start, phases, StartupPipeline::verifySchema));
+            futures.add(submit(completion, "pragma", start, phases, StartupPipeline::tune));
+            futures.add(submit(completion, "answers", start, phases, () -> {
+                AnswerRecorder.start(); // 前回反映されなかった解答ログを反映する（ランキングを作る前に）
+                if (server) {
+                    Leaderboard.rebuild(); // ランキングを解答の受け付け前に作る
+                }
+            }));
+            futures.add(submit(completion, "questions", start, phases, () -> {
+                QuestionCatalog.get(); // 問題カタログを読み込み、出題時のデータベースアクセスをなくす
+                QuestionDeck.start(); // 選択肢を並べた問題を先に用意しておく
+            }));
+            if (WARM_CACHE_BYTES > 0) {
+                futures.add(submit(completion, "page-cache", start, phases, StartupPipeline::warmPageCache));
+            }
+            awaitAll(completion, futures);
+        }
+
+        List<Phase> ordered = new ArrayList<>(phases);
+        ordered.sort(Comparator.comparingLong(Phase::startMillis));
+        Report report = new Report(List.copyOf(ordered), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        MetricsRegistry.recordSince("startup.total", start);
+        lastReport = report;
+        LOGGER.info("起動の準備が完了しました:" + System.lineSeparator() + report.format());
+        return report;
+    }
+
+    /**
+     * @return 最後の起動の所要時間（まだ起動していない場合は `null`）
+     */
+    public static Report lastReport() {
+        return lastReport;
+    }
+
+    private static Future<Void> submit(CompletionService<Void> completion, String name, long start,
+            List<Phase> phases, Step step) {
+        return completion.submit(() -> {
+            runPhase(name, start, phases, step);
+            return null;
+        });
+    }
+
+    /**
+     * 終わった順に結果を受け取り、最初の失敗で残りを中断する。
+     */
+    private static void awaitAll(CompletionService<Void> completion, List<Future<Void>> futures) {
+        try {
+            for (int i = 0; i < futures.size(); i++) {
+                completion.take().get();
+            }
+        } catch (ExecutionException e) {
+            futures.forEach(future -> future.cancel(true));
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new RuntimeException("起動中にエラーが発生しました", cause);
+        } catch (InterruptedException e) {
+            futures.forEach(future -> future.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("起動が中断されました。", e);
+        }
+    }
+
+    private static void runPhase(String name, long start, List<Phase> phases, Step step) {
+        long phaseStart = System.nanoTime();
+        try {
+            step.run();
+        } catch (SQLException e) {
+            LOGGER.log(Level.SEVERE, "データベースエラー: 起動の段階 " + name + " に失敗しました", e);
+            throw new RuntimeException("起動中にエラーが発生しました", e);
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.SEVERE, "起動の段階 " + name + " に失敗しました。", e);
+            throw e;
+        } catch (Exception e) {
+            LOGGER.log(Level.SEVERE, "起動の段階 " + name + " に失敗しました。", e);
+            throw new RuntimeException("起動中にエラーが発生しました", e);
+        }
+        long end = System.nanoTime();
+        MetricsRegistry.timer("startup." + name).record(end - phaseStart);
+        phases.add(new Phase(name, TimeUnit.NANOSECONDS.toMillis(phaseStart - start),
+                TimeUnit.NANOSECONDS.toMillis(end - phaseStart)));
+    }
+
+    private static void verifySchema() throws SQLException {
+        try (Connection conn = DatabaseManager.getReadConnection()) {
+            SchemaMigrator.verify(conn, false);
+        }
+        if (DatabaseManager.answersSharded()) {
+            for (int i = 0; i < DatabaseManager.answerShardCount(); i++) {
+                try (Connection conn = DatabaseManager.getAnswerShardReadConnection(i)) {
+                    SchemaMigrator.verify(conn, true);
+                }
+            }
+        }
+    }
+
+    /**
+     * 接続の設定が効いていることを確かめてから、書き込み用の接続で統計を更新する。
+     *
+     * - メモリマップはビルドによっては使えず、黙って 0 になるため、効いていない場合は警告だけ出す。
+     * - `PRAGMA optimize=0x10002` は、統計が古いか足りないテーブルだけを `analysis_limit` の範囲で調べ直す。
+     */
+    private static void tune() throws SQLException {
+        try (Connection conn = DatabaseManager.getReadConnection();
+                Statement stmt = conn.createStatement()) {
+            String journalMode = pragma(stmt, "journal_mode");
+            if (!"wal".equalsIgnoreCase(journalMode)) {
+                LOGGER.warning("WAL モードになっていません: journal_mode=" + journalMode);
+            }
+            LOGGER.fine("接続の設定: journal_mode=" + journalMode + " cache_size=" + pragma(stmt, "cache_size")
+                    + " mmap_size=" + pragma(stmt, "mmap_size"));
+            if (DatabaseManager.mmapSize() > 0 && "0".equals(pragma(stmt, "mmap_size"))) {
+                LOGGER.warning("メモリマップが使えないため、通常の読み込みで続けます。");
+            }
+        }
+        optimize(DatabaseManager.getConnection());
+        if (DatabaseManager.answersSharded()) {
+            for (int i = 0; i < DatabaseManager.answerShardCount(); i++) {
+                optimize(DatabaseManager.getAnswerShardConnection(i));
+            }
+        }
+    }
+
+    private static void optimize(Connection borrowed) throws SQLException {
+        try (Connection conn = borrowed;
+                Statement stmt = conn.createStatement()) {
+            stmt.execute("PRAGMA analysis_limit = " + ANALYSIS_LIMIT);
+            stmt.execute("PRAGMA optimize = 0x10002");
+        }
+    }
+
+    private static String pragma(Statement stmt, String name) throws SQLException {
+        try (ResultSet rs = stmt.executeQuery("PRAGMA " + name)) {
+            return rs.next() ? rs.getString(1) : "";
+        }
+    }
+
+    /**
+     * データベースのファイルを先頭から順に読み、OS のページキャッシュに載せる
+     * （メモリマップで読むページと、接続ごとのキャッシュに読み込むページの両方が速くなる）。
+     */
+    private static void warmPageCache() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(WARM_CHUNK_BYTES);
+        long remaining = WARM_CACHE_BYTES;
+        for (Path file : DatabaseManager.databaseFiles()) {
+            if (!Files.isRegularFile(file)) {
+                continue; // メモリ上のデータベースなど
+            }
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                while (remaining > 0 && !Thread.currentThread().isInterrupted()) {
+                    buffer.clear();
+                    if (buffer.remaining() > remaining) {
+                        buffer.limit((int) remaining);
+                    }
+                    int read = channel.read(buffer);
+                    if (read < 0) {
+                        break;
+                    }
+                    remaining -= read;
+                }
+            }
+            if (remaining <= 0) {
+                return;
+            }
+        }
+    }
+
+    static final class Options {
+        Path database;
+        boolean server;
+
+        static Options parse(String[] args) {
+            Options options = new Options();
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                String value = i + 1 < args.length ? args[i + 1] : null;
+                switch (arg) {
+                    case "--db" -> options.database = Path.of(require(arg, value));
+                    case "--server" -> {
+                        options.server = true;
+                        continue;
+                    }
+                    default -> throw new IllegalArgumentException("不明なオプションです: " + arg);
+                }
+                i++;
+            }
+            return options;
+        }
+
+        private static String require(String option, String value) {
+            if (value == null) {
+                throw new IllegalArgumentException(option + " に値を指定してください");
+            }
+            return value;
+        }
+    }
+}
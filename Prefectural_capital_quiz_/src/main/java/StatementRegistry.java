@@ -0,0 +1,358 @@
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+/**
+ * SQL 文ごとの実行統計を集める、ステートメントの計測レイヤー。
+ *
+ * - `ConnectionPool` が物理接続ごとにキャッシュするステートメントを、このクラスの計測用ラッパーで包む。
+ * - 実行ごとに所要時間と行数（更新件数、または読み取った行数）を SQL 文の単位で集計する。
+ * - 問い合わせの所要時間は、実行から `ResultSet` を読み終える（または閉じる）までを計る。
+ *   SQLite は `next()` の中で実際の検索を進めるため、実行直後までの時間では実態を表さない。
+ * - 集計する SQL 文は `quiz.db.statementStatsLimit`（既定 512）種類までで、それを超えた文はまとめて1行に集計する
+ *   （組み立てた SQL で集計が際限なく増えないように）。
+ * - しきい値（システムプロパティ `quiz.db.slowQueryMillis`、既定 100ms）を超えた実行は WARNING で記録する。
+ * - 実行ごとに JFR のイベント（`quiz.DbQuery`）も記録する。
+ */
+public final class StatementRegistry {
+    private static final Logger LOGGER = Logger.getLogger(StatementRegistry.class.getName());
+    private static final long SLOW_QUERY_NANOS =
+            TimeUnit.MILLISECONDS.toNanos(Long.getLong("quiz.db.slowQueryMillis", 100));
+
+    private static final int MAX_ENTRIES = Integer.getInteger("quiz.db.statementStatsLimit", 512);
+    private static final String OVERFLOW_SQL = "(上限を超えたその他の SQL 文)";
+
+    private static final ConcurrentHashMap<String, Entry> ENTRIES = new ConcurrentHashMap<>();
+
+    private StatementRegistry() {
+    }
+
+    /**
+     * ステートメントを計測用のラッパーで包む。
+     *
+     * - ラッパーの `close()` は何もしない（パラメータとバッチを消すだけ）。本当に閉じるのは `raw` を持つ側の責任。
+     *
+     * @param raw ドライバが作成したステートメント
+     * @param sql ステートメントの SQL 文（集計のキー）
+     * @return 計測用のラッパー
+     */
+    static PreparedStatement instrument(PreparedStatement raw, String sql) {
+        InstrumentedStatement handler = new InstrumentedStatement(raw, entryFor(sql));
+        handler.self = (PreparedStatement) Proxy.newProxyInstance(
+                StatementRegistry.class.getClassLoader(),
+                new Class<?>[] { PreparedStatement.class },
+                handler);
+        return handler.self;
+    }
+
+    private static Entry entryFor(String sql) {
+        Entry entry = ENTRIES.get(sql);
+        if (entry != null) {
+            return entry;
+        }
+        // 上限の確認と追加は同時に行わないため、同時に追加された分だけ上限をわずかに超えることがある
+        return ENTRIES.computeIfAbsent(ENTRIES.size() < MAX_ENTRIES ? sql : OVERFLOW_SQL, Entry::new);
+    }
+
+    /**
+     * SQL 文ごとの統計を、合計所要時間の長い順に返す。
+     *
+     * @return 統計のスナップショット
+     */
+    public static List<Stats> snapshot() {
+        List<Stats> result = new ArrayList<>();
+        for (Entry entry : ENTRIES.values()) {
+            result.add(entry.stats());
+        }
+        result.sort(Comparator.comparingLong(Stats::totalNanos).reversed());
+        return result;
+    }
+
+    /**
+     * 統計を1文1行の文字列にまとめる。
+     *
+     * @param limit 表示する最大件数（合計所要時間の長い順）
+     * @return 統計の文字列
+     */
+    public static String report(int limit) {
+        StringBuilder sb = new StringBuilder();
+        List<Stats> snapshot = snapshot();
+        for (Stats stats : snapshot.subList(0, Math.min(limit, snapshot.size()))) {
+            sb.append(stats).append(System.lineSeparator());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 集めた統計をすべて消す。
+     */
+    public static void reset() {
+        ENTRIES.clear();
+    }
+
+    /**
+     * 1つの SQL 文の統計。
+     *
+     * @param sql          SQL 文
+     * @param executions   実行回数
+     * @param rows         更新件数または読み取った行数の合計
+     * @param errors       失敗した回数
+     * @param slow         しきい値を超えた回数
+     * @param totalNanos   合計所要時間（ナノ秒）
+     * @param p50Nanos     所要時間の中央値（ナノ秒）
+     * @param p99Nanos     所要時間の 99 パーセンタイル（ナノ秒）
+     * @param maxNanos     最大所要時間（ナノ秒）
+     */
+    public record Stats(String sql, long executions, long rows, long errors, long slow,
+            long totalNanos, long p50Nanos, long p99Nanos, long maxNanos) {
+
+        @Override
+        public String toString() {
+            return String.format("total=%.1fms count=%d rows=%d errors=%d slow=%d p50=%.3fms p99=%.3fms max=%.3fms sql=%s",
+                    totalNanos / 1e6, executions, rows, errors, slow,
+                    p50Nanos / 1e6, p99Nanos / 1e6, maxNanos / 1e6, sql);
+        }
+    }
+
+    /**
+     * 1つの SQL 文の集計値。複数スレッドから同時に更新される。
+     */
+    private static final class Entry {
+        private final String sql;
+        private final LongAdder rows = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder slow = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LatencyHistogram latency = new LatencyHistogram();
+
+        Entry(String sql) {
+            this.sql = sql;
+        }
+
+        void record(long nanos, long rowCount) {
+            latency.record(nanos);
+            totalNanos.add(nanos);
+            rows.add(rowCount);
+            if (nanos >= SLOW_QUERY_NANOS) {
+                slow.increment();
+                LOGGER.warning(String.format("遅いクエリ: %.1fms rows=%d sql=%s", nanos / 1e6, rowCount, sql));
+            }
+        }
+
+        void recordError(long nanos) {
+            errors.increment();
+            latency.record(nanos);
+            totalNanos.add(nanos);
+        }
+
+        Stats stats() {
+            return new Stats(sql, latency.count(), rows.sum(), errors.sum(), slow.sum(), totalNanos.sum(),
+                    latency.percentileNanos(50), latency.percentileNanos(99), latency.maxNanos());
+        }
+    }
+
+    /**
+     * 計測用のステートメントのラッパー。
+     * 物理接続と同じく一度に1スレッドからしか使われないため、状態は同期しない。
+     */
+    private static final class InstrumentedStatement implements InvocationHandler {
+        private final PreparedStatement raw;
+        private final Entry entry;
+        private PreparedStatement self;
+
+        /** 読み終えていない問い合わせの開始時刻（なければ -1） */
+        private long queryStart = -1;
+        private long queryRows;
+        private QuizEvents.DbQuery queryEvent;
+        private ResultSet openResultSet;
+
+        InstrumentedStatement(PreparedStatement raw, Entry entry) {
+            this.raw = raw;
+            this.entry = entry;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "executeQuery":
+                    if (args == null) {
+                        return executeQuery();
+                    }
+                    break;
+                case "executeUpdate":
+                case "executeLargeUpdate":
+                case "execute":
+                case "executeBatch":
+                case "executeLargeBatch":
+                    if (args == null) {
+                        return executeUpdate(method);
+                    }
+                    break;
+                case "close":
+                    closeResultSet(); // JDBC の約束どおり、開いたままの ResultSet も閉じる（読み取りトランザクションを残さない）
+                    raw.clearParameters();
+                    raw.clearBatch();
+                    return null;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "InstrumentedStatement[" + entry.sql + "]";
+                default:
+                    break;
+            }
+            return call(method, args);
+        }
+
+        private ResultSet executeQuery() throws SQLException {
+            closeResultSet();
+            QuizEvents.DbQuery event = new QuizEvents.DbQuery();
+            event.begin();
+            long start = System.nanoTime();
+            ResultSet rs;
+            try {
+                rs = raw.executeQuery();
+            } catch (SQLException | RuntimeException e) {
+                entry.recordError(System.nanoTime() - start);
+                commit(event, 0, true);
+                throw e;
+            }
+            queryStart = start;
+            queryRows = 0;
+            queryEvent = event;
+            openResultSet = rs;
+            return wrap(rs);
+        }
+
+        private Object executeUpdate(Method method) throws Throwable {
+            closeResultSet();
+            QuizEvents.DbQuery event = new QuizEvents.DbQuery();
+            event.begin();
+            long start = System.nanoTime();
+            Object result;
+            try {
+                result = call(method, null);
+            } catch (Throwable e) {
+                entry.recordError(System.nanoTime() - start);
+                commit(event, 0, true);
+                throw e;
+            }
+            long elapsed = System.nanoTime() - start;
+            long rows = rowCount(result);
+            entry.record(elapsed, rows);
+            commit(event, rows, false);
+            return result;
+        }
+
+        private void commit(QuizEvents.DbQuery event, long rows, boolean failed) {
+            event.end();
+            if (event.shouldCommit()) {
+                event.sql = entry.sql;
+                event.rows = rows;
+                event.failed = failed;
+                event.commit();
+            }
+        }
+
+        private long rowCount(Object result) throws SQLException {
+            if (result instanceof Integer count) {
+                return Math.max(count, 0);
+            }
+            if (result instanceof Long count) {
+                return Math.max(count, 0);
+            }
+            if (result instanceof Boolean isResultSet) {
+                return isResultSet ? 0 : Math.max(raw.getUpdateCount(), 0);
+            }
+            long total = 0;
+            if (result instanceof int[] counts) {
+                for (int count : counts) {
+                    total += Math.max(count, 0);
+                }
+            } else if (result instanceof long[] counts) {
+                for (long count : counts) {
+                    total += Math.max(count, 0);
+                }
+            }
+            return total;
+        }
+
+        private ResultSet wrap(ResultSet rs) {
+            return (ResultSet) Proxy.newProxyInstance(
+                    StatementRegistry.class.getClassLoader(),
+                    new Class<?>[] { ResultSet.class },
+                    (proxy, method, args) -> {
+                        switch (method.getName()) {
+                            case "next": {
+                                boolean hasRow = (Boolean) invokeOn(rs, method, args);
+                                if (hasRow) {
+                                    queryRows++;
+                                } else {
+                                    finishQuery();
+                                }
+                                return hasRow;
+                            }
+                            case "close":
+                                if (rs == openResultSet) {
+                                    closeResultSet();
+                                } else {
+                                    rs.close();
+                                }
+                                return null;
+                            case "getStatement":
+                                return self; // ドライバのステートメントを外に出さない
+                            default:
+                                return invokeOn(rs, method, args);
+                        }
+                    });
+        }
+
+        /**
+         * 読み終えていない問い合わせがあれば、その時点までを1回の実行として記録する。
+         */
+        private void finishQuery() {
+            if (queryStart >= 0) {
+                entry.record(System.nanoTime() - queryStart, queryRows);
+                commit(queryEvent, queryRows, false);
+                queryStart = -1;
+                queryEvent = null;
+            }
+        }
+
+        /**
+         * 最後に返した `ResultSet` を閉じ、ステートメントを再実行できる状態に戻す。
+         */
+        private void closeResultSet() throws SQLException {
+            finishQuery();
+            if (openResultSet != null) {
+                ResultSet rs = openResultSet;
+                openResultSet = null;
+                rs.close();
+            }
+        }
+
+        private Object call(Method method, Object[] args) throws Throwable {
+            return invokeOn(raw, method, args);
+        }
+
+        private static Object invokeOn(Object target, Method method, Object[] args) throws Throwable {
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
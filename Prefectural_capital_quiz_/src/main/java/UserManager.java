@@ -1,7 +1,8 @@
 import java.sql.*;
+import java.util.Map;
 import java.util.Scanner;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Pattern;
@@ -9,38 +10,59 @@ import java.util.regex.Pattern;
 /**
  * ユーザー管理を行うクラス。
  * - ユーザーのログイン、新規登録を管理。
- * - パスワードのハッシュ化を行い、安全にデータベースへ保存。
- * - `Scanner` の管理を適切に行い、リソースリークを防ぐ。
+ * - 入出力を持たない `authenticate()` / `register()` を HTTP API などからも利用できる。
+ * - パスワードのハッシュ化と照合は `CredentialService` に任せ、安全にデータベースへ保存。
+ * - 入力用の `Scanner` は呼び出し側から受け取り、このクラスでは static に保持しない。
  * - 入力チェックを強化し、不正なデータ入力を防ぐ。
+ * - 存在しないユーザーIDは短時間（`quiz.auth.unknownUserTtlSeconds`、既定 30秒）覚えておき、
+ *   同じIDでの存在確認やログインの失敗でデータベースにアクセスしない。
  */
 public class UserManager {
-    private static final Scanner scanner = new Scanner(System.in);
     private static final Logger LOGGER = Logger.getLogger(UserManager.class.getName()); // ログ管理用
     private static final int MAX_LOGIN_ATTEMPTS = 3; // 最大ログイン試行回数
     private static final String VALID_PATTERN = "^[a-zA-Z0-9!@#$%^&*()_+=-]{1,8}$"; // 半角英数字記号 1~8文字
+    private static final long UNKNOWN_USER_TTL_NANOS =
+            TimeUnit.SECONDS.toNanos(Long.getLong("quiz.auth.unknownUserTtlSeconds", 30L));
+    private static final int UNKNOWN_USER_CACHE_SIZE = 10_000; // 覚えておく存在しないユーザーIDの上限
+    private static final int UNKNOWN_USER_EVICTION_SAMPLES = 16; // 追い出す候補として調べる件数
+    private static final Map<String, Long> unknownUsers = new ConcurrentHashMap<>(); // ユーザーID → 期限（nanoTime）
+
+    /**
+     * ユーザー登録の結果。
+     */
+    public enum RegistrationResult {
+        /** 登録に成功した */
+        SUCCESS,
+        /** ユーザーIDまたはパスワードの形式が不正 */
+        INVALID_INPUT,
+        /** ユーザーIDが既に存在する */
+        ALREADY_EXISTS
+    }
 
     /**
      * ユーザーにログインまたは新規登録を選択させるメソッド。
      * 
+     * @param scanner ユーザー入力を受け付ける `Scanner` オブジェクト
      * @return ログイン成功したユーザーID
      */
-    public static String loginOrRegister() {
+    public static String loginOrRegister(Scanner scanner) {
         System.out.println("1:ログイン 2:新規登録");
-        int choice = getValidChoice(1, 2); // 1 または 2 のみ許可
+        int choice = getValidChoice(scanner, 1, 2); // 1 または 2 のみ許可
 
         if (choice == 1) {
-            return loginUser();
+            return loginUser(scanner);
         } else {
-            return registerUser();
+            return registerUser(scanner);
         }
     }
 
     /**
      * ユーザーを新規登録するメソッド。
      * 
+     * @param scanner ユーザー入力を受け付ける `Scanner` オブジェクト
      * @return 登録したユーザーID
      */
-    public static String registerUser() {
+    public static String registerUser(Scanner scanner) {
         String userId;
         do {
             System.out.print("新しいユーザーIDを入力してください(半角英数字&記号8文字以下): ");
@@ -58,27 +80,58 @@ public class UserManager {
                 System.out.println("エラー: パスワードは半角英数字と記号のみ、8文字以下で入力してください。");
             }
         } while (!isValidInput(password));
-        String hashedPassword = hashPassword(password); // パスワードをハッシュ化
+
+        try {
+            RegistrationResult result = register(userId, password);
+            if (result == RegistrationResult.ALREADY_EXISTS) {
+                System.out.println("このユーザーIDは既に存在します。別のIDを試してください。");
+                return loginOrRegister(scanner); // `Scanner` を渡す
+            }
+            System.out.println("ユーザー登録が完了しました！");
+            return userId;
+        } catch (RuntimeException e) {
+            System.out.println("登録に失敗しました。もう一度試してください。");
+            return loginOrRegister(scanner);
+        }
+    }
+
+    /**
+     * ユーザーを新規登録するメソッド（コンソール入出力なし）。
+     * 
+     * - 入力値のチェック、重複チェック、パスワードのハッシュ化を行い、データベースへ登録する。
+     * 
+     * @param userId   新しいユーザーID
+     * @param password パスワード（平文）
+     * @return 登録結果
+     * @throws RuntimeException データベースエラーが発生した場合
+     */
+    public static RegistrationResult register(String userId, String password) {
+        if (userId == null || password == null || !isValidInput(userId) || !isValidInput(password)) {
+            return RegistrationResult.INVALID_INPUT;
+        }
 
         // 既存のユーザーIDと重複していないかチェック
         if (isUserExists(userId)) {
-            System.out.println("このユーザーIDは既に存在します。別のIDを試してください。");
-            return loginOrRegister(); // `Scanner` を渡す
+            return RegistrationResult.ALREADY_EXISTS;
         }
+        String hashedPassword = CredentialService.hash(password); // 専用スレッドでパスワードをハッシュ化
 
         // データベースにユーザー情報を登録
         String sql = "INSERT INTO users(user_id, password) VALUES (?, ?)";
-        try (Connection conn = DatabaseManager.getConnection();
-                PreparedStatement pstmt = conn.prepareStatement(sql)) {
+        try (Connection conn = DatabaseManager.getConnection()) {
+            PreparedStatement pstmt = DatabaseManager.prepareCached(conn, sql); // キャッシュ済みのため close しない
             pstmt.setString(1, userId);
             pstmt.setString(2, hashedPassword);
             pstmt.executeUpdate();
-            System.out.println("ユーザー登録が完了しました！");
-            return userId;
+            unknownUsers.remove(userId);
+            return RegistrationResult.SUCCESS;
         } catch (SQLException e) {
+            unknownUsers.remove(userId); // 同時に登録された可能性があるため、覚えている結果を使わずに確認する
+            if (isUserExists(userId)) {
+                return RegistrationResult.ALREADY_EXISTS; // 同時に同じIDで登録された場合
+            }
             LOGGER.log(Level.SEVERE, "ユーザー登録エラー", e);
-            System.out.println("登録に失敗しました。もう一度試してください。");
-            return loginOrRegister();
+            throw new RuntimeException("ユーザー登録中にエラーが発生しました", e);
         }
     }
 
@@ -87,9 +140,10 @@ public class UserManager {
      * - 最大 `MAX_LOGIN_ATTEMPTS` 回の試行が可能。
      * - ログイン成功するとユーザーIDを返す。
      * 
+     * @param scanner ユーザー入力を受け付ける `Scanner` オブジェクト
      * @return ログイン成功したユーザーID
      */
-    public static String loginUser() {
+    public static String loginUser(Scanner scanner) {
         int attempts = 0;
 
         while (attempts < MAX_LOGIN_ATTEMPTS) {
@@ -98,24 +152,16 @@ public class UserManager {
 
             System.out.print("パスワードを入力してください: ");
             String password = scanner.nextLine();
-            String hashedPassword = hashPassword(password);
-
-            String sql = "SELECT user_id FROM users WHERE user_id = ? AND password = ?";
-            try (Connection conn = DatabaseManager.getConnection();
-                    PreparedStatement pstmt = conn.prepareStatement(sql)) {
-                pstmt.setString(1, userId);
-                pstmt.setString(2, hashedPassword);
-                ResultSet rs = pstmt.executeQuery();
 
-                if (rs.next()) {
+            try {
+                if (authenticate(userId, password)) {
                     System.out.println("ログイン成功！");
                     return userId;
                 } else {
                     attempts++;
                     System.out.println("ログインに失敗しました。残り試行回数: " + (MAX_LOGIN_ATTEMPTS - attempts));
                 }
-            } catch (SQLException e) {
-                LOGGER.log(Level.SEVERE, "ログイン処理エラー", e);
+            } catch (RuntimeException e) {
                 System.err.println("システムエラーが発生しました。ログインを終了します。");
                 System.exit(1); // システム異常時は強制終了
                 return null;
@@ -127,6 +173,95 @@ public class UserManager {
         return null;
     }
 
+    /**
+     * ユーザーIDとパスワードを検証するメソッド（コンソール入出力なし）。
+     * 
+     * - 保存済みのハッシュをユーザーIDで取得し、`CredentialService` で照合する（ソルト付きの方式にも対応）。
+     * - 現在の方式と異なる形式で保存されていた場合は、ログイン成功時に現在の方式で保存し直す。
+     * 
+     * @param userId   ユーザーID
+     * @param password パスワード（平文）
+     * @return 一致するユーザーが存在する場合は `true`
+     * @throws RuntimeException データベースエラーが発生した場合
+     * @throws java.util.concurrent.RejectedExecutionException 認証処理が混み合っている場合
+     */
+    public static boolean authenticate(String userId, String password) {
+        if (userId == null || password == null) {
+            return false;
+        }
+        long start = System.nanoTime();
+        QuizEvents.LoginAttempt event = new QuizEvents.LoginAttempt();
+        event.begin();
+        boolean success = false;
+        try {
+            String stored = findPasswordHash(userId);
+            if (!CredentialService.verify(password, stored)) {
+                return false;
+            }
+            if (CredentialService.needsRehash(stored)) {
+                updatePasswordHash(userId, CredentialService.hash(password));
+            }
+            success = true;
+            return true;
+        } finally {
+            event.end();
+            if (event.shouldCommit()) {
+                event.userId = userId;
+                event.success = success;
+                event.commit();
+            }
+            MetricsRegistry.increment(success ? "login.success" : "login.failure");
+            MetricsRegistry.recordSince("login", start);
+        }
+    }
+
+    /**
+     * 保存済みのパスワードのハッシュを取得するメソッド。
+     * 
+     * @param userId ユーザーID
+     * @return ハッシュ（ユーザーが存在しない場合は `null`）
+     */
+    private static String findPasswordHash(String userId) {
+        if (isKnownUnknown(userId)) {
+            return null;
+        }
+        String sql = "SELECT password FROM users WHERE user_id = ?";
+        try (Connection conn = DatabaseManager.getReadConnection()) {
+            PreparedStatement pstmt = DatabaseManager.prepareCached(conn, sql); // キャッシュ済みのため close しない
+            pstmt.setString(1, userId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (rs.next()) {
+                    return rs.getString("password");
+                }
+                rememberUnknown(userId);
+                return null;
+            }
+        } catch (SQLException e) {
+            LOGGER.log(Level.SEVERE, "ログイン処理エラー", e);
+            throw new RuntimeException("ログイン処理中にエラーが発生しました", e);
+        }
+    }
+
+    /**
+     * パスワードのハッシュを現在の方式で保存し直すメソッド。
+     * 失敗してもログインは成功させ、次回のログインで再び試みる。
+     * 
+     * @param userId         ユーザーID
+     * @param hashedPassword 新しいハッシュ
+     */
+    private static void updatePasswordHash(String userId, String hashedPassword) {
+        String sql = "UPDATE users SET password = ? WHERE user_id = ?";
+        try (Connection conn = DatabaseManager.getConnection()) {
+            PreparedStatement pstmt = DatabaseManager.prepareCached(conn, sql); // キャッシュ済みのため close しない
+            pstmt.setString(1, hashedPassword);
+            pstmt.setString(2, userId);
+            pstmt.executeUpdate();
+            LOGGER.info("パスワードのハッシュを現在の方式で保存し直しました: " + userId);
+        } catch (SQLException e) {
+            LOGGER.log(Level.WARNING, "パスワードのハッシュの更新に失敗しました: " + userId, e);
+        }
+    }
+
     /**
      * 指定したユーザーIDが既に存在するかをデータベースで確認するメソッド。
      * 
@@ -134,29 +269,88 @@ public class UserManager {
      * @return 存在する場合は `true`、存在しない場合は `false`
      */
     private static boolean isUserExists(String userId) {
+        if (isKnownUnknown(userId)) {
+            return false;
+        }
         String sql = "SELECT user_id FROM users WHERE user_id = ?";
-        try (Connection conn = DatabaseManager.getConnection();
-                PreparedStatement pstmt = conn.prepareStatement(sql)) {
+        try (Connection conn = DatabaseManager.getReadConnection()) {
+            PreparedStatement pstmt = DatabaseManager.prepareCached(conn, sql); // キャッシュ済みのため close しない
             pstmt.setString(1, userId);
-            ResultSet rs = pstmt.executeQuery();
-            return rs.next();
+            try (ResultSet rs = pstmt.executeQuery()) {
+                boolean exists = rs.next();
+                if (!exists) {
+                    rememberUnknown(userId);
+                }
+                return exists;
+            }
         } catch (SQLException e) {
             LOGGER.log(Level.SEVERE, "データベースエラー: ユーザーの存在確認に失敗", e);
             return false;
         }
     }
 
+    /**
+     * 存在しないことを最近確認したユーザーIDかどうかを判定するメソッド。
+     * 
+     * @param userId ユーザーID
+     * @return 期限内に存在しないことを確認済みなら `true`
+     */
+    private static boolean isKnownUnknown(String userId) {
+        Long expiresAt = unknownUsers.get(userId);
+        if (expiresAt == null) {
+            return false;
+        }
+        if (System.nanoTime() - expiresAt > 0) {
+            unknownUsers.remove(userId, expiresAt);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 存在しないユーザーIDを覚えておくメソッド。上限に達した場合は期限切れのものを捨て、
+     * それでも空きがなければ数件のうち最も期限の近いものを捨てる（覚えている他のIDはそのまま使う）。
+     * 
+     * @param userId ユーザーID
+     */
+    private static void rememberUnknown(String userId) {
+        if (unknownUsers.size() >= UNKNOWN_USER_CACHE_SIZE) {
+            long now = System.nanoTime();
+            unknownUsers.values().removeIf(expiresAt -> now - expiresAt > 0);
+            while (unknownUsers.size() >= UNKNOWN_USER_CACHE_SIZE) {
+                String oldestUser = null;
+                long oldestExpiry = Long.MAX_VALUE;
+                int seen = 0;
+                for (Map.Entry<String, Long> candidate : unknownUsers.entrySet()) {
+                    if (oldestUser == null || candidate.getValue() - oldestExpiry < 0) {
+                        oldestExpiry = candidate.getValue();
+                        oldestUser = candidate.getKey();
+                    }
+                    if (++seen >= UNKNOWN_USER_EVICTION_SAMPLES) {
+                        break;
+                    }
+                }
+                if (oldestUser == null) {
+                    break;
+                }
+                unknownUsers.remove(oldestUser);
+            }
+        }
+        unknownUsers.put(userId, System.nanoTime() + UNKNOWN_USER_TTL_NANOS);
+    }
+
     /**
      * 数値の入力を検証し、適切な選択肢を取得するメソッド。
      * 
      * - 数値以外の入力がされた場合、再入力を求める。
      * - `nextInt()` の後に `nextLine()` を呼び、バッファをクリアする。
      *
+     * @param scanner ユーザー入力を受け付ける `Scanner` オブジェクト
      * @param min     選択肢の最小値
      * @param max     選択肢の最大値
      * @return 入力された有効な選択肢
      */
-    private static int getValidChoice(int min, int max) {
+    private static int getValidChoice(Scanner scanner, int min, int max) {
         int choice;
         while (true) {
             System.out.print("選択肢を入力してください");
@@ -174,34 +368,6 @@ public class UserManager {
         }
     }
 
-    /**
-     * パスワードをSHA-256でハッシュ化するメソッド。
-     * 
-     * - SHA-256 を使用してパスワードをハッシュ化。
-     * - `bcrypt` などのより安全なハッシュ関数に移行することが推奨される。
-     * 
-     * @param password ハッシュ化するパスワード
-     * @return ハッシュ化されたパスワード
-     */
-    private static String hashPassword(String password) {
-        try {
-            // SHA-256 の MessageDigest インスタンスを取得
-            MessageDigest md = MessageDigest.getInstance("SHA-256");
-
-            // パスワードのバイト配列をハッシュ化
-            byte[] hashBytes = md.digest(password.getBytes());
-
-            // ハッシュ値を16進数文字列に変換
-            StringBuilder hexString = new StringBuilder();
-            for (byte b : hashBytes) {
-                hexString.append(String.format("%02x", b));
-            }
-            return hexString.toString();
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException("パスワードのハッシュ化に失敗しました。", e);
-        }
-    }
-
     /**
      * 入力値が半角英数字記号で8文字以下かどうかを判定するメソッド
      * @param input ユーザーが入力したIDまたはパスワード
@@ -0,0 +1,16 @@
+/**
+ * ユーザーの通算成績。
+ *
+ * @param userId   ユーザーID
+ * @param answered 通算の解答数
+ * @param correct  通算の正解数
+ */
+public record UserStats(String userId, long answered, long correct) {
+
+    /**
+     * @return 正答率（0.0〜1.0、解答がない場合は0）
+     */
+    public double accuracy() {
+        return answered == 0 ? 0.0 : (double) correct / answered;
+    }
+}
@@ -0,0 +1,100 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * ユーザーの成績を集計テーブルから読み取るクラス。
+ *
+ * - 集計テーブルは `AnswerManager` が解答の記録と同じトランザクションで差分更新する。
+ *   そのため解答と同じデータベース（`DatabaseManager.getAnswerReadConnection`）から、読み取り専用の接続で読む。
+ * - どの読み取りも主キーによる検索だけで済み、解答履歴の件数に比例した走査は行わない。
+ */
+public class UserStatsManager {
+    private static final Logger LOGGER = Logger.getLogger(UserStatsManager.class.getName());
+
+    private static final String TOTALS_SQL = "SELECT answered, correct FROM user_stats WHERE user_id = ?";
+    private static final String PREFECTURE_SQL =
+            "SELECT question_id, answered, correct FROM user_question_stats WHERE user_id = ? ORDER BY question_id";
+    private static final String WRONG_SET_SQL =
+            "SELECT question_id FROM user_wrong_set WHERE user_id = ? ORDER BY question_id";
+
+    /**
+     * ユーザーの通算成績を取得する。
+     *
+     * @param userId ユーザーID
+     * @return 通算成績（まだ解答がない場合は0件の成績）
+     */
+    public static UserStats getTotals(String userId) {
+        try (Connection conn = DatabaseManager.getAnswerReadConnection(userId)) {
+            PreparedStatement pstmt = DatabaseManager.prepareCached(conn, TOTALS_SQL); // キャッシュ済みのため close しない
+            pstmt.setString(1, userId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (rs.next()) {
+                    return new UserStats(userId, rs.getLong("answered"), rs.getLong("correct"));
+                }
+                return new UserStats(userId, 0, 0);
+            }
+        } catch (SQLException e) {
+            LOGGER.log(Level.SEVERE, "データベースエラー: 通算成績の取得に失敗", e);
+            throw new RuntimeException("通算成績の取得中にエラーが発生しました", e);
+        }
+    }
+
+    /**
+     * ユーザーの都道府県ごとの正答率を取得する。
+     *
+     * - 一度も解答していない問題は含まない。
+     * - 都道府県名は問題カタログから補う。
+     *
+     * @param userId ユーザーID
+     * @return 問題ID順の正答率のリスト
+     */
+    public static List<PrefectureAccuracy> getPrefectureAccuracy(String userId) {
+        QuestionCatalog catalog = QuestionCatalog.get();
+        List<PrefectureAccuracy> result = new ArrayList<>();
+        try (Connection conn = DatabaseManager.getAnswerReadConnection(userId)) {
+            PreparedStatement pstmt = DatabaseManager.prepareCached(conn, PREFECTURE_SQL); // キャッシュ済みのため close しない
+            pstmt.setString(1, userId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    int questionId = rs.getInt("question_id");
+                    int index = catalog.indexOf(questionId);
+                    String prefecture = index < 0 ? null : catalog.prefecture(index);
+                    result.add(new PrefectureAccuracy(questionId, prefecture, rs.getLong("answered"), rs.getLong("correct")));
+                }
+            }
+        } catch (SQLException e) {
+            LOGGER.log(Level.SEVERE, "データベースエラー: 都道府県ごとの正答率の取得に失敗", e);
+            throw new RuntimeException("都道府県ごとの正答率の取得中にエラーが発生しました", e);
+        }
+        return result;
+    }
+
+    /**
+     * ユーザーが間違えた問題（最後の解答が不正解だった問題）のIDを取得する。
+     *
+     * @param userId ユーザーID
+     * @return 問題ID順のリスト
+     */
+    public static List<Integer> getWrongQuestionIds(String userId) {
+        List<Integer> questionIds = new ArrayList<>();
+        try (Connection conn = DatabaseManager.getAnswerReadConnection(userId)) {
+            PreparedStatement pstmt = DatabaseManager.prepareCached(conn, WRONG_SET_SQL); // キャッシュ済みのため close しない
+            pstmt.setString(1, userId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    questionIds.add(rs.getInt("question_id"));
+                }
+            }
+        } catch (SQLException e) {
+            LOGGER.log(Level.SEVERE, "データベースエラー: 間違えた問題の取得に失敗", e);
+            throw new RuntimeException("間違えた問題の取得中にエラーが発生しました", e);
+        }
+        return questionIds;
+    }
+}